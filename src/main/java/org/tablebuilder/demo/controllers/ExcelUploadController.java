@@ -1,11 +1,34 @@
 package org.tablebuilder.demo.controllers;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.bind.annotation.*;
+import org.tablebuilder.demo.exception.ImportRejectedException;
 import org.tablebuilder.demo.model.ExcelImportResult;
+import org.tablebuilder.demo.model.ImportAdmissionStats;
+import org.tablebuilder.demo.model.ImportJobStatus;
+import org.tablebuilder.demo.model.ImportPreview;
+import org.tablebuilder.demo.model.ImportOptions;
+import org.tablebuilder.demo.model.LoadProgress;
+import org.tablebuilder.demo.model.ParallelLoadStats;
+import org.tablebuilder.demo.service.BulkLoadMonitor;
+import org.tablebuilder.demo.service.CsvImportService;
 import org.tablebuilder.demo.service.ExcelImportService;
+import org.tablebuilder.demo.service.ImportAdmissionService;
+import org.tablebuilder.demo.service.ImportJobService;
+import org.tablebuilder.demo.service.ImportPreviewService;
+import org.tablebuilder.demo.service.ParallelBulkLoader;
+import org.tablebuilder.demo.service.UploadSpoolService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
 @CrossOrigin(origins = "http://localhost:5173", allowCredentials = "true")
 @RestController
 @RequestMapping("/api/excel")
@@ -13,11 +36,28 @@ public class ExcelUploadController {
 
     @Autowired
     private ExcelImportService excelImportService;
+    @Autowired
+    private ImportJobService importJobService;
+    @Autowired
+    private UploadSpoolService uploadSpoolService;
+    @Autowired
+    private CsvImportService csvImportService;
+    @Autowired
+    private ImportPreviewService importPreviewService;
+    @Autowired
+    private ImportAdmissionService importAdmissionService;
+    @Autowired
+    private ParallelBulkLoader parallelBulkLoader;
+    @Autowired
+    private BulkLoadMonitor bulkLoadMonitor;
 
     @PostMapping("/upload")
     public ResponseEntity<ExcelImportResult> uploadExcel(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "username", defaultValue = "anonymous") String username) {
+            @RequestParam(value = "username", defaultValue = "anonymous") String username,
+            @RequestParam(value = "mode", defaultValue = "FULL") ImportOptions.Mode mode,
+            @RequestParam(value = "keyColumn", required = false) String keyColumn,
+            @RequestParam(value = "indexColumns", required = false) List<String> indexColumns) {
 
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().body(
@@ -27,14 +67,16 @@ public class ExcelUploadController {
 
         // Проверка типа файла
         String filename = file.getOriginalFilename();
-        if (filename != null && !filename.toLowerCase().endsWith(".xlsx")) {
+        if (filename != null && !isSupportedFile(filename)) {
             return ResponseEntity.badRequest().body(
-                    new ExcelImportResult(false, 0, "", "Only .xlsx files are supported")
+                    new ExcelImportResult(false, 0, "", "Only .xlsx, .csv and .tsv files are supported")
             );
         }
 
         try {
-            ExcelImportResult result = excelImportService.importExcel(file, username);
+            ExcelImportResult result = CsvImportService.isCsvFile(filename)
+                    ? csvImportService.importCsv(file, username, importOptions(mode, keyColumn, indexColumns))
+                    : excelImportService.importExcel(file, username, importOptions(mode, keyColumn, indexColumns));
 
             if (result.isSuccess()) {
                 return ResponseEntity.ok(result);
@@ -42,6 +84,8 @@ public class ExcelUploadController {
                 return ResponseEntity.badRequest().body(result);
             }
 
+        } catch (ImportRejectedException e) {
+            throw e;
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(
                     new ExcelImportResult(false, 0, "", "Validation error: " + e.getMessage())
@@ -52,4 +96,159 @@ public class ExcelUploadController {
             );
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Фоновый импорт: сразу возвращает id задачи, прогресс - в /topic/import/{jobId}
+     */
+    @PostMapping("/upload/async")
+    public ResponseEntity<?> uploadExcelAsync(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "username", defaultValue = "anonymous") String username,
+            @RequestParam(value = "mode", defaultValue = "FULL") ImportOptions.Mode mode,
+            @RequestParam(value = "keyColumn", required = false) String keyColumn,
+            @RequestParam(value = "indexColumns", required = false) List<String> indexColumns) {
+
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().body(
+                    new ExcelImportResult(false, 0, "", "File is empty")
+            );
+        }
+
+        String filename = file.getOriginalFilename();
+        if (filename != null && !isSupportedFile(filename)) {
+            return ResponseEntity.badRequest().body(
+                    new ExcelImportResult(false, 0, "", "Only .xlsx, .csv and .tsv files are supported")
+            );
+        }
+
+        try {
+            ImportJobStatus job = importJobService.submit(file, username, importOptions(mode, keyColumn, indexColumns));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (ImportRejectedException e) {
+            throw e;
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(
+                    new ExcelImportResult(false, 0, "", "Import failed: " + e.getMessage())
+            );
+        }
+    }
+
+    /**
+     * Фоновый импорт больших файлов: тело запроса - сам файл (application/octet-stream).
+     * Поток пишется сразу на диск, без multipart-буфера в памяти
+     */
+    @PostMapping(value = "/upload/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadExcelStream(
+            HttpServletRequest request,
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "username", defaultValue = "anonymous") String username,
+            @RequestParam(value = "mode", defaultValue = "FULL") ImportOptions.Mode mode,
+            @RequestParam(value = "keyColumn", required = false) String keyColumn,
+            @RequestParam(value = "indexColumns", required = false) List<String> indexColumns) throws IOException {
+
+        if (!isSupportedFile(filename)) {
+            return ResponseEntity.badRequest().body(
+                    new ExcelImportResult(false, 0, "", "Only .xlsx, .csv and .tsv files are supported")
+            );
+        }
+
+        Path spooled = uploadSpoolService.spool(request.getInputStream(), request.getContentLengthLong());
+        if (Files.size(spooled) == 0) {
+            uploadSpoolService.delete(spooled);
+            return ResponseEntity.badRequest().body(
+                    new ExcelImportResult(false, 0, "", "File is empty")
+            );
+        }
+
+        ImportJobStatus job = importJobService.submit(spooled, filename, username, importOptions(mode, keyColumn, indexColumns));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    /**
+     * Предпросмотр без записи в БД: колонки, их будущие типы, первые строки и оценка размера листов
+     */
+    @PostMapping("/preview")
+    public ResponseEntity<?> previewExcel(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "rows", defaultValue = "20") int rows) {
+
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().body(
+                    new ExcelImportResult(false, 0, "", "File is empty")
+            );
+        }
+
+        String filename = file.getOriginalFilename();
+        if (filename == null || !isSupportedFile(filename)) {
+            return ResponseEntity.badRequest().body(
+                    new ExcelImportResult(false, 0, "", "Only .xlsx, .csv and .tsv files are supported")
+            );
+        }
+
+        try {
+            ImportPreview preview = importPreviewService.preview(file, rows);
+            return ResponseEntity.ok(preview);
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(
+                    new ExcelImportResult(false, 0, "", "File reading error: " + e.getMessage())
+            );
+        }
+    }
+
+    private static ImportOptions importOptions(ImportOptions.Mode mode, String keyColumn, List<String> indexColumns) {
+        return new ImportOptions(mode, keyColumn, indexColumns != null ? indexColumns : List.of());
+    }
+
+    private static boolean isSupportedFile(String filename) {
+        return filename.toLowerCase().endsWith(".xlsx") || CsvImportService.isCsvFile(filename);
+    }
+
+    /**
+     * Состояние фоновой задачи импорта
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ImportJobStatus> getImportJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(importJobService.getStatus(jobId));
+    }
+
+    /**
+     * Отменить фоновую задачу импорта: листы откатываются, при повторном импорте старые данные остаются
+     */
+    @PostMapping("/jobs/{jobId}/cancel")
+    public ResponseEntity<ImportJobStatus> cancelImportJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(importJobService.cancel(jobId));
+    }
+
+    /**
+     * Идущие и последние массовые загрузки: записано строк и байт, скорость
+     */
+    @GetMapping("/loads")
+    public ResponseEntity<List<LoadProgress>> getLoads() {
+        return ResponseEntity.ok(bulkLoadMonitor.getLoads());
+    }
+
+    /**
+     * Остановить загрузку, которая мешает работе БД: она прервется перед следующей пачкой
+     */
+    @PostMapping("/loads/{loadId}/cancel")
+    public ResponseEntity<LoadProgress> cancelLoad(@PathVariable String loadId,
+                                                   @RequestParam(value = "reason", defaultValue = "Cancelled by administrator") String reason) {
+        return ResponseEntity.ok(bulkLoadMonitor.cancel(loadId, reason));
+    }
+
+    /**
+     * Бюджет памяти импортов: занято, выполняется, ждет в очереди, отклонено
+     */
+    @GetMapping("/admission")
+    public ResponseEntity<ImportAdmissionStats> getAdmissionStats() {
+        return ResponseEntity.ok(importAdmissionService.getStats());
+    }
+
+    /**
+     * Текущие и последние параллельные загрузки таблиц: скорость по каждому соединению
+     */
+    @GetMapping("/parallel-load")
+    public ResponseEntity<List<ParallelLoadStats>> getParallelLoadStats() {
+        return ResponseEntity.ok(parallelBulkLoader.getStats());
+    }
+}
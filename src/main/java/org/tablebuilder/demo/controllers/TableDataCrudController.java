@@ -1,10 +1,13 @@
 package org.tablebuilder.demo.controllers;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.tablebuilder.demo.exception.EntityNotFoundException;
 import org.tablebuilder.demo.model.*;
 import org.tablebuilder.demo.service.TableDataService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.tablebuilder.demo.store.TableList;
@@ -26,20 +29,22 @@ public class TableDataCrudController {
     private final TableListRepository tableListRepository;
     private final TableDataService tableDataService;
 
-    @Operation(summary = "Получить все данные таблицы с пагинацией в запросе имя файла и имя листа")
+    @Operation(summary = "Получить все данные таблицы с пагинацией в запросе имя файла и имя листа " +
+            "(cursor - nextCursor предыдущей страницы, вместо page)")
     @GetMapping("/{fileName}/rows")
     public ResponseEntity<PageableResponse<Map<String, Object>>> getAllRows(
             @PathVariable String fileName,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "50") int size,
-            @RequestParam(required = true) String sheetName) {
+            @RequestParam(required = true) String sheetName,
+            @RequestParam(required = false) String cursor) {
         String decodedFileName = URLDecoder.decode(fileName, StandardCharsets.UTF_8);
         String decodedSheetName = sheetName != null
                 ? URLDecoder.decode(sheetName, StandardCharsets.UTF_8)
                 : null;
         try {
             PageableResponse<Map<String, Object>> result = tableDataService.getAllRows(
-                    decodedFileName, decodedSheetName, page, size);
+                    decodedFileName, decodedSheetName, page, size, cursor);
             return ResponseEntity.ok(result);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
@@ -148,20 +153,52 @@ public class TableDataCrudController {
         }
     }
 
-//    @Operation(summary = "Массовое создание строк")
-//    @PostMapping("/{fileName}/batch")
-//    public ResponseEntity<BatchOperationResult> createBatchRows(
-//            @PathVariable String fileName,
-//            @RequestParam(required = false) String sheetName,
-//            @RequestBody List<Map<String, Object>> rowsData) {
-//        try {
-//            BatchOperationResult result = tableDataService.createBatchRows(
-//                    fileName, sheetName, rowsData);
-//            return ResponseEntity.ok(result);
-//        } catch (Exception e) {
-//            return ResponseEntity.badRequest().build();
-//        }
-//    }
+    @Operation(summary = "Массовое создание строк: тело - JSON-массив объектов {колонка: значение}, читается потоком")
+    @PostMapping(value = "/{fileName}/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BatchOperationResult> createBatchRows(
+            @PathVariable String fileName,
+            @RequestParam(required = false) String sheetName,
+            HttpServletRequest request) {
+        try {
+            String decodedFileName = URLDecoder.decode(fileName, StandardCharsets.UTF_8);
+            String decodedSheetName = sheetName != null
+                    ? URLDecoder.decode(sheetName, StandardCharsets.UTF_8)
+                    : null;
+            BatchOperationResult result = tableDataService.createBatchRows(
+                    decodedFileName, decodedSheetName, request.getInputStream());
+            return ResponseEntity.ok(result);
+        } catch (EntityNotFoundException e) {
+            throw e;
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(new BatchOperationResult(0, 0,
+                    List.of(new OperationError(-1, e.getMessage(), null))));
+        }
+    }
+
+    @Operation(summary = "Upsert строк по ключевой колонке: существующие ключи обновляются, новые добавляются. " +
+            "Нужен уникальный индекс по ключу; createKeyIndex=true создает его, если индекса нет")
+    @PutMapping(value = "/{fileName}/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BatchUpsertResult> upsertBatchRows(
+            @PathVariable String fileName,
+            @RequestParam(required = false) String sheetName,
+            @RequestParam String keyColumn,
+            @RequestParam(defaultValue = "false") boolean createKeyIndex,
+            HttpServletRequest request) {
+        try {
+            String decodedFileName = URLDecoder.decode(fileName, StandardCharsets.UTF_8);
+            String decodedSheetName = sheetName != null
+                    ? URLDecoder.decode(sheetName, StandardCharsets.UTF_8)
+                    : null;
+            BatchUpsertResult result = tableDataService.upsertBatchRows(
+                    decodedFileName, decodedSheetName, keyColumn, createKeyIndex, request.getInputStream());
+            return ResponseEntity.ok(result);
+        } catch (EntityNotFoundException e) {
+            throw e;
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(new BatchUpsertResult(keyColumn, 0, 0, 0, 0, 1,
+                    List.of(new OperationError(-1, e.getMessage(), null))));
+        }
+    }
 
     @Operation(summary = "Массовое удаление строк")
     @DeleteMapping("/{fileName}/batch")
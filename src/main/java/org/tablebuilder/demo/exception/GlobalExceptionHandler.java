@@ -1,6 +1,7 @@
 package org.tablebuilder.demo.exception;
 
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -8,6 +9,7 @@ import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.tablebuilder.demo.model.ExcelImportResult;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -27,6 +29,18 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
     }
 
+    @ExceptionHandler(LoadCancelledException.class)
+    public ResponseEntity<String> handleLoadCancelled(LoadCancelledException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("Load cancelled: " + e.getMessage());
+    }
+
+    @ExceptionHandler(ImportRejectedException.class)
+    public ResponseEntity<ExcelImportResult> handleImportRejected(ImportRejectedException e) {
+        return ResponseEntity.status(e.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(new ExcelImportResult(false, 0, "", e.getMessage()));
+    }
+
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public Map<String, String> handleValidationExceptions(
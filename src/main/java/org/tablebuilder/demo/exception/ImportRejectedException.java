@@ -0,0 +1,25 @@
+package org.tablebuilder.demo.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Импорт не допущен: очередь заполнена (429) или память не освободилась за время ожидания (503)
+ */
+public class ImportRejectedException extends RuntimeException {
+    private final HttpStatus status;
+    private final long retryAfterSeconds;
+
+    public ImportRejectedException(HttpStatus status, long retryAfterSeconds, String message) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
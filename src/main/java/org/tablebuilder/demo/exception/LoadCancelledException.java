@@ -0,0 +1,11 @@
+package org.tablebuilder.demo.exception;
+
+/**
+ * Загрузка отменена (пользователем или администратором). Транзакция загрузки откатывается
+ */
+public class LoadCancelledException extends RuntimeException {
+
+    public LoadCancelledException(String msg) {
+        super(msg);
+    }
+}
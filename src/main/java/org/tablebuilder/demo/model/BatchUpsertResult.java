@@ -0,0 +1,27 @@
+package org.tablebuilder.demo.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Результат upsert строк по ключевой колонке")
+public class BatchUpsertResult {
+    @Schema(description = "Ключевая колонка (SQL-имя)")
+    private String keyColumn;
+    @Schema(description = "Новые строки")
+    private int inserted;
+    @Schema(description = "Строки, у которых изменились значения")
+    private int updated;
+    @Schema(description = "Строки, совпавшие с уже сохраненными")
+    private int unchanged;
+    @Schema(description = "Строки с ключом, повторенным ниже в той же пачке (применена последняя из них)")
+    private int collapsed;
+    private int errorCount;
+    private List<OperationError> errors;
+}
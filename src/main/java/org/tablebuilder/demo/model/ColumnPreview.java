@@ -0,0 +1,18 @@
+package org.tablebuilder.demo.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.tablebuilder.demo.utils.ColumnType;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Колонка в предпросмотре импорта")
+public class ColumnPreview {
+    private String originalName;
+    private String sqlName;
+    @Schema(description = "Тип по прочитанным строкам")
+    private ColumnType type;
+}
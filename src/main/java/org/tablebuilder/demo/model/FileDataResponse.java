@@ -18,6 +18,8 @@ public class FileDataResponse {
         private int totalPages;
         private boolean first;
         private boolean last;
+        // Курсор следующей страницы (null - страница последняя)
+        private String nextCursor;
 
         public PaginationInfo(int currentPage, int pageSize, long totalElements) {
             this.currentPage = currentPage;
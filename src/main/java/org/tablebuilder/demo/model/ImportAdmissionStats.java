@@ -0,0 +1,29 @@
+package org.tablebuilder.demo.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@Schema(description = "Состояние допуска импортов по бюджету памяти")
+public class ImportAdmissionStats {
+
+    @Schema(description = "Бюджет памяти на все импорты, байт")
+    private long budgetBytes;
+    @Schema(description = "Занято допущенными импортами, байт")
+    private long usedBytes;
+    @Schema(description = "Доля занятого бюджета, 0..1")
+    private double budgetUsage;
+
+    @Schema(description = "Сколько импортов выполняется")
+    private int running;
+    @Schema(description = "Сколько импортов ждет памяти")
+    private int queued;
+    @Schema(description = "Максимальная длина очереди")
+    private int maxQueue;
+
+    private long admittedTotal;
+    @Schema(description = "Отклонено из-за заполненной очереди (429)")
+    private long rejectedTotal;
+    @Schema(description = "Не дождались памяти (503)")
+    private long timedOutTotal;
+}
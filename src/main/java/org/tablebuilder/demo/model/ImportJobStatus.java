@@ -0,0 +1,39 @@
+package org.tablebuilder.demo.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Schema(description = "Состояние фоновой задачи импорта")
+public class ImportJobStatus {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    private String jobId;
+    private String fileName;
+    private String username;
+    private State state;
+
+    private int totalSheets;
+    private int sheetsDone;
+    @Schema(description = "Оценка числа строк по всем листам (-1 если неизвестно)")
+    private long estimatedRows;
+    private long rowsParsed;
+    private long rowsInserted;
+    private long rowsFailed;
+
+    @Schema(description = "Строк в секунду (записанных)")
+    private double rowsPerSecond;
+    @Schema(description = "Оценка оставшегося времени в секундах (-1 если неизвестно)")
+    private long etaSeconds;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    @Schema(description = "Итог импорта, когда задача завершена")
+    private ExcelImportResult result;
+}
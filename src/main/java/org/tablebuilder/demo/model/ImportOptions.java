@@ -0,0 +1,36 @@
+package org.tablebuilder.demo.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Параметры импорта")
+public class ImportOptions {
+
+    public enum Mode {
+        FULL, DELTA
+    }
+
+    @Schema(description = "FULL - таблицы листов пересоздаются, DELTA - к существующим применяются только изменения")
+    private Mode mode = Mode.FULL;
+
+    @Schema(description = "Ключевая колонка для DELTA (имя из заголовка или SQL-имя). Без ключа строки сопоставляются по содержимому")
+    private String keyColumn;
+
+    @Schema(description = "Колонки (имена из заголовка или SQL-имена), по которым после загрузки строятся индексы")
+    private List<String> indexColumns = List.of();
+
+    public static ImportOptions defaults() {
+        return new ImportOptions();
+    }
+
+    public boolean isDelta() {
+        return mode == Mode.DELTA;
+    }
+}
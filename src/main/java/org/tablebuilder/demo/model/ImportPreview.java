@@ -0,0 +1,21 @@
+package org.tablebuilder.demo.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Schema(description = "Предпросмотр импорта: листы, заголовки и типы колонок без записи в БД")
+public class ImportPreview {
+    private String fileName;
+    @Schema(description = "Имя таблицы файла (префикс таблиц листов)")
+    private String tableName;
+    private long fileSize;
+    @Schema(description = "Файл с таким именем уже импортирован (импорт заменит его таблицы)")
+    private boolean alreadyImported;
+    @Schema(description = "Сколько первых строк каждого листа прочитано")
+    private int previewRows;
+    private List<SheetPreview> sheets = new ArrayList<>();
+}
@@ -0,0 +1,47 @@
+package org.tablebuilder.demo.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.Date;
+
+@Data
+@Schema(description = "Ход массовой загрузки строк в таблицу")
+public class LoadProgress {
+
+    public enum State {
+        RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+
+    /**
+     * Что делать с уже записанными строками при отмене
+     */
+    public enum CancelMode {
+        // Откатить всю загрузку
+        ROLLBACK,
+        // Оставить записанные пачки и остановиться
+        KEEP_WRITTEN
+    }
+
+    private String loadId;
+    private String tableName;
+    private State state;
+    private CancelMode cancelMode;
+    @Schema(description = "Причина отмены (null - загрузка не отменялась)")
+    private String cancelReason;
+
+    private long rowsWritten;
+    private long rowsFailed;
+    @Schema(description = "Объем записанных значений, байт (оценка)")
+    private long bytesWritten;
+    private long chunks;
+    @Schema(description = "Строк в последней пачке")
+    private int lastChunkRows;
+
+    private Date startedAt;
+    @Schema(description = "Время окончания (null - загрузка идет)")
+    private Date finishedAt;
+    private long elapsedMs;
+    @Schema(description = "Средняя скорость загрузки, строк/с")
+    private long rowsPerSecond;
+}
@@ -1,6 +1,5 @@
 package org.tablebuilder.demo.model;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -8,7 +7,6 @@ import java.util.List;
 
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class PageableResponse<T> {
     private List<T> content;
     private int currentPage;
@@ -17,4 +15,17 @@ public class PageableResponse<T> {
     private int totalPages;
     private boolean first;
     private boolean last;
+    // Курсор следующей страницы (null - страница последняя)
+    private String nextCursor;
+
+    public PageableResponse(List<T> content, int currentPage, int pageSize, long totalElements,
+                            int totalPages, boolean first, boolean last) {
+        this.content = content;
+        this.currentPage = currentPage;
+        this.pageSize = pageSize;
+        this.totalElements = totalElements;
+        this.totalPages = totalPages;
+        this.first = first;
+        this.last = last;
+    }
 }
\ No newline at end of file
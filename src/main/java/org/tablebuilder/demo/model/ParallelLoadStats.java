@@ -0,0 +1,31 @@
+package org.tablebuilder.demo.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@Data
+@Schema(description = "Параллельная загрузка одной таблицы по нескольким соединениям")
+public class ParallelLoadStats {
+
+    private String tableName;
+    @Schema(description = "Сколько соединений писали таблицу")
+    private int workers;
+    private Date startedAt;
+    @Schema(description = "Время окончания (null - загрузка идет)")
+    private Date finishedAt;
+    @Schema(description = "Загрузка прервана ошибкой")
+    private boolean failed;
+
+    private long rowsInserted;
+    private long rowsFailed;
+    private long chunks;
+    private long elapsedMs;
+    @Schema(description = "Общая скорость загрузки, строк/с")
+    private long rowsPerSecond;
+
+    private List<WorkerLoadStats> workerStats = new ArrayList<>();
+}
@@ -8,5 +8,7 @@ import java.util.List;
 public class SearchRequest {
     private List<FilterRequest> filters;
     private List<SortRequest> sorts;
+    // Курсор из nextCursor предыдущей страницы: если задан, page игнорируется
+    private String cursor;
 
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package org.tablebuilder.demo.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Schema(description = "Предпросмотр листа")
+public class SheetPreview {
+
+    public enum RowEstimate {
+        EXACT, DIMENSION, EXTRAPOLATED, UNKNOWN
+    }
+
+    private String sheetName;
+    private String tableName;
+    private List<ColumnPreview> columns = new ArrayList<>();
+    @Schema(description = "Первые строки данных (без заголовка)")
+    private List<List<Object>> sampleRows = new ArrayList<>();
+
+    @Schema(description = "Оценка числа строк данных (-1 если неизвестно)")
+    private long estimatedRows = -1;
+    @Schema(description = "Откуда оценка: весь лист прочитан, элемент dimension или экстраполяция по размеру XML")
+    private RowEstimate rowEstimate = RowEstimate.UNKNOWN;
+    @Schema(description = "Размер XML листа без сжатия, байт (-1 если неизвестно)")
+    private long uncompressedSize = -1;
+    @Schema(description = "Размер листа в zip, байт (-1 если неизвестно)")
+    private long compressedSize = -1;
+}
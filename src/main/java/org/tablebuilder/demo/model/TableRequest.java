@@ -12,4 +12,6 @@ public class TableRequest {
     private List<SortRequest> sorts;
     private int page = 0;
     private int size = 50;
+    // Курсор из pagination.nextCursor предыдущей страницы: если задан, page игнорируется
+    private String cursor;
 }
\ No newline at end of file
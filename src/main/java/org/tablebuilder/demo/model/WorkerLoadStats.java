@@ -0,0 +1,21 @@
+package org.tablebuilder.demo.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Одно соединение параллельной загрузки")
+public class WorkerLoadStats {
+    private int worker;
+    private long rowsInserted;
+    private long rowsFailed;
+    private long chunks;
+    @Schema(description = "Время записи в БД, мс (без ожидания пачек от парсера)")
+    private long busyMs;
+    @Schema(description = "Скорость записи этого соединения, строк/с")
+    private long rowsPerSecond;
+}
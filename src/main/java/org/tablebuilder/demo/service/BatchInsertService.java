@@ -1,18 +1,25 @@
 package org.tablebuilder.demo.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.tablebuilder.demo.exception.LoadCancelledException;
+import org.tablebuilder.demo.model.LoadProgress;
+import org.tablebuilder.demo.utils.AdaptiveBatchSizer;
+import org.tablebuilder.demo.utils.ColumnType;
+import org.tablebuilder.demo.utils.ColumnarChunk;
+import org.tablebuilder.demo.utils.NameUtils;
+import org.tablebuilder.demo.utils.ValueConverter;
 
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class BatchInsertService {
@@ -23,23 +30,61 @@ public class BatchInsertService {
     @Autowired
     private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
-    // Оптимальные размеры пачек для разных СУБД
-    private static final int POSTGRES_BATCH_SIZE = 1000;
-    private static final int MYSQL_BATCH_SIZE = 2000;
-    private static final int ORACLE_BATCH_SIZE = 500;
+    @Autowired
+    private DatabaseCapabilities capabilities;
+
+    // Способы записи по @Order: от самого быстрого к самому общему
+    @Autowired
+    private List<BulkWriter> writers;
+
+    @Autowired
+    private PgCopyBulkWriter copyWriter;
+
+    @Autowired
+    private BulkLoadMonitor loadMonitor;
+
+    // Подбор размера пачки по измеренной скорости (иначе - фиксированные размеры)
+    @Value("${app.insert.adaptive.enabled:true}")
+    private boolean adaptiveEnabled;
+
+    @Value("${app.insert.adaptive.min-rows:500}")
+    private int adaptiveMinRows;
+
+    @Value("${app.insert.adaptive.max-rows:50000}")
+    private int adaptiveMaxRows;
+
+    // Предел строк x колонок в одной пачке: широкие листы получают меньшие пачки
+    @Value("${app.insert.adaptive.max-cells:250000}")
+    private int adaptiveMaxCells;
+
+    // Пачка дольше этого времени уменьшается вдвое
+    @Value("${app.insert.adaptive.target-latency-ms:1000}")
+    private long adaptiveTargetLatencyMs;
 
-    // Текущий размер пачки (можно настраивать)
-    private int currentBatchSize = POSTGRES_BATCH_SIZE;
+    // Подобранные размеры по способу записи и числу колонок - следующие загрузки той же формы начинают с них
+    private final Map<String, AdaptiveBatchSizer> sizers = new ConcurrentHashMap<>();
+
+    // Размер пачки потоковой вставки в таблицы с колонками неподдерживаемых типов
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    // Сколько ошибок потоковой вставки возвращать подробно
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    // Размер пачки INSERT, заданный вручную (null - у каждого способа записи свой)
+    private volatile Integer batchSizeOverride;
 
     /**
      * Высокопроизводительная пакетная вставка данных
      */
     @Transactional
     public BatchInsertResult batchInsert(String tableName, List<Map<String, Object>> rows) {
-        if (rows == null || rows.isEmpty()) {
-            return new BatchInsertResult(0, 0, Collections.emptyList());
-        }
+        return batchInsertWithProgress(tableName, rows, null, null, LoadProgress.CancelMode.ROLLBACK);
+    }
 
+    /**
+     * Вставка строк как части загрузки: tracker получает ход по пачкам и может ее остановить
+     */
+    private BatchInsertResult insertRows(String tableName, List<Map<String, Object>> rows,
+                                         BulkLoadMonitor.Tracker tracker) {
         long startTime = System.currentTimeMillis();
         List<InsertError> errors = new ArrayList<>();
         AtomicInteger successCount = new AtomicInteger(0);
@@ -53,19 +98,21 @@ public class BatchInsertService {
                     .map(this::escapeColumnName)
                     .collect(Collectors.toList());
 
-            // Используем multi-value INSERT для лучшей производительности
-            if (isMultiValueInsertSupported()) {
-                processWithMultiValueInsert(tableName, safeColumns, rows, successCount, errors);
-            } else {
-                processWithBatchInsert(tableName, safeColumns, rows, successCount, errors);
-            }
+            // Типы колонок нужны только COPY: без них он пропускается
+            List<ColumnType> types = copyWriter.supports(rows.size()) ? getColumnTypes(tableName, columns) : null;
+
+            BulkLoad load = new BulkLoad(tableName, columns, safeColumns, types, rows);
+            successCount.addAndGet(writeRows(load, errors, tracker));
 
             long endTime = System.currentTimeMillis();
             System.out.printf("Batch insert completed: %d success, %d errors, time: %dms%n",
                     successCount.get(), errors.size(), (endTime - startTime));
 
-            return new BatchInsertResult(successCount.get(), errors.size(), errors);
+            return new BatchInsertResult(successCount.get(), errors.size(), errors, tracker.isCancelled());
 
+        } catch (LoadCancelledException e) {
+            // Отмена должна выйти из транзакционного метода, чтобы транзакция откатилась
+            throw e;
         } catch (Exception e) {
             System.err.println("Batch insert failed: " + e.getMessage());
             return new BatchInsertResult(successCount.get(), rows.size() - successCount.get(), errors);
@@ -73,144 +120,436 @@ public class BatchInsertService {
     }
 
     /**
-     * Multi-value INSERT (один запрос с множеством VALUES) - самый быстрый метод
+     * Потоковая вставка: строки (значения по порядку columns) читаются пачками по подобранному
+     * размеру, в памяти одновременно только одна пачка. Подробности ошибок хранятся для первых
+     * MAX_REPORTED_ERRORS строк, счетчик ошибок - полный
+     *
+     * @param columns SQL-имена колонок в порядке значений строки
      */
-    private void processWithMultiValueInsert(String tableName, List<String> columns,
-                                             List<Map<String, Object>> rows,
-                                             AtomicInteger successCount, List<InsertError> errors) {
-
-        // Разбиваем на пачки для избежания ограничений SQL
-        for (int i = 0; i < rows.size(); i += currentBatchSize) {
-            int end = Math.min(i + currentBatchSize, rows.size());
-            List<Map<String, Object>> batch = rows.subList(i, end);
+    @Transactional
+    public BatchInsertResult batchInsert(String tableName, List<String> columns, Iterator<Object[]> rows) {
+        return batchInsert(tableName, columns, rows, null, null, LoadProgress.CancelMode.ROLLBACK);
+    }
 
-            try {
-                String sql = buildMultiValueInsertSQL(tableName, columns, batch.size());
-                List<Object> allValues = flattenBatchValues(columns, batch);
+    /**
+     * Потоковая вставка с ходом по пачкам и отменой. Отмена проверяется перед каждой пачкой:
+     * в режиме ROLLBACK загрузка откатывается (LoadCancelledException), в KEEP_WRITTEN -
+     * записанные пачки остаются, а результат помечается как отмененный
+     *
+     * @param callback получает onChunk после каждой пачки и onComplete в конце (может быть null)
+     * @param token    токен отмены (null - отменить можно только через BulkLoadMonitor)
+     * @throws LoadCancelledException если загрузка отменена в режиме ROLLBACK
+     */
+    @Transactional
+    public BatchInsertResult batchInsert(String tableName, List<String> columns, Iterator<Object[]> rows,
+                                         ProgressCallback callback, CancellationToken token,
+                                         LoadProgress.CancelMode mode) {
+        BulkLoadMonitor.Tracker tracker = loadMonitor.start(tableName, mode, token, callback);
+        BatchInsertResult result;
+        try {
+            result = streamRows(tableName, columns, rows, tracker);
+        } catch (RuntimeException e) {
+            tracker.finish(true);
+            throw e;
+        }
+        tracker.finish(false);
+        if (callback != null) {
+            callback.onComplete(result);
+        }
+        return result;
+    }
 
-                int[] results = jdbcTemplate.batchUpdate(sql,
-                        new MultiValueBatchPreparedStatementSetter(columns, batch));
+    private BatchInsertResult streamRows(String tableName, List<String> columns, Iterator<Object[]> rows,
+                                         BulkLoadMonitor.Tracker tracker) {
+        List<ColumnType> types = getColumnTypes(tableName, columns);
+        if (types == null) {
+            return batchInsertRowMaps(tableName, columns, rows, tracker);
+        }
 
-                // Считаем успешные вставки
-                int batchSuccess = Arrays.stream(results).sum();
-                successCount.addAndGet(batchSuccess);
+        long startTime = System.currentTimeMillis();
+        AdaptiveBatchSizer sizer = copySizer(columns.size(), copyWriter.getDefaultBatchSize());
+        ColumnarChunk chunk = new ColumnarChunk(columns, types, sizer.getMaxSize());
+        int successCount = 0;
+        int errorCount = 0;
+        List<InsertError> errors = new ArrayList<>();
+        int rowIndex = 0;
 
-            } catch (Exception e) {
-                // При ошибке пачки, пробуем вставить по одному
-                processBatchIndividually(tableName, columns, batch, i, successCount, errors, e);
+        while (rows.hasNext() && !tracker.stopRequested()) {
+            chunk.setLimit(sizer.current());
+            while (!chunk.isFull() && rows.hasNext()) {
+                chunk.addRow(rowIndex++, Arrays.asList(rows.next()));
             }
+            BatchInsertResult result = batchInsert(tableName, chunk);
+            successCount += result.getSuccessCount();
+            errorCount += result.getErrorCount();
+            collectErrors(errors, result.getErrors(), 0);
+            tracker.record(result.getSuccessCount(), result.getErrorCount(), chunk.estimateBytes());
+            chunk.clear();
         }
+
+        System.out.printf("Streaming insert into %s %s: %d success, %d errors, time: %dms%n",
+                tableName, tracker.isCancelled() ? "cancelled" : "completed", successCount, errorCount,
+                System.currentTimeMillis() - startTime);
+        return new BatchInsertResult(successCount, errorCount, errors, tracker.isCancelled());
     }
 
     /**
-     * Классический batch insert (менее производительный, но более надежный)
+     * Потоковая вставка из Stream (поток закрывается после чтения)
      */
-    private void processWithBatchInsert(String tableName, List<String> columns,
-                                        List<Map<String, Object>> rows,
-                                        AtomicInteger successCount, List<InsertError> errors) {
-
-        String sql = buildInsertSQL(tableName, columns);
-
-        // Разбиваем на пачки
-        for (int i = 0; i < rows.size(); i += currentBatchSize) {
-            int end = Math.min(i + currentBatchSize, rows.size());
-            List<Map<String, Object>> batch = rows.subList(i, end);
+    @Transactional
+    public BatchInsertResult batchInsert(String tableName, List<String> columns, Stream<Object[]> rows) {
+        try (rows) {
+            return batchInsert(tableName, columns, rows.iterator());
+        }
+    }
 
-            try {
-                int[] results = jdbcTemplate.batchUpdate(sql,
-                        new SimpleBatchPreparedStatementSetter(columns, batch));
+    /**
+     * Upsert по ключевой колонке: пачки строк грузятся через COPY во временную таблицу, затем
+     * одним INSERT ... ON CONFLICT (key) DO UPDATE переносятся в таблицу. Строки, у которых
+     * ничего не изменилось, не переписываются. ON CONFLICT нужен уникальный индекс по ключу: без него
+     * upsert отклоняется, если только createKeyIndex не разрешает создать индекс (он остается в таблице).
+     * Если ключ повторяется внутри пачки, применяется последняя строка, остальные считаются схлопнутыми
+     *
+     * @param columns        SQL-имена колонок в порядке значений строки
+     * @param keyColumn      SQL-имя ключевой колонки (одна из columns)
+     * @param createKeyIndex создать уникальный индекс по ключу, если его нет
+     * @throws IllegalArgumentException если ключа нет среди колонок, по нему нет уникального индекса
+     *                                  (и создавать его не разрешено) или в таблице есть повторы ключа
+     * @throws IllegalStateException    если база не PostgreSQL
+     */
+    @Transactional
+    public UpsertResult batchUpsert(String tableName, List<String> columns, String keyColumn, boolean createKeyIndex,
+                                    Iterator<Object[]> rows) {
+        if (!capabilities.isPostgres()) {
+            throw new IllegalStateException("Upsert requires PostgreSQL");
+        }
+        int keyIndex = columns.indexOf(keyColumn);
+        if (keyIndex < 0) {
+            throw new IllegalArgumentException("Key column '" + keyColumn + "' is not among the row columns");
+        }
+        List<ColumnType> types = getColumnTypes(tableName, columns);
+        if (types == null) {
+            throw new IllegalArgumentException("Table " + tableName + " has no columns " + columns + " of supported types");
+        }
 
-                int batchSuccess = Arrays.stream(results).sum();
-                successCount.addAndGet(batchSuccess);
+        long startTime = System.currentTimeMillis();
+        // Upsert виден в мониторе загрузок; отмена откатывает его целиком
+        BulkLoadMonitor.Tracker tracker = loadMonitor.start(tableName, LoadProgress.CancelMode.ROLLBACK, null, null);
+        try {
+            UpsertResult result = upsertRows(tableName, columns, keyColumn, keyIndex, createKeyIndex, types, rows, tracker);
+            tracker.finish(false);
+            System.out.printf("Upsert into %s by %s completed: %d inserted, %d updated, %d unchanged, %d collapsed, " +
+                            "%d errors, time: %dms%n",
+                    tableName, keyColumn, result.getInserted(), result.getUpdated(), result.getUnchanged(),
+                    result.getCollapsed(), result.getErrorCount(), System.currentTimeMillis() - startTime);
+            return result;
+        } catch (RuntimeException e) {
+            tracker.finish(true);
+            throw e;
+        }
+    }
 
-            } catch (Exception e) {
-                processBatchIndividually(tableName, columns, batch, i, successCount, errors, e);
+    private UpsertResult upsertRows(String tableName, List<String> columns, String keyColumn, int keyIndex,
+                                    boolean createKeyIndex, List<ColumnType> types, Iterator<Object[]> rows,
+                                    BulkLoadMonitor.Tracker tracker) {
+        ensureUniqueKey(tableName, keyColumn, createKeyIndex);
+        String stageTable = createUpsertStage(tableName, columns);
+        String upsertSql = buildUpsertSQL(tableName, stageTable, columns, keyColumn);
+
+        AdaptiveBatchSizer sizer = sizer("upsert", columns.size(), copyWriter.getDefaultBatchSize());
+        ColumnarChunk chunk = new ColumnarChunk(columns, types, sizer.getMaxSize());
+        int inserted = 0;
+        int updated = 0;
+        int unchanged = 0;
+        int collapsed = 0;
+        int errorCount = 0;
+        List<InsertError> errors = new ArrayList<>();
+        int rowIndex = 0;
+
+        while (rows.hasNext()) {
+            // Режим ROLLBACK: отмена бросает LoadCancelledException
+            tracker.stopRequested();
+            chunk.setLimit(sizer.current());
+            List<InsertError> keyErrors = new ArrayList<>();
+            while (!chunk.isFull() && rows.hasNext()) {
+                Object[] values = rows.next();
+                if (keyIndex >= values.length || ValueConverter.isEmpty(values[keyIndex])) {
+                    keyErrors.add(new InsertError(rowIndex++, "Key column is empty", null, keyColumn, null));
+                    continue;
+                }
+                chunk.addRow(rowIndex++, Arrays.asList(values));
             }
+
+            long chunkStart = System.nanoTime();
+            jdbcTemplate.execute("TRUNCATE " + stageTable + " RESTART IDENTITY");
+            BatchInsertResult staged = batchInsert(stageTable, chunk);
+            Map<String, Object> counts = jdbcTemplate.queryForMap(upsertSql);
+            sizer.record(chunk.size(), System.nanoTime() - chunkStart);
+
+            int chunkInserted = ((Number) counts.get("inserted")).intValue();
+            int chunkUpdated = ((Number) counts.get("updated")).intValue();
+            int chunkKeys = ((Number) counts.get("distinct_keys")).intValue();
+            inserted += chunkInserted;
+            updated += chunkUpdated;
+            // Из строк с одинаковым ключом в таблицу попадает только последняя
+            unchanged += chunkKeys - chunkInserted - chunkUpdated;
+            collapsed += staged.getSuccessCount() - chunkKeys;
+            errorCount += keyErrors.size() + staged.getErrorCount();
+            collectErrors(errors, keyErrors, 0);
+            collectErrors(errors, staged.getErrors(), 0);
+            tracker.record(chunkInserted + chunkUpdated, keyErrors.size() + staged.getErrorCount(), chunk.estimateBytes());
+            chunk.clear();
         }
+
+        return new UpsertResult(inserted, updated, unchanged, collapsed, errorCount, errors);
     }
 
     /**
-     * Обработка пачки по одному при ошибке batch
+     * Уникальный индекс по ключу (нужен ON CONFLICT). Если подходящего нет, создается только по запросу
      */
-    private void processBatchIndividually(String tableName, List<String> columns,
-                                          List<Map<String, Object>> batch, int startIndex,
-                                          AtomicInteger successCount, List<InsertError> errors,
-                                          Exception batchError) {
-
-        System.err.println("Batch failed, processing individually: " + batchError.getMessage());
-
-        String sql = buildInsertSQL(tableName, columns);
-
-        for (int j = 0; j < batch.size(); j++) {
-            int globalIndex = startIndex + j;
-            Map<String, Object> row = batch.get(j);
+    private void ensureUniqueKey(String tableName, String keyColumn, boolean createKeyIndex) {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_index i " +
+                "JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = i.indkey[0] " +
+                "WHERE i.indrelid = to_regclass(?) AND i.indisunique AND i.indnkeyatts = 1 " +
+                "AND i.indpred IS NULL AND a.attname = ?)",
+                Boolean.class, tableName, keyColumn);
+        if (Boolean.TRUE.equals(exists)) {
+            return;
+        }
+        if (!createKeyIndex) {
+            throw new IllegalArgumentException("Key column '" + keyColumn + "' has no unique index in " + tableName +
+                    "; pass createKeyIndex=true to create it");
+        }
 
-            try {
-                int result = jdbcTemplate.update(sql, getRowValues(columns, row));
-                if (result > 0) {
-                    successCount.incrementAndGet();
-                }
-            } catch (Exception e) {
-                errors.add(new InsertError(globalIndex, e.getMessage(), row));
-                System.err.printf("Failed to insert row %d: %s%n", globalIndex, e.getMessage());
-            }
+        String key = escapeColumnName(keyColumn);
+        List<Integer> duplicates = jdbcTemplate.queryForList(
+                "SELECT 1 FROM " + tableName + " WHERE " + key + " IS NOT NULL " +
+                "GROUP BY " + key + " HAVING count(*) > 1 LIMIT 1", Integer.class);
+        if (!duplicates.isEmpty()) {
+            throw new IllegalArgumentException("Key column '" + keyColumn + "' has duplicate values in " + tableName);
         }
+        String indexName = NameUtils.indexName(tableName, keyColumn, "_key");
+        System.out.println("Creating unique index " + indexName + " for upsert");
+        jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + indexName + " ON " + tableName + " (" + key + ")");
     }
 
     /**
-     * Multi-value INSERT SQL: INSERT INTO table (col1, col2) VALUES (?, ?), (?, ?), ...
+     * Временная таблица с колонками таблицы (без id) и порядковым номером строки; удаляется при коммите
      */
-    private String buildMultiValueInsertSQL(String tableName, List<String> columns, int rowCount) {
-        StringBuilder sql = new StringBuilder("INSERT INTO ");
-        sql.append(tableName).append(" (");
-        sql.append(String.join(", ", columns));
-        sql.append(") VALUES ");
+    private String createUpsertStage(String tableName, List<String> columns) {
+        String stageTable = NameUtils.withSuffix(tableName, "_ups");
+        String columnList = columns.stream().map(this::escapeColumnName).collect(Collectors.joining(", "));
+        jdbcTemplate.execute("DROP TABLE IF EXISTS pg_temp." + stageTable);
+        jdbcTemplate.execute("CREATE TEMP TABLE " + stageTable + " ON COMMIT DROP AS SELECT " + columnList +
+                " FROM " + tableName + " WITH NO DATA");
+        jdbcTemplate.execute("ALTER TABLE " + stageTable + " ADD COLUMN upsert_ord BIGINT GENERATED ALWAYS AS IDENTITY");
+        return stageTable;
+    }
 
-        // Создаем placeholders для всех строк: (?, ?, ?), (?, ?, ?), ...
-        String rowPlaceholder = "(" + "?, ".repeat(columns.size() - 1) + "?)";
-        sql.append(String.join(", ", Collections.nCopies(rowCount, rowPlaceholder)));
+    /**
+     * INSERT ... ON CONFLICT с подсчетом: xmax = 0 у только что вставленной строки,
+     * у обновленной - id текущей транзакции. Неизменившиеся строки отсекает WHERE и в RETURNING не попадают.
+     * distinct_keys - число разных ключей пачки (строк, которые дошли до INSERT после DISTINCT ON)
+     */
+    private String buildUpsertSQL(String tableName, String stageTable, List<String> columns, String keyColumn) {
+        String key = escapeColumnName(keyColumn);
+        List<String> safeColumns = columns.stream().map(this::escapeColumnName).toList();
+        String columnList = String.join(", ", safeColumns);
+        List<String> valueColumns = safeColumns.stream().filter(column -> !column.equals(key)).toList();
+
+        String conflict;
+        if (valueColumns.isEmpty()) {
+            conflict = "DO NOTHING";
+        } else {
+            conflict = "DO UPDATE SET " + valueColumns.stream()
+                    .map(column -> column + " = EXCLUDED." + column)
+                    .collect(Collectors.joining(", ")) +
+                    " WHERE ROW(" + valueColumns.stream().map(column -> "t." + column).collect(Collectors.joining(", ")) +
+                    ") IS DISTINCT FROM ROW(" + valueColumns.stream().map(column -> "EXCLUDED." + column)
+                    .collect(Collectors.joining(", ")) + ")";
+        }
 
-        return sql.toString();
+        // Новые строки получают id в порядке источника
+        return "WITH upserted AS (" +
+                "INSERT INTO " + tableName + " AS t (" + columnList + ") " +
+                "SELECT " + columnList + " FROM (" +
+                "SELECT DISTINCT ON (" + key + ") * FROM " + stageTable + " ORDER BY " + key + ", upsert_ord DESC" +
+                ") s ORDER BY upsert_ord " +
+                "ON CONFLICT (" + key + ") " + conflict + " " +
+                "RETURNING xmax = 0 AS is_insert) " +
+                "SELECT count(*) FILTER (WHERE is_insert) AS inserted, " +
+                "count(*) FILTER (WHERE NOT is_insert) AS updated, " +
+                "(SELECT count(DISTINCT " + key + ") FROM " + stageTable + ") AS distinct_keys FROM upserted";
     }
 
     /**
-     * Классический INSERT SQL для одной строки
+     * Потоковая вставка в таблицу с колонками неподдерживаемых ColumnarChunk типов: пачки из map
      */
-    private String buildInsertSQL(String tableName, List<String> columns) {
-        StringBuilder sql = new StringBuilder("INSERT INTO ");
-        sql.append(tableName).append(" (");
-        sql.append(String.join(", ", columns));
-        sql.append(") VALUES (");
-        sql.append("?, ".repeat(columns.size() - 1));
-        sql.append("?)");
+    private BatchInsertResult batchInsertRowMaps(String tableName, List<String> columns, Iterator<Object[]> rows,
+                                                 BulkLoadMonitor.Tracker tracker) {
+        int successCount = 0;
+        int errorCount = 0;
+        List<InsertError> errors = new ArrayList<>();
+        int offset = 0;
+        Integer override = batchSizeOverride;
+        int batchSize = override != null ? override : DEFAULT_BATCH_SIZE;
+
+        while (rows.hasNext() && !tracker.stopRequested()) {
+            List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && rows.hasNext()) {
+                Object[] values = rows.next();
+                Map<String, Object> row = new LinkedHashMap<>();
+                for (int c = 0; c < columns.size(); c++) {
+                    row.put(columns.get(c), c < values.length ? values[c] : null);
+                }
+                batch.add(row);
+            }
+            BatchInsertResult result = insertRows(tableName, batch, tracker);
+            successCount += result.getSuccessCount();
+            errorCount += result.getErrorCount();
+            collectErrors(errors, result.getErrors(), offset);
+            offset += batch.size();
+        }
+        return new BatchInsertResult(successCount, errorCount, errors, tracker.isCancelled());
+    }
 
-        return sql.toString();
+    private static void collectErrors(List<InsertError> target, List<InsertError> source, int offset) {
+        for (InsertError error : source) {
+            if (target.size() >= MAX_REPORTED_ERRORS) {
+                return;
+            }
+            target.add(offset == 0 ? error : new InsertError(offset + error.getRowIndex(), error.getMessage(),
+                    error.getRowData(), error.getColumn(), error.getValue()));
+        }
     }
 
     /**
-     * "Выравнивает" значения всех строк в один список для multi-value INSERT
+     * Вставка колоночной пачки. Строки, отклоненные при приведении типов, попадают в ошибки
      */
-    private List<Object> flattenBatchValues(List<String> columns, List<Map<String, Object>> batch) {
-        List<Object> allValues = new ArrayList<>(columns.size() * batch.size());
+    @Transactional
+    public BatchInsertResult batchInsert(String tableName, ColumnarChunk chunk) {
+        List<InsertError> errors = new ArrayList<>();
+        for (ColumnarChunk.RejectedRow rejected : chunk.getRejectedRows()) {
+            errors.add(new InsertError(rejected.getRowIndex(), rejected.getMessage(), rejected.getValues(),
+                    rejected.getColumn(), rejected.getValues().get(rejected.getColumn())));
+        }
+        if (chunk.isEmpty()) {
+            return new BatchInsertResult(0, errors.size(), errors);
+        }
+
+        long startTime = System.currentTimeMillis();
+        AtomicInteger successCount = new AtomicInteger(0);
 
-        for (Map<String, Object> row : batch) {
-            for (String column : columns) {
-                allValues.add(row.get(column));
+        try {
+            List<String> safeColumns = chunk.getColumns().stream()
+                    .map(this::escapeColumnName)
+                    .collect(Collectors.toList());
+
+            boolean copied = false;
+            if (copyWriter.supports(chunk.size())) {
+                try {
+                    long copyStart = System.nanoTime();
+                    int rowsCopied = copyWriter.write(tableName, safeColumns, chunk);
+                    copySizer(safeColumns.size(), chunk.getLimit()).record(rowsCopied, System.nanoTime() - copyStart);
+                    successCount.addAndGet(rowsCopied);
+                    copied = true;
+                } catch (Exception e) {
+                    // COPY откатился к savepoint - повторяем пачку обычным INSERT
+                    System.err.println("COPY failed, falling back to INSERT: " + e.getMessage());
+                }
             }
+
+            if (!copied) {
+                // Медленный путь: строки собираются в map только здесь
+                List<Map<String, Object>> rows = new ArrayList<>(chunk.size());
+                for (int r = 0; r < chunk.size(); r++) {
+                    Map<String, Object> row = chunk.getRowMap(r);
+                    if (chunk.hasIds()) {
+                        row.put("id", chunk.getId(r));
+                    }
+                    rows.add(row);
+                }
+                List<String> columns = new ArrayList<>(chunk.getColumns());
+                if (chunk.hasIds()) {
+                    columns.add("id");
+                }
+                List<String> sqlColumns = columns.stream().map(this::escapeColumnName).toList();
+                // Без типов: COPY для этих строк уже не подошел
+                BulkLoad load = new BulkLoad(tableName, columns, sqlColumns, null, rows);
+                List<InsertError> insertErrors = new ArrayList<>();
+                successCount.addAndGet(writeRows(load, insertErrors, null));
+                // Номер строки в пачке -> номер строки в источнике
+                for (InsertError error : insertErrors) {
+                    errors.add(new InsertError(chunk.getRowIndex(error.getRowIndex()), error.getMessage(),
+                            error.getRowData(), error.getColumn(), error.getValue()));
+                }
+            }
+
+            long endTime = System.currentTimeMillis();
+            System.out.printf("Batch insert completed: %d success, %d errors, time: %dms%n",
+                    successCount.get(), errors.size(), (endTime - startTime));
+
+            return new BatchInsertResult(successCount.get(), errors.size(), errors);
+
+        } catch (Exception e) {
+            System.err.println("Batch insert failed: " + e.getMessage());
+            return new BatchInsertResult(successCount.get(), chunk.size() + chunk.getRejectedRows().size() - successCount.get(), errors);
         }
+    }
 
-        return allValues;
+    /**
+     * Запись строк первым подходящим для загрузки способом
+     *
+     * @param tracker получает ход после каждой пачки и может остановить запись (null - не отслеживать)
+     */
+    private int writeRows(BulkLoad load, List<InsertError> errors, BulkLoadMonitor.Tracker tracker) {
+        List<BulkWriter> chain = writers.stream().filter(writer -> writer.supports(load)).toList();
+        return writeWith(chain, 0, load, load.getRows(), 0, errors, tracker);
     }
 
     /**
-     * Получает значения строки в правильном порядке колонок
+     * Запись способом chain[level] пачками подобранного для него размера. Пачка, которую способ
+     * не смог записать (откатилась целиком), повторяется следующим способом цепочки
      */
-    private Object[] getRowValues(List<String> columns, Map<String, Object> row) {
-        Object[] values = new Object[columns.size()];
-        for (int i = 0; i < columns.size(); i++) {
-            values[i] = row.get(columns.get(i));
+    private int writeWith(List<BulkWriter> chain, int level, BulkLoad load, List<Map<String, Object>> rows,
+                          int startIndex, List<InsertError> errors, BulkLoadMonitor.Tracker tracker) {
+        BulkWriter writer = chain.get(level);
+        int rowsPerStatement = writer.rowsPerStatement(load);
+        AdaptiveBatchSizer sizer = writerSizer(writer, load.getColumnCount());
+        int written = 0;
+        int size;
+        for (int i = 0; i < rows.size(); i += size) {
+            if (tracker != null && tracker.stopRequested()) {
+                break;
+            }
+            // Пачка - целое число полных запросов: неполный остается только в конце загрузки
+            size = Math.max(1, sizer.current() / rowsPerStatement) * rowsPerStatement;
+            int end = Math.min(i + size, rows.size());
+            List<Map<String, Object>> batch = rows.subList(i, end);
+
+            long batchStart = System.nanoTime();
+            int errorsBefore = errors.size();
+            try {
+                int batchWritten = writer.write(load, batch, startIndex + i, errors);
+                written += batchWritten;
+                if (errors.size() == errorsBefore) {
+                    sizer.record(batch.size(), System.nanoTime() - batchStart);
+                }
+                if (tracker != null) {
+                    tracker.record(batchWritten, errors.size() - errorsBefore, load.estimateBytes(batch));
+                }
+            } catch (DataAccessException e) {
+                if (level + 1 >= chain.size()) {
+                    throw e;
+                }
+                System.err.println(writer.getName() + " failed, falling back to "
+                        + chain.get(level + 1).getName() + ": " + e.getMessage());
+                errors.subList(errorsBefore, errors.size()).clear();
+                written += writeWith(chain, level + 1, load, batch, startIndex + i, errors, tracker);
+            }
         }
-        return values;
+        return written;
     }
 
     /**
@@ -236,78 +575,63 @@ public class BatchInsertService {
     }
 
     /**
-     * Проверка поддержки multi-value INSERT
+     * Размер пачек COPY для таблиц с таким числом колонок
+     *
+     * @param initialSize начальный размер, если такой формы еще не было
      */
-    private boolean isMultiValueInsertSupported() {
-        // PostgreSQL, MySQL, SQLite поддерживают multi-value INSERT
-        try {
-            String dbName = jdbcTemplate.getDataSource().getConnection().getMetaData().getDatabaseProductName();
-            return dbName.toLowerCase().contains("postgresql") ||
-                    dbName.toLowerCase().contains("mysql") ||
-                    dbName.toLowerCase().contains("sqlite");
-        } catch (Exception e) {
-            return false; // В случае ошибки используем классический batch
-        }
+    public AdaptiveBatchSizer copySizer(int columnCount, int initialSize) {
+        return sizer("copy", columnCount, initialSize);
     }
 
-    // ========== BATCH SETTER CLASSES ==========
-
     /**
-     * BatchPreparedStatementSetter для multi-value INSERT
+     * Размер пачек способа записи: начинается с его размера по умолчанию или с заданного вручную
      */
-    private static class MultiValueBatchPreparedStatementSetter implements BatchPreparedStatementSetter {
-        private final List<String> columns;
-        private final List<Map<String, Object>> batch;
-        private final int valuesPerRow;
-
-        public MultiValueBatchPreparedStatementSetter(List<String> columns, List<Map<String, Object>> batch) {
-            this.columns = columns;
-            this.batch = batch;
-            this.valuesPerRow = columns.size();
-        }
-
-        @Override
-        public void setValues(PreparedStatement ps, int batchIndex) throws SQLException {
-            // Для multi-value все значения передаются в одном batch
-            int totalValues = batch.size() * valuesPerRow;
-            for (int i = 0; i < totalValues; i++) {
-                int rowIndex = i / valuesPerRow;
-                int colIndex = i % valuesPerRow;
-                Object value = batch.get(rowIndex).get(columns.get(colIndex));
-                ps.setObject(i + 1, value);
-            }
-        }
+    private AdaptiveBatchSizer writerSizer(BulkWriter writer, int columnCount) {
+        Integer override = batchSizeOverride;
+        boolean copy = writer == copyWriter;
+        return sizer(writer.getName(), columnCount,
+                override != null && !copy ? override : writer.getDefaultBatchSize());
+    }
 
-        @Override
-        public int getBatchSize() {
-            return 1; // Для multi-value весь batch - один statement
+    private AdaptiveBatchSizer sizer(String method, int columnCount, int initialSize) {
+        if (!adaptiveEnabled) {
+            return new AdaptiveBatchSizer(initialSize, initialSize, initialSize, adaptiveTargetLatencyMs);
         }
+        int maxRows = Math.min(adaptiveMaxRows, adaptiveMaxCells / Math.max(1, columnCount));
+        return sizers.computeIfAbsent(method + ":" + columnCount, key ->
+                new AdaptiveBatchSizer(adaptiveMinRows, maxRows, initialSize, adaptiveTargetLatencyMs));
     }
 
     /**
-     * BatchPreparedStatementSetter для классического batch insert
+     * Типы колонок таблицы (для COPY и колоночных пачек). null - если есть колонка неподдерживаемого типа
      */
-    private static class SimpleBatchPreparedStatementSetter implements BatchPreparedStatementSetter {
-        private final List<String> columns;
-        private final List<Map<String, Object>> batch;
-
-        public SimpleBatchPreparedStatementSetter(List<String> columns, List<Map<String, Object>> batch) {
-            this.columns = columns;
-            this.batch = batch;
-        }
-
-        @Override
-        public void setValues(PreparedStatement ps, int i) throws SQLException {
-            Map<String, Object> row = batch.get(i);
-            for (int j = 0; j < columns.size(); j++) {
-                ps.setObject(j + 1, row.get(columns.get(j)));
+    public List<ColumnType> getColumnTypes(String tableName, List<String> columns) {
+        Map<String, String> dataTypes = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT column_name, data_type FROM information_schema.columns WHERE table_name = ?",
+                rs -> {
+                    dataTypes.put(rs.getString("column_name"), rs.getString("data_type"));
+                },
+                tableName
+        );
+
+        List<ColumnType> types = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            String dataType = dataTypes.get(column);
+            if (dataType == null) {
+                return null;
+            }
+            switch (dataType) {
+                case "numeric" -> types.add(ColumnType.NUMBER);
+                case "date" -> types.add(ColumnType.DATE);
+                case "boolean" -> types.add(ColumnType.BOOLEAN);
+                case "text" -> types.add(ColumnType.TEXT);
+                default -> {
+                    return null;
+                }
             }
         }
-
-        @Override
-        public int getBatchSize() {
-            return batch.size();
-        }
+        return types;
     }
 
     // ========== SUPPORT CLASSES ==========
@@ -319,17 +643,55 @@ public class BatchInsertService {
         private final int successCount;
         private final int errorCount;
         private final List<InsertError> errors;
+        // Загрузка остановлена отменой, записанные строки сохранены
+        private final boolean cancelled;
 
         public BatchInsertResult(int successCount, int errorCount, List<InsertError> errors) {
+            this(successCount, errorCount, errors, false);
+        }
+
+        public BatchInsertResult(int successCount, int errorCount, List<InsertError> errors, boolean cancelled) {
             this.successCount = successCount;
             this.errorCount = errorCount;
             this.errors = errors;
+            this.cancelled = cancelled;
         }
 
         // Getters
         public int getSuccessCount() { return successCount; }
         public int getErrorCount() { return errorCount; }
         public List<InsertError> getErrors() { return errors; }
+        public boolean isCancelled() { return cancelled; }
+    }
+
+    /**
+     * Результат upsert: вставлено, обновлено, совпало с уже имеющимися строками,
+     * заменено более поздней строкой с тем же ключом в той же пачке
+     */
+    public static class UpsertResult {
+        private final int inserted;
+        private final int updated;
+        private final int unchanged;
+        private final int collapsed;
+        private final int errorCount;
+        private final List<InsertError> errors;
+
+        public UpsertResult(int inserted, int updated, int unchanged, int collapsed, int errorCount,
+                            List<InsertError> errors) {
+            this.inserted = inserted;
+            this.updated = updated;
+            this.unchanged = unchanged;
+            this.collapsed = collapsed;
+            this.errorCount = errorCount;
+            this.errors = errors;
+        }
+
+        public int getInserted() { return inserted; }
+        public int getUpdated() { return updated; }
+        public int getUnchanged() { return unchanged; }
+        public int getCollapsed() { return collapsed; }
+        public int getErrorCount() { return errorCount; }
+        public List<InsertError> getErrors() { return errors; }
     }
 
     /**
@@ -339,17 +701,30 @@ public class BatchInsertService {
         private final int rowIndex;
         private final String message;
         private final Map<String, Object> rowData;
+        private final String column;
+        private final Object value;
 
         public InsertError(int rowIndex, String message, Map<String, Object> rowData) {
+            this(rowIndex, message, rowData, null, null);
+        }
+
+        /**
+         * @param column колонка, значение которой не удалось записать (null - если не определена)
+         */
+        public InsertError(int rowIndex, String message, Map<String, Object> rowData, String column, Object value) {
             this.rowIndex = rowIndex;
             this.message = message;
             this.rowData = rowData;
+            this.column = column;
+            this.value = value;
         }
 
         // Getters
         public int getRowIndex() { return rowIndex; }
         public String getMessage() { return message; }
         public Map<String, Object> getRowData() { return rowData; }
+        public String getColumn() { return column; }
+        public Object getValue() { return value; }
     }
 
     // ========== ДОПОЛНИТЕЛЬНЫЕ МЕТОДЫ ==========
@@ -360,11 +735,45 @@ public class BatchInsertService {
     @Transactional
     public BatchInsertResult batchInsertWithProgress(String tableName, List<Map<String, Object>> rows,
                                                      ProgressCallback callback) {
+        return batchInsertWithProgress(tableName, rows, callback, null, LoadProgress.CancelMode.ROLLBACK);
+    }
+
+    /**
+     * Пакетная вставка с ходом по пачкам и отменой (см. потоковый batchInsert)
+     *
+     * @throws LoadCancelledException если загрузка отменена в режиме ROLLBACK
+     */
+    @Transactional
+    public BatchInsertResult batchInsertWithProgress(String tableName, List<Map<String, Object>> rows,
+                                                     ProgressCallback callback, CancellationToken token,
+                                                     LoadProgress.CancelMode mode) {
         if (rows == null || rows.isEmpty()) {
             return new BatchInsertResult(0, 0, Collections.emptyList());
         }
 
-        BatchInsertResult result = batchInsert(tableName, rows);
+        BulkLoadMonitor.Tracker tracker = loadMonitor.start(tableName, mode, token, callback);
+        BatchInsertResult result;
+        try {
+            result = insertRows(tableName, rows, tracker);
+        } catch (RuntimeException e) {
+            tracker.finish(true);
+            throw e;
+        }
+        tracker.finish(false);
+
+        if (callback != null) {
+            callback.onComplete(result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Вставка колоночной пачки с прогрессом
+     */
+    @Transactional
+    public BatchInsertResult batchInsertWithProgress(String tableName, ColumnarChunk chunk, ProgressCallback callback) {
+        BatchInsertResult result = batchInsert(tableName, chunk);
 
         if (callback != null) {
             callback.onComplete(result);
@@ -377,14 +786,25 @@ public class BatchInsertService {
      * Настройка размера пачки
      */
     public void setBatchSize(int batchSize) {
-        this.currentBatchSize = Math.max(100, Math.min(10000, batchSize)); // Ограничения 100-10000
+        this.batchSizeOverride = Math.max(100, Math.min(10000, batchSize)); // Ограничения 100-10000
+        // Подобранные размеры INSERT сбрасываются и начинаются с заданного
+        sizers.keySet().removeIf(key -> !key.startsWith("copy:"));
     }
 
     /**
-     * Получение статистики производительности
+     * Получение статистики производительности: подобранные размеры и скорость по формам пачек
      */
     public PerformanceStats getPerformanceStats() {
-        return new PerformanceStats(currentBatchSize);
+        List<ShapeStats> shapes = new ArrayList<>();
+        sizers.forEach((key, sizer) -> {
+            String[] parts = key.split(":");
+            shapes.add(new ShapeStats(parts[0], Integer.parseInt(parts[1]), sizer.current(), sizer.getBestSize(),
+                    Math.round(sizer.getBestThroughput()), Math.round(sizer.getSmoothedThroughput()),
+                    sizer.getLastLatencyMs(), sizer.getSamples()));
+        });
+        shapes.sort(Comparator.comparing(ShapeStats::getMethod).thenComparingInt(ShapeStats::getColumnCount));
+        Integer override = batchSizeOverride;
+        return new PerformanceStats(override != null ? override : DEFAULT_BATCH_SIZE, shapes);
     }
 
     /**
@@ -392,6 +812,12 @@ public class BatchInsertService {
      */
     public interface ProgressCallback {
         void onComplete(BatchInsertResult result);
+
+        /**
+         * Записана очередная пачка: строк и байт всего, время и скорость загрузки
+         */
+        default void onChunk(LoadProgress progress) {
+        }
     }
 
     /**
@@ -399,11 +825,49 @@ public class BatchInsertService {
      */
     public static class PerformanceStats {
         private final int currentBatchSize;
+        private final List<ShapeStats> shapes;
 
-        public PerformanceStats(int currentBatchSize) {
+        public PerformanceStats(int currentBatchSize, List<ShapeStats> shapes) {
             this.currentBatchSize = currentBatchSize;
+            this.shapes = shapes;
         }
 
         public int getCurrentBatchSize() { return currentBatchSize; }
+        public List<ShapeStats> getShapes() { return shapes; }
+    }
+
+    /**
+     * Подобранный размер пачки для способа записи и числа колонок
+     */
+    public static class ShapeStats {
+        private final String method;
+        private final int columnCount;
+        private final int batchSize;
+        private final int bestBatchSize;
+        private final long bestRowsPerSecond;
+        private final long rowsPerSecond;
+        private final double lastLatencyMs;
+        private final long samples;
+
+        public ShapeStats(String method, int columnCount, int batchSize, int bestBatchSize,
+                          long bestRowsPerSecond, long rowsPerSecond, double lastLatencyMs, long samples) {
+            this.method = method;
+            this.columnCount = columnCount;
+            this.batchSize = batchSize;
+            this.bestBatchSize = bestBatchSize;
+            this.bestRowsPerSecond = bestRowsPerSecond;
+            this.rowsPerSecond = rowsPerSecond;
+            this.lastLatencyMs = lastLatencyMs;
+            this.samples = samples;
+        }
+
+        public String getMethod() { return method; }
+        public int getColumnCount() { return columnCount; }
+        public int getBatchSize() { return batchSize; }
+        public int getBestBatchSize() { return bestBatchSize; }
+        public long getBestRowsPerSecond() { return bestRowsPerSecond; }
+        public long getRowsPerSecond() { return rowsPerSecond; }
+        public double getLastLatencyMs() { return lastLatencyMs; }
+        public long getSamples() { return samples; }
     }
 }
\ No newline at end of file
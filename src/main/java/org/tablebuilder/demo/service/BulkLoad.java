@@ -0,0 +1,62 @@
+package org.tablebuilder.demo.service;
+
+import org.tablebuilder.demo.utils.ColumnType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Одна загрузка строк в таблицу: по ней выбирается способ записи ({@link BulkWriter})
+ */
+public class BulkLoad {
+    private final String tableName;
+    // Ключи значений в строках
+    private final List<String> columns;
+    // Те же колонки, экранированные для SQL
+    private final List<String> sqlColumns;
+    // Типы колонок таблицы (null - есть колонки неподдерживаемых типов)
+    private final List<ColumnType> types;
+    private final List<Map<String, Object>> rows;
+    // План multi-value INSERT считается один раз на загрузку
+    private Integer rowsPerStatement;
+
+    public BulkLoad(String tableName, List<String> columns, List<String> sqlColumns, List<ColumnType> types,
+                    List<Map<String, Object>> rows) {
+        this.tableName = tableName;
+        this.columns = columns;
+        this.sqlColumns = sqlColumns;
+        this.types = types;
+        this.rows = rows;
+    }
+
+    public String getTableName() { return tableName; }
+    public List<String> getColumns() { return columns; }
+    public List<String> getSqlColumns() { return sqlColumns; }
+    public List<ColumnType> getTypes() { return types; }
+    public List<Map<String, Object>> getRows() { return rows; }
+    public int getColumnCount() { return columns.size(); }
+    public int getRowCount() { return rows.size(); }
+
+    /**
+     * Оценка объема значений строк в байтах (для отчета о ходе загрузки), как у ColumnarChunk
+     */
+    public long estimateBytes(List<Map<String, Object>> batch) {
+        long bytes = 0;
+        for (Map<String, Object> row : batch) {
+            for (String column : columns) {
+                Object value = row.get(column);
+                if (value instanceof CharSequence text) {
+                    bytes += text.length();
+                } else if (value instanceof Boolean) {
+                    bytes += 1;
+                } else if (value != null) {
+                    bytes += 8;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    Integer getRowsPerStatement() { return rowsPerStatement; }
+    void setRowsPerStatement(Integer rowsPerStatement) { this.rowsPerStatement = rowsPerStatement; }
+}
@@ -0,0 +1,176 @@
+package org.tablebuilder.demo.service;
+
+import org.springframework.stereotype.Service;
+import org.tablebuilder.demo.exception.EntityNotFoundException;
+import org.tablebuilder.demo.model.LoadProgress;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Текущие массовые загрузки: ход по пачкам и отмена. Загрузка регистрируется через start(),
+ * после каждой пачки сообщает record() и проверяет stopRequested(), в конце - finish()
+ */
+@Service
+public class BulkLoadMonitor {
+
+    private static final int RECENT_LOADS = 20;
+
+    private final Map<String, Tracker> activeLoads = new ConcurrentHashMap<>();
+    private final Deque<Tracker> recentLoads = new ArrayDeque<>();
+
+    /**
+     * Начать загрузку
+     *
+     * @param token    токен вызывающего (null - отменить можно только через монитор)
+     * @param callback получает ход после каждой пачки (может быть null)
+     */
+    public Tracker start(String tableName, LoadProgress.CancelMode mode, CancellationToken token,
+                      BatchInsertService.ProgressCallback callback) {
+        Tracker tracker = new Tracker(UUID.randomUUID().toString(), tableName, mode,
+                token != null ? token : new CancellationToken(), callback);
+        activeLoads.put(tracker.loadId, tracker);
+        return tracker;
+    }
+
+    /**
+     * Идущие загрузки и последние завершенные
+     */
+    public List<LoadProgress> getLoads() {
+        List<LoadProgress> loads = new ArrayList<>();
+        activeLoads.values().forEach(tracker -> loads.add(tracker.snapshot()));
+        synchronized (recentLoads) {
+            recentLoads.forEach(tracker -> loads.add(tracker.snapshot()));
+        }
+        loads.sort(Comparator.comparing(LoadProgress::getStartedAt).reversed());
+        return loads;
+    }
+
+    /**
+     * Отменить идущую загрузку: она остановится после текущей пачки
+     */
+    public LoadProgress cancel(String loadId, String reason) {
+        Tracker tracker = activeLoads.get(loadId);
+        if (tracker == null) {
+            throw new EntityNotFoundException("Active load not found: " + loadId);
+        }
+        System.out.println("Cancelling load of " + tracker.tableName + ": " + reason);
+        tracker.token.cancel(reason);
+        return tracker.snapshot();
+    }
+
+    private void close(Tracker tracker) {
+        activeLoads.remove(tracker.loadId);
+        synchronized (recentLoads) {
+            recentLoads.addFirst(tracker);
+            while (recentLoads.size() > RECENT_LOADS) {
+                recentLoads.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Одна загрузка. Пачки могут записываться из нескольких потоков, поэтому счетчики атомарные
+     */
+    public class Tracker {
+        private final String loadId;
+        private final String tableName;
+        private final LoadProgress.CancelMode mode;
+        private final CancellationToken token;
+        private final BatchInsertService.ProgressCallback callback;
+        private final Date startedAt = new Date();
+        private final long startNanos = System.nanoTime();
+
+        private final AtomicLong rowsWritten = new AtomicLong();
+        private final AtomicLong rowsFailed = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final AtomicLong chunks = new AtomicLong();
+        private final AtomicInteger lastChunkRows = new AtomicInteger();
+
+        private volatile LoadProgress.State state = LoadProgress.State.RUNNING;
+        private volatile Date finishedAt;
+        private volatile long elapsedNanos;
+
+        private Tracker(String loadId, String tableName, LoadProgress.CancelMode mode, CancellationToken token,
+                     BatchInsertService.ProgressCallback callback) {
+            this.loadId = loadId;
+            this.tableName = tableName;
+            this.mode = mode;
+            this.token = token;
+            this.callback = callback;
+        }
+
+        /**
+         * Проверка отмены перед очередной пачкой
+         *
+         * @return true - загрузку надо остановить, сохранив записанное (режим KEEP_WRITTEN)
+         * @throws org.tablebuilder.demo.exception.LoadCancelledException в режиме ROLLBACK
+         */
+        public boolean stopRequested() {
+            if (!token.isCancelled()) {
+                return false;
+            }
+            if (mode == LoadProgress.CancelMode.ROLLBACK) {
+                token.throwIfCancelled();
+            }
+            return true;
+        }
+
+        /**
+         * Пачка записана
+         *
+         * @param bytes объем значений пачки (оценка)
+         */
+        public void record(int written, int failed, long bytes) {
+            rowsWritten.addAndGet(written);
+            rowsFailed.addAndGet(failed);
+            bytesWritten.addAndGet(bytes);
+            chunks.incrementAndGet();
+            lastChunkRows.set(written + failed);
+            if (callback != null) {
+                callback.onChunk(snapshot());
+            }
+        }
+
+        /**
+         * Загрузка закончилась: успешно, отменой или ошибкой
+         */
+        public void finish(boolean failed) {
+            if (finishedAt != null) {
+                return;
+            }
+            elapsedNanos = System.nanoTime() - startNanos;
+            finishedAt = new Date();
+            state = token.isCancelled() ? LoadProgress.State.CANCELLED
+                    : failed ? LoadProgress.State.FAILED : LoadProgress.State.COMPLETED;
+            close(this);
+        }
+
+        public boolean isCancelled() {
+            return token.isCancelled();
+        }
+
+        public LoadProgress snapshot() {
+            LoadProgress progress = new LoadProgress();
+            progress.setLoadId(loadId);
+            progress.setTableName(tableName);
+            progress.setState(state);
+            progress.setCancelMode(mode);
+            progress.setCancelReason(token.getReason());
+            progress.setRowsWritten(rowsWritten.get());
+            progress.setRowsFailed(rowsFailed.get());
+            progress.setBytesWritten(bytesWritten.get());
+            progress.setChunks(chunks.get());
+            progress.setLastChunkRows(lastChunkRows.get());
+            progress.setStartedAt(startedAt);
+            progress.setFinishedAt(finishedAt);
+
+            long elapsed = finishedAt != null ? elapsedNanos : System.nanoTime() - startNanos;
+            progress.setElapsedMs(elapsed / 1_000_000);
+            progress.setRowsPerSecond(elapsed > 0 ? Math.round(rowsWritten.get() * 1e9 / elapsed) : 0);
+            return progress;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.tablebuilder.demo.service;
+
+import org.springframework.dao.DataAccessException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Способ массовой записи строк в таблицу. Реализации - бины, упорядоченные по @Order от самого
+ * быстрого к самому общему: для загрузки берется первый подходящий, а при отказе пачка
+ * повторяется следующим подходящим
+ */
+public interface BulkWriter {
+
+    /**
+     * Имя способа (ключ подобранных размеров пачек и статистики)
+     */
+    String getName();
+
+    /**
+     * Подходит ли способ для этой загрузки на подключенной СУБД
+     */
+    boolean supports(BulkLoad load);
+
+    /**
+     * Начальный размер пачки, пока размер не подобран по измерениям
+     */
+    int getDefaultBatchSize();
+
+    /**
+     * Строк в одном запросе: размер пачки округляется до кратного
+     */
+    default int rowsPerStatement(BulkLoad load) {
+        return 1;
+    }
+
+    /**
+     * Записать пачку. Ошибки отдельных строк попадают в errors
+     *
+     * @param rows       часть строк загрузки
+     * @param startIndex номер первой строки пачки в загрузке (для ошибок)
+     * @return сколько строк записано
+     * @throws DataAccessException если пачка не записана и откатилась - ее повторит следующий способ
+     */
+    int write(BulkLoad load, List<Map<String, Object>> rows, int startIndex,
+              List<BatchInsertService.InsertError> errors);
+}
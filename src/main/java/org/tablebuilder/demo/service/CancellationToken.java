@@ -0,0 +1,39 @@
+package org.tablebuilder.demo.service;
+
+import org.tablebuilder.demo.exception.LoadCancelledException;
+
+/**
+ * Запрос на отмену загрузки. Отмена кооперативная: загрузка проверяет токен между пачками,
+ * поэтому текущая пачка дописывается (или откатывается) целиком
+ */
+public class CancellationToken {
+
+    private volatile String reason;
+
+    /**
+     * Запросить отмену (повторный вызов причину не меняет)
+     */
+    public void cancel(String reason) {
+        if (this.reason == null) {
+            this.reason = reason != null ? reason : "Cancelled";
+        }
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @throws LoadCancelledException если отмена запрошена
+     */
+    public void throwIfCancelled() {
+        String cancelReason = reason;
+        if (cancelReason != null) {
+            throw new LoadCancelledException(cancelReason);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package org.tablebuilder.demo.service;
+
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.tablebuilder.demo.model.ExcelImportResult;
+import org.tablebuilder.demo.model.ImportOptions;
+import org.tablebuilder.demo.store.*;
+import org.tablebuilder.demo.utils.*;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Импорт CSV/TSV. Заголовок и начало файла разбираются на клиенте (имена колонок и типы),
+ * а сам файл целиком передается в COPY FROM STDIN (FORMAT csv): строки не превращаются
+ * в Java-объекты. Дальше - как у листа Excel: сырая TEXT-таблица, проверка типов по всем
+ * строкам и перенос в типизированную таблицу с теми же метаданными
+ */
+@Service
+public class CsvImportService {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // SQLSTATE bad_copy_file_format: в записи CSV другое число полей
+    private static final String BAD_COPY_FORMAT = "22P04";
+
+    @Autowired
+    private DynamicTableService dynamicTableService;
+    @Autowired
+    private MetadataService metadataService;
+    @Autowired
+    private UploadedTableRepository uploadedTableRepository;
+    @Autowired
+    private TableListRepository tableListRepository;
+    @Autowired
+    private TableColumnRepository tableColumnRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private UploadSpoolService uploadSpoolService;
+    @Autowired
+    private ImportAdmissionService importAdmissionService;
+    @Autowired
+    private TableMaintenanceService tableMaintenanceService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private RowCountService rowCountService;
+
+    // Сколько первых строк файла используется для определения типов колонок
+    @Value("${app.import.csv.sample-rows:1000}")
+    private int sampleRows;
+
+    public static boolean isCsvFile(String filename) {
+        if (filename == null) {
+            return false;
+        }
+        String lower = filename.toLowerCase();
+        return lower.endsWith(".csv") || lower.endsWith(".tsv");
+    }
+
+    /**
+     * TSV: разделитель - табуляция, кавычки не экранируют (значение вида 5" pipe - обычный текст)
+     */
+    public static boolean isTsvFile(String filename) {
+        return filename != null && filename.toLowerCase().endsWith(".tsv");
+    }
+
+    public ExcelImportResult importCsv(MultipartFile file, String username) {
+        return importCsv(file, username, ImportOptions.defaults());
+    }
+
+    public ExcelImportResult importCsv(MultipartFile file, String username, ImportOptions options) {
+        Path spooled;
+        try {
+            spooled = uploadSpoolService.spool(file);
+        } catch (IOException e) {
+            return new ExcelImportResult(false, 0, "", "File reading error: " + e.getMessage());
+        }
+        try (ImportAdmissionService.Ticket ticket = importAdmissionService.admit(spooled, file.getOriginalFilename())) {
+            return importCsv(spooled, file.getOriginalFilename(), username, options, ImportListener.NONE);
+        } finally {
+            uploadSpoolService.delete(spooled);
+        }
+    }
+
+    /**
+     * Импорт CSV/TSV из файла на диске. Весь импорт - одна транзакция:
+     * при ошибке старая таблица файла остается нетронутой
+     */
+    public ExcelImportResult importCsv(Path file, String originalFilename, String username, ImportOptions options,
+                                       ImportListener listener) {
+        if (originalFilename == null) {
+            return new ExcelImportResult(false, 0, "", "Filename is null");
+        }
+
+        try {
+            String contentHash = uploadSpoolService.contentHash(file);
+            UploadedTable existingTable = uploadedTableRepository.findByDisplayName(originalFilename);
+            if (existingTable != null && contentHash.equals(existingTable.getContentHash())) {
+                List<TableList> lists = tableListRepository.findByTableId(existingTable.getId());
+                // Данные актуальны, но запрошенные индексы все равно строятся
+                tableMaintenanceService.indexUnchanged(existingTable, lists, options.getIndexColumns());
+                List<String> tables = lists.stream()
+                        .map(TableList::getListName)
+                        .toList();
+                return new ExcelImportResult(true,
+                        existingTable.getRowsImported() != null ? existingTable.getRowsImported() : 0,
+                        String.join(", ", tables), "File unchanged, import skipped. Tables: " + tables);
+            }
+
+            Charset charset = CsvTokenizer.detectCharset(file);
+            boolean quoting = !isTsvFile(originalFilename);
+            char delimiter = quoting ? CsvTokenizer.detectDelimiter(file, charset) : '\t';
+            CsvSample sample = readSample(file, charset, delimiter, quoting);
+            if (sample.columnNames.isEmpty()) {
+                return new ExcelImportResult(false, 0, originalFilename, "No header found");
+            }
+
+            listener.onStart(1, -1);
+            ExcelImportResult result;
+            try {
+                result = new TransactionTemplate(transactionManager).execute(status -> {
+                    try {
+                        return load(file, originalFilename, username, contentHash, existingTable, sample,
+                                charset, delimiter, quoting, listener);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (DataAccessException e) {
+                // Ошибка формата в COPY не называет запись файла - находим ее сами (только на этом пути)
+                if (!isCopyFormatError(e)) {
+                    throw e;
+                }
+                String malformed = findMalformedRecord(file, charset, delimiter, quoting,
+                        sample.columnNames.size());
+                listener.onSheetDone(originalFilename, false);
+                return new ExcelImportResult(false, 0, originalFilename,
+                        malformed != null ? malformed : "Invalid CSV: " + e.getMostSpecificCause().getMessage());
+            }
+            if (result != null && result.isSuccess()) {
+                runPostLoad(result.getTableName(), sample, options);
+            }
+            listener.onSheetDone(originalFilename, result != null && result.isSuccess());
+            return result;
+        } catch (IOException | UncheckedIOException e) {
+            listener.onSheetDone(originalFilename, false);
+            return new ExcelImportResult(false, 0, "", "File reading error: " + e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            listener.onSheetDone(originalFilename, false);
+            return new ExcelImportResult(false, 0, "", "Error: " + e.getMessage());
+        }
+    }
+
+    private ExcelImportResult load(Path file, String originalFilename, String username, String contentHash,
+                                   UploadedTable existingTable, CsvSample sample, Charset charset, char delimiter,
+                                   boolean quoting, ImportListener listener) throws IOException {
+        String tableName = NameUtils.fileTableName(originalFilename);
+
+        // Повторный импорт собирается в staging-таблице: старая таблица доступна для чтения,
+        // пока идет COPY, и блокируется только на переключение в конце транзакции
+        String targetTable = existingTable != null ? NameUtils.withSuffix(tableName, "_stg") : tableName;
+        UploadedTable table = existingTable != null
+                ? existingTable
+                : metadataService.saveUploadedTable(originalFilename, tableName, username);
+
+        List<String> columnNames = sample.columnNames;
+        String rawTable = NameUtils.withSuffix(tableName, "_raw");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + rawTable);
+        dynamicTableService.createTypedTable(rawTable, columnNames,
+                Collections.nCopies(columnNames.size(), ColumnType.TEXT), true);
+
+        long copied = copyFile(file, rawTable, columnNames, charset, delimiter, quoting,
+                listener.getCancellationToken());
+        int emptyRows = deleteEmptyRows(rawTable, columnNames);
+        int rowsImported = (int) (copied - emptyRows);
+        listener.onRowsParsed(originalFilename, rowsImported);
+        System.out.println("CSV copied: " + copied + " rows, empty: " + emptyRows);
+
+        List<ColumnType> types = dynamicTableService.verifyTypes(rawTable, columnNames, sample.inferrer.resolveAll());
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + targetTable);
+        dynamicTableService.createFromRaw(rawTable, targetTable, columnNames, types, false);
+        jdbcTemplate.execute("DROP TABLE " + rawTable);
+        listener.onRowsInserted(originalFilename, rowsImported, 0);
+
+        if (existingTable != null) {
+            // Транзакция общая: старые таблицы исчезнут только вместе с успешной загрузкой новой
+            for (TableList tableList : tableListRepository.findByTableId(existingTable.getId())) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + tableList.getListName());
+                rowCountService.remove(tableList.getListName());
+            }
+            tableColumnRepository.deleteByTableId(existingTable.getId());
+            tableListRepository.deleteByTableId(existingTable.getId());
+            jdbcTemplate.execute("ALTER TABLE " + targetTable + " RENAME TO " + tableName);
+            dynamicTableService.renameOwnedObjects(tableName);
+        }
+
+        metadataService.saveTableList(table, tableName, originalFilename, contentHash, rowsImported);
+        rowCountService.setRowCount(tableName, rowsImported);
+        metadataService.saveTableMetadata(table, sample.originalColumnNames, columnNames, tableName);
+        table.setInternalName(tableName);
+        table.setUsername(username);
+        table.setContentHash(contentHash);
+        table.setRowsImported(rowsImported);
+        uploadedTableRepository.save(table);
+
+        return new ExcelImportResult(true, rowsImported, tableName,
+                (existingTable != null ? "File re-imported successfully" : "Import successful") + ". Tables: [" + tableName + "]");
+    }
+
+    /**
+     * Статистика, заморозка строк и запрошенные индексы - после фиксации загрузки
+     */
+    private void runPostLoad(String tableName, CsvSample sample, ImportOptions options) {
+        List<String> indexColumns = new ArrayList<>();
+        for (String requested : options.getIndexColumns()) {
+            String column = NameUtils.resolveColumn(sample.columnNames, sample.originalColumnNames, requested);
+            if (column != null && !indexColumns.contains(column)) {
+                indexColumns.add(column);
+            }
+        }
+        tableMaintenanceService.afterLoad(tableName, indexColumns);
+    }
+
+    private static boolean isCopyFormatError(DataAccessException e) {
+        return e.getMostSpecificCause() instanceof SQLException sql && BAD_COPY_FORMAT.equals(sql.getSQLState());
+    }
+
+    /**
+     * Первая запись, число полей в которой не совпадает с заголовком. Строки данных считаются с 1,
+     * пустые строки пропускаются (как при загрузке)
+     *
+     * @return описание ошибки или null, если все записи правильной длины
+     */
+    private String findMalformedRecord(Path file, Charset charset, char delimiter, boolean quoting, int columnCount)
+            throws IOException {
+        try (CsvTokenizer tokenizer = CsvTokenizer.open(file, charset, delimiter, quoting)) {
+            tokenizer.nextRecord(); // заголовок
+            List<String> record;
+            int row = 0;
+            while ((record = tokenizer.nextRecord()) != null) {
+                if (record.size() == 1 && record.get(0).isEmpty()) {
+                    continue;
+                }
+                row++;
+                if (record.size() != columnCount) {
+                    return "Invalid CSV: row " + row + " has " + record.size() + " fields, expected " + columnCount;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Заголовок и первые строки файла: SQL-имена колонок (как у листов Excel) и типы по выборке
+     */
+    private CsvSample readSample(Path file, Charset charset, char delimiter, boolean quoting) throws IOException {
+        CsvSample sample = new CsvSample();
+        try (CsvTokenizer tokenizer = CsvTokenizer.open(file, charset, delimiter, quoting)) {
+            List<String> header = tokenizer.nextRecord();
+            if (header == null) {
+                return sample;
+            }
+
+            sample.originalColumnNames.addAll(NameUtils.headerNames(header));
+            sample.columnNames.addAll(NameUtils.generateColumnNames(sample.originalColumnNames));
+
+            sample.inferrer = new TypeInferrer(header.size());
+            List<String> record;
+            int rows = 0;
+            while (rows < sampleRows && (record = tokenizer.nextRecord()) != null) {
+                sample.inferrer.accept(new ArrayList<>(record));
+                rows++;
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * Файл целиком - в COPY. Первую строку (заголовок) пропускает сам PostgreSQL.
+     * Без кавычек (TSV) кавычкой COPY назначается управляющий символ \x01, которого в тексте нет.
+     * Отмена прерывает COPY между блоками чтения
+     */
+    private long copyFile(Path file, String rawTable, List<String> columnNames, Charset charset, char delimiter,
+                          boolean quoting, CancellationToken token) {
+        String columns = columnNames.stream().map(NameUtils::sanitizeName).collect(Collectors.joining(", "));
+        String sql = "COPY " + rawTable + " (" + columns + ") FROM STDIN (FORMAT csv, HEADER true" +
+                ", DELIMITER E'" + (delimiter == '\t' ? "\\t" : String.valueOf(delimiter)) + "'" +
+                (quoting ? "" : ", QUOTE E'\\x01'") +
+                ", ENCODING '" + (StandardCharsets.UTF_8.equals(charset) ? "UTF8" : "WIN1251") + "')";
+
+        Long copied = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try (InputStream in = new BlankLineFilterInputStream(Files.newInputStream(file), quoting, token)) {
+                return con.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, in, COPY_BUFFER_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return copied != null ? copied : 0;
+    }
+
+    private int deleteEmptyRows(String rawTable, List<String> columnNames) {
+        String condition = columnNames.stream()
+                .map(column -> "COALESCE(btrim(" + NameUtils.sanitizeName(column) + "), '') = ''")
+                .collect(Collectors.joining(" AND "));
+        return jdbcTemplate.update("DELETE FROM " + rawTable + " WHERE " + condition);
+    }
+
+    /**
+     * Пропускает пустые строки вне кавычек: COPY считает их записями без данных и падает.
+     * Кавычка и переводы строк - ASCII, поэтому разбор по байтам верен и для UTF-8, и для windows-1251.
+     * Без кавычек (TSV) пустой считается любая пустая строка
+     */
+    static class BlankLineFilterInputStream extends FilterInputStream {
+        private final boolean quoting;
+        private final CancellationToken token;
+        private boolean quoted;
+        private boolean lineStart = true;
+
+        BlankLineFilterInputStream(InputStream in, boolean quoting, CancellationToken token) {
+            super(in);
+            this.quoting = quoting;
+            this.token = token;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        /**
+         * Читает блок и удаляет из него лишние переводы строк на месте
+         */
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (token != null) {
+                token.throwIfCancelled();
+            }
+            while (true) {
+                int read = in.read(buffer, offset, length);
+                if (read <= 0) {
+                    return read;
+                }
+                int kept = offset;
+                for (int i = offset; i < offset + read; i++) {
+                    byte b = buffer[i];
+                    if (quoting && b == '"') {
+                        quoted = !quoted;
+                    } else if (!quoted && (b == '\n' || b == '\r')) {
+                        if (lineStart) {
+                            continue;
+                        }
+                        lineStart = b == '\n';
+                        buffer[kept++] = b;
+                        continue;
+                    }
+                    lineStart = false;
+                    buffer[kept++] = b;
+                }
+                if (kept > offset) {
+                    return kept - offset;
+                }
+            }
+        }
+    }
+
+    private static class CsvSample {
+        private final List<String> originalColumnNames = new ArrayList<>();
+        private final List<String> columnNames = new ArrayList<>();
+        private TypeInferrer inferrer;
+    }
+}
@@ -0,0 +1,71 @@
+package org.tablebuilder.demo.service;
+
+import jakarta.annotation.PostConstruct;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Возможности подключенной СУБД для массовой записи. Определяются один раз при старте
+ * (соединение берется из пула и сразу возвращается), дальше читаются без обращения к БД
+ */
+@Component
+public class DatabaseCapabilities {
+
+    // В протоколе PostgreSQL число параметров запроса - 16-битное
+    private static final int POSTGRES_MAX_BIND_PARAMETERS = 65535;
+    private static final int DEFAULT_MAX_BIND_PARAMETERS = 32766;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private String productName = "unknown";
+    private String productVersion = "";
+    private boolean postgres;
+    private boolean copySupported;
+    private boolean multiValueInsertSupported;
+    private boolean batchUpdatesSupported;
+    private int maxBindParameters = DEFAULT_MAX_BIND_PARAMETERS;
+
+    @PostConstruct
+    void probe() {
+        try {
+            JdbcUtils.extractDatabaseMetaData(dataSource, meta -> {
+                productName = meta.getDatabaseProductName();
+                productVersion = meta.getDatabaseProductVersion();
+                String name = productName.toLowerCase();
+                postgres = name.contains("postgresql");
+                // COPY FROM STDIN доступен только через драйвер PostgreSQL
+                copySupported = postgres && meta.getConnection().isWrapperFor(PGConnection.class);
+                multiValueInsertSupported = postgres || name.contains("mysql") || name.contains("mariadb")
+                        || name.contains("sqlite");
+                batchUpdatesSupported = meta.supportsBatchUpdates();
+                maxBindParameters = postgres ? POSTGRES_MAX_BIND_PARAMETERS : DEFAULT_MAX_BIND_PARAMETERS;
+                return null;
+            });
+        } catch (MetaDataAccessException e) {
+            // Без метаданных - только построчная запись, она работает везде
+            System.err.println("Could not probe database capabilities: " + e.getMessage());
+        }
+        System.out.println("Database capabilities: " + this);
+    }
+
+    public String getProductName() { return productName; }
+    public String getProductVersion() { return productVersion; }
+    public boolean isPostgres() { return postgres; }
+    public boolean isCopySupported() { return copySupported; }
+    public boolean isMultiValueInsertSupported() { return multiValueInsertSupported; }
+    public boolean isBatchUpdatesSupported() { return batchUpdatesSupported; }
+    public int getMaxBindParameters() { return maxBindParameters; }
+
+    @Override
+    public String toString() {
+        return productName + " " + productVersion + " [copy=" + copySupported
+                + ", multiValueInsert=" + multiValueInsertSupported + ", batchUpdates=" + batchUpdatesSupported
+                + ", maxBindParameters=" + maxBindParameters + "]";
+    }
+}
@@ -6,11 +6,15 @@ import org.tablebuilder.demo.model.TableTemplateDTO;
 import org.tablebuilder.demo.store.UploadedTable;
 import org.tablebuilder.demo.utils.ColumnType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.tablebuilder.demo.utils.NameUtils;
+import org.tablebuilder.demo.utils.TypeInferrer;
 
+import java.sql.Savepoint;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -31,6 +35,18 @@ public class DynamicTableService {
     @Transactional
     public Map<Object, ColumnType> ensureTableExists(String tableName, List<String> originalColumnNames,
                                                      List<String> columnNames, List<Map<String, Object>> sampleData) {
+        return ensureTableExists(tableName, originalColumnNames, columnNames, sampleData, false);
+    }
+
+    /**
+     * Создание таблицы если ее нет
+     *
+     * @param unlogged создать UNLOGGED таблицу (без WAL) - для staging-таблиц при повторном импорте
+     */
+    @Transactional
+    public Map<Object, ColumnType> ensureTableExists(String tableName, List<String> originalColumnNames,
+                                                     List<String> columnNames, List<Map<String, Object>> sampleData,
+                                                     boolean unlogged) {
 
         // ВАЖНО: Проверяем что имя таблицы не пустое
         if (tableName == null || tableName.trim().isEmpty()) {
@@ -67,34 +83,12 @@ public class DynamicTableService {
             }
 
             // Создаём таблицу
-            StringBuilder sql = new StringBuilder("CREATE TABLE ");
-            sql.append(safeTableName).append(" (id BIGSERIAL PRIMARY KEY");
-
-            for (String colName : columnNames) {
-                String safeColName = sanitizeName(colName);
-                sql.append(", ").append(safeColName).append(" ");
-
-                ColumnType type = columnTypes.get(colName);
-                System.out.println("Creating column: " + safeColName + " as " + type);
-
-                switch (type) {
-                    case NUMBER -> sql.append("NUMERIC");
-                    case DATE -> sql.append("DATE");
-                    case BOOLEAN -> sql.append("BOOLEAN");
-                    default -> {
-                        // По умолчанию TEXT для безопасности
-                        System.out.println("Using TEXT for column: " + safeColName);
-                        sql.append("TEXT");
-                    }
-                }
-            }
-
-            sql.append(");");
+            String sql = buildCreateTableSql(safeTableName, columnNames, columnTypes, unlogged);
 
             System.out.println("Final SQL: " + sql);
 
             try {
-                jdbcTemplate.execute(sql.toString());
+                jdbcTemplate.execute(sql);
                 System.out.println("Table created successfully: " + safeTableName);
             } catch (Exception e) {
                 System.err.println("Failed to create table: " + e.getMessage());
@@ -107,6 +101,37 @@ public class DynamicTableService {
         return columnTypes;
     }
 
+    /**
+     * CREATE TABLE по типам колонок (id BIGSERIAL PRIMARY KEY + колонки)
+     */
+    private String buildCreateTableSql(String safeTableName, List<String> columnNames,
+                                       Map<Object, ColumnType> columnTypes, boolean unlogged) {
+        StringBuilder sql = new StringBuilder(unlogged ? "CREATE UNLOGGED TABLE " : "CREATE TABLE ");
+        sql.append(safeTableName).append(" (id BIGSERIAL PRIMARY KEY");
+
+        for (String colName : columnNames) {
+            String safeColName = sanitizeName(colName);
+            sql.append(", ").append(safeColName).append(" ");
+
+            ColumnType type = columnTypes.get(colName);
+            System.out.println("Creating column: " + safeColName + " as " + type);
+
+            switch (type) {
+                case NUMBER -> sql.append("NUMERIC");
+                case DATE -> sql.append("DATE");
+                case BOOLEAN -> sql.append("BOOLEAN");
+                default -> {
+                    // По умолчанию TEXT для безопасности
+                    System.out.println("Using TEXT for column: " + safeColName);
+                    sql.append("TEXT");
+                }
+            }
+        }
+
+        sql.append(");");
+        return sql.toString();
+    }
+
     /**
      * Валидация уникальности имен колонок
      */
@@ -158,107 +183,176 @@ public class DynamicTableService {
             return ColumnType.TEXT; // По умолчанию TEXT
         }
 
-        // Считаем непустые значения
-        List<Object> nonEmptyValues = values.stream()
-                .filter(value -> value != null && !value.toString().trim().isEmpty())
-                .collect(Collectors.toList());
-
-        if (nonEmptyValues.isEmpty()) {
-            return ColumnType.TEXT; // Все значения пустые
+        TypeInferrer inferrer = new TypeInferrer(1);
+        for (Object value : values) {
+            inferrer.accept(0, value);
         }
+        return inferrer.resolve(0);
+    }
 
-        // Проверяем типы только для непустых значений
-        boolean allNumbers = true;
-        boolean allBooleans = true;
-        boolean allDates = true;
-
-        for (Object value : nonEmptyValues) {
-            if (value == null) continue;
+    /**
+     * Создание таблицы с заранее известными типами колонок (типы определены по всему листу)
+     */
+    @Transactional
+    public void createTypedTable(String tableName, List<String> columnNames, List<ColumnType> types, boolean unlogged) {
+        validateColumnNames(columnNames);
 
-            // Проверка на Boolean (только строгие значения)
-            if (!isStrictBoolean(value)) {
-                allBooleans = false;
-            }
+        Map<Object, ColumnType> columnTypes = new HashMap<>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            columnTypes.put(columnNames.get(i), types.get(i));
+        }
 
-            // Проверка на Number
-            if (!isNumeric(value)) {
-                allNumbers = false;
-            }
+        String sql = buildCreateTableSql(sanitizeName(tableName), columnNames, columnTypes, unlogged);
+        System.out.println("Final SQL: " + sql);
+        jdbcTemplate.execute(sql);
+    }
 
-            // Проверка на Date
-            if (!isDate(value)) {
-                allDates = false;
+    /**
+     * Перенос строк из сырой TEXT-таблицы в типизированную с приведением типов в SQL.
+     * Форматы дат и чисел те же, что принимает TypeInferrer
+     *
+     * @return количество перенесенных строк
+     */
+    @Transactional
+    public int copyWithCast(String rawTable, String targetTable, List<String> columnNames, List<ColumnType> types) {
+        StringBuilder select = new StringBuilder();
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (i > 0) {
+                select.append(", ");
             }
+            select.append(castExpression(sanitizeName(columnNames.get(i)), types.get(i)));
         }
 
-        // Приоритет типов: Boolean -> Date -> Number -> Text
-        if (allBooleans && nonEmptyValues.size() >= 2) { // Нужно хотя бы 2 boolean значения
-            return ColumnType.BOOLEAN;
-        }
-        if (allDates) {
-            return ColumnType.DATE;
-        }
-        if (allNumbers) {
-            return ColumnType.NUMBER;
-        }
-
-        // По умолчанию TEXT
-        return ColumnType.TEXT;
+        String columns = columnNames.stream().map(NameUtils::sanitizeName).collect(Collectors.joining(", "));
+        String sql = "INSERT INTO " + targetTable + " (" + columns + ") SELECT " + select +
+                " FROM " + rawTable + " ORDER BY id";
+        return jdbcTemplate.update(sql);
     }
 
     /**
-     * Строгая проверка на Boolean
+     * Типизированная таблица из сырой TEXT-таблицы. Создание и перенос идут под savepoint:
+     * если приведение все же упало (например, 31.02.2024 проходит проверку формата, но не является
+     * датой), создается таблица из TEXT-колонок, а транзакция продолжается
+     *
+     * @param unlogged создать UNLOGGED-таблицу (staging повторного импорта)
+     * @return фактические типы колонок
      */
-    private boolean isStrictBoolean(Object value) {
-        if (value == null) return false;
-
-        String str = value.toString().trim().toLowerCase();
+    @Transactional
+    public List<ColumnType> createFromRaw(String rawTable, String tableName, List<String> columnNames,
+                                          List<ColumnType> types, boolean unlogged) {
+        Boolean typed = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+            Savepoint savepoint = con.setSavepoint();
+            try {
+                createTypedTable(tableName, columnNames, types, unlogged);
+                copyWithCast(rawTable, tableName, columnNames, types);
+                con.releaseSavepoint(savepoint);
+                return true;
+            } catch (DataAccessException e) {
+                System.err.println("Typed load failed for " + tableName + ", falling back to TEXT: " + e.getMessage());
+                con.rollback(savepoint);
+                return false;
+            }
+        });
+        if (Boolean.TRUE.equals(typed)) {
+            return types;
+        }
 
-        // Только явные boolean значения
-        return "true".equals(str) || "false".equals(str) ||
-                "1".equals(str) || "0".equals(str);
+        List<ColumnType> textTypes = Collections.nCopies(columnNames.size(), ColumnType.TEXT);
+        createTypedTable(tableName, columnNames, textTypes, unlogged);
+        copyWithCast(rawTable, tableName, columnNames, textTypes);
+        return textTypes;
     }
 
     /**
-     * Проверка на число
+     * Первичный ключ и sequence после RENAME сохраняют имена staging-таблицы -
+     * приводим их к именам основной таблицы, чтобы следующий staging не конфликтовал.
+     * Имя, которое уже занято (у длинных имен PostgreSQL обрезает имя staging-объекта до того же имени,
+     * а у соседних листов обрезанные имена совпадают), не трогаем: PostgreSQL сам выбирает свободное
      */
-    private boolean isNumeric(Object value) {
-        if (value == null) return false;
-
-        // Если это уже число
-        if (value instanceof Number) {
-            return true;
+    public void renameOwnedObjects(String tableName) {
+        String primaryKey = jdbcTemplate.queryForObject(
+                "SELECT conname FROM pg_constraint WHERE conrelid = to_regclass(?) AND contype = 'p'",
+                String.class, tableName);
+        String expectedKey = NameUtils.withSuffix(tableName, "_pkey");
+        if (primaryKey != null && !relationExists(expectedKey)) {
+            jdbcTemplate.execute("ALTER TABLE " + tableName + " RENAME CONSTRAINT " + primaryKey + " TO " + expectedKey);
         }
 
-        String str = value.toString().trim();
-        if (str.isEmpty()) return false;
-
-        try {
-            Double.parseDouble(str.replace(",", "."));
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+        // Имя без схемы, чтобы сравнивать с ожидаемым
+        List<String> sequence = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_class c WHERE c.oid = CAST(pg_get_serial_sequence(?, 'id') AS regclass)",
+                String.class, tableName);
+        String expectedSequence = NameUtils.withSuffix(tableName, "_id_seq");
+        if (!sequence.isEmpty() && !relationExists(expectedSequence)) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + sequence.get(0) + " RENAME TO " + expectedSequence);
         }
     }
 
     /**
-     * Проверка на дату
+     * Занято ли имя таблицей, индексом или sequence (в том числе самим переименовываемым объектом)
      */
-    private boolean isDate(Object value) {
-        if (value == null) return false;
+    private boolean relationExists(String name) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, name));
+    }
 
-        // Если это уже дата
-        if (value instanceof java.util.Date) {
-            return true;
+    /**
+     * Проверка типов, выведенных по началу данных, на всех строках сырой TEXT-таблицы одним запросом.
+     * Колонка, где хотя бы одно значение не подходит под формат типа, становится TEXT
+     * (BOOLEAN из 0/1 - NUMBER, если все значения числа)
+     */
+    public List<ColumnType> verifyTypes(String rawTable, List<String> columnNames, List<ColumnType> types) {
+        List<String> checks = new ArrayList<>();
+        List<Integer> checkedColumns = new ArrayList<>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            String pattern = typePattern(types.get(i));
+            if (pattern == null) {
+                continue;
+            }
+            String value = "NULLIF(btrim(" + sanitizeName(columnNames.get(i)) + "), '')";
+            checks.add("bool_and(" + value + " IS NULL OR " + value + " ~* '" + pattern + "') AS ok_" + i);
+            if (types.get(i) == ColumnType.BOOLEAN) {
+                checks.add("bool_and(" + value + " IS NULL OR " + value + " ~* '" + typePattern(ColumnType.NUMBER)
+                        + "') AS num_" + i);
+            }
+            checkedColumns.add(i);
+        }
+
+        List<ColumnType> verified = new ArrayList<>(types);
+        if (checks.isEmpty()) {
+            return verified;
         }
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT " + String.join(", ", checks) + " FROM " + rawTable);
+        for (int column : checkedColumns) {
+            if (Boolean.FALSE.equals(row.get("ok_" + column))) {
+                ColumnType fallback = Boolean.TRUE.equals(row.get("num_" + column)) ? ColumnType.NUMBER : ColumnType.TEXT;
+                System.out.println("Column " + columnNames.get(column) + " is not " + types.get(column) + ", using " + fallback);
+                verified.set(column, fallback);
+            }
+        }
+        return verified;
+    }
 
-        String str = value.toString().trim();
-        if (str.isEmpty()) return false;
+    private String typePattern(ColumnType type) {
+        return switch (type) {
+            case NUMBER -> "^[+-]?(\\d+([.,]\\d*)?|[.,]\\d+)(e[+-]?\\d+)?$";
+            case BOOLEAN -> "^(true|false|1|0)$";
+            case DATE -> "^(\\d{4}-\\d{2}-\\d{2}|\\d{2}\\.\\d{2}\\.\\d{4}|\\d{2}/\\d{2}/\\d{4})$";
+            default -> null;
+        };
+    }
 
-        // Простые проверки форматов дат
-        return str.matches("\\d{4}-\\d{2}-\\d{2}") ||  // yyyy-mm-dd
-                str.matches("\\d{2}\\.\\d{2}\\.\\d{4}") || // dd.mm.yyyy
-                str.matches("\\d{2}/\\d{2}/\\d{4}");   // dd/mm/yyyy
+    private String castExpression(String column, ColumnType type) {
+        // Пустая строка (а не NULL) в сырых данных - тоже пустое значение
+        String value = "NULLIF(btrim(" + column + "), '')";
+        return switch (type) {
+            case NUMBER -> "CAST(replace(" + value + ", ',', '.') AS NUMERIC)";
+            case BOOLEAN -> "CAST(" + value + " AS BOOLEAN)";
+            case DATE -> "CASE WHEN " + value + " ~ '^\\d{2}\\.\\d{2}\\.\\d{4}$' THEN to_date(" + value + ", 'DD.MM.YYYY')" +
+                    " WHEN " + value + " ~ '^\\d{2}/\\d{2}/\\d{4}$' THEN to_date(" + value + ", 'DD/MM/YYYY')" +
+                    " ELSE CAST(" + value + " AS DATE) END";
+            default -> column;
+        };
     }
 
     /**
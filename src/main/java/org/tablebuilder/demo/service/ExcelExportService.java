@@ -8,7 +8,9 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -28,6 +30,12 @@ public class ExcelExportService {
     @Autowired
     private TableColumnRepository tableColumnRepository;
 
+    @Autowired
+    private KeysetPagination keysetPagination;
+
+    @Autowired
+    private RowCountService rowCountService;
+
     /**
      * Получить данные таблицы с пагинацией
      */
@@ -35,8 +43,18 @@ public class ExcelExportService {
                                            List<FilterRequest> filters,
                                            List<SortRequest> sorts,
                                            int page, int size) {
+        return getTablePage(internalColumnNames, listName, filters, sorts, page, size, null).getRows();
+    }
+
+    /**
+     * Получить страницу данных таблицы: по курсору (keyset, page не используется) или по номеру страницы (OFFSET)
+     */
+    public TablePage getTablePage(List<String> internalColumnNames, String listName,
+                                  List<FilterRequest> filters,
+                                  List<SortRequest> sorts,
+                                  int page, int size, String cursor) {
         String selectColumns = String.join(", ", internalColumnNames);
-        StringBuilder sql = new StringBuilder("SELECT ");
+        StringBuilder sql = new StringBuilder("SELECT id, ");
         sql.append(selectColumns);
         sql.append(" FROM ").append(listName);
 
@@ -52,37 +70,55 @@ public class ExcelExportService {
             }
         }
 
-        // ORDER BY (сортировка)
-        if (sorts != null && !sorts.isEmpty()) {
-            sql.append(" ORDER BY ");
-            for (int i = 0; i < sorts.size(); i++) {
-                if (i > 0) sql.append(", ");
-                SortRequest sort = sorts.get(i);
-                String internalCol = tableColumnRepository.findByDisplayNameAndListName(sort.getColumn(), listName).getInternalName();
-                String dir = "ASC".equalsIgnoreCase(sort.getDirection()) ? "ASC" : "DESC";
-                sql.append(internalCol).append(" ").append(dir);
+        // ORDER BY (сортировка): колонки из имен заголовка, id в конце для полного порядка
+        List<SortRequest> internalSorts = new ArrayList<>();
+        if (sorts != null) {
+            for (SortRequest sort : sorts) {
+                SortRequest internalSort = new SortRequest();
+                internalSort.setColumn(tableColumnRepository.findByDisplayNameAndListName(sort.getColumn(), listName).getInternalName());
+                internalSort.setDirection(sort.getDirection());
+                internalSorts.add(internalSort);
             }
         }
-
-        // LIMIT и OFFSET для пагинации
-        sql.append(" LIMIT ? OFFSET ?");
-        params.add(size);
-        params.add(page * size);
+        KeysetPagination.Order order = keysetPagination.order(listName, internalSorts);
+        if (cursor != null) {
+            sql.append(filters == null || filters.isEmpty() ? " WHERE " : " AND ");
+            keysetPagination.appendSeekCondition(sql, order, cursor, KeysetPagination.positional(params));
+        }
+        sql.append(" ORDER BY ").append(order.getOrderBy());
+
+        // LIMIT на строку больше страницы - по ней видно, есть ли следующая; OFFSET - только без курсора
+        sql.append(" LIMIT ?");
+        params.add((long) size + 1);
+        if (cursor == null) {
+            sql.append(" OFFSET ?");
+            params.add((long) page * size);
+        }
 
         System.out.println("SQL with pagination: " + sql);
 
-        List<List<String>> rows = jdbcTemplate.query(sql.toString(), params.toArray(), (rs, rowNum) -> {
+        List<List<String>> rows = new ArrayList<>();
+        Map<String, Object> lastKey = new HashMap<>();
+        boolean[] hasNext = {false};
+        jdbcTemplate.query(sql.toString(), rs -> {
+            if (rows.size() == size) {
+                hasNext[0] = true;
+                return;
+            }
             List<String> row = new ArrayList<>();
             for (String col : internalColumnNames) {
                 row.add(rs.getString(col));
             }
-            return row;
-        });
-        return rows;
+            rows.add(row);
+            if (rows.size() == size) {
+                for (String column : order.getColumns()) {
+                    lastKey.put(column, rs.getObject(column));
+                }
+            }
+        }, params.toArray());
+        return new TablePage(rows, hasNext[0] ? keysetPagination.cursorAfter(order, lastKey::get) : null);
     }
 
-
-
     @Transactional
     public FileDataResponse getFileData(String fileName, int page, int size) {
         FileDataResponse response = new FileDataResponse();
@@ -156,18 +192,30 @@ public class ExcelExportService {
                 List<SortRequest> sorts = request.getSorts();
                 int page = request.getPage();
                 int size = request.getSize();
+                String cursor = request.getCursor();
 
                 // Получаем общее количество с учетом фильтров
                 long totalRows = getTotalRowCount(tableList.getListName(), filters);
-                rows = getTableData(internalColumnNames, tableList.getListName(), filters, sorts, page, size);
+                TablePage tablePage = getTablePage(internalColumnNames, tableList.getListName(), filters, sorts,
+                        page, size, cursor);
+                rows = tablePage.getRows();
 
                 // Устанавливаем пагинацию
-                response.setPagination(new FileDataResponse.PaginationInfo(page, size, totalRows));
+                FileDataResponse.PaginationInfo pagination = new FileDataResponse.PaginationInfo(page, size, totalRows);
+                pagination.setNextCursor(tablePage.getNextCursor());
+                if (cursor != null) {
+                    pagination.setFirst(false);
+                    pagination.setLast(tablePage.getNextCursor() == null);
+                }
+                response.setPagination(pagination);
             } else {
                 // Для других листов без пагинации (или с пагинацией по умолчанию)
                 rows = getTableData(internalColumnNames, tableList.getListName(), null, null, 0, 50);
                 long totalRows = getTotalRowCount(tableList.getListName(), new ArrayList<>());
-                response.setPagination(new FileDataResponse.PaginationInfo(0, 50, totalRows));
+                // Пагинация запрошенного листа (с курсором) не перезаписывается другими листами
+                if (response.getPagination() == null) {
+                    response.setPagination(new FileDataResponse.PaginationInfo(0, 50, totalRows));
+                }
             }
 
             sheetData.setRows(rows);
@@ -241,6 +289,9 @@ public class ExcelExportService {
      * Получить общее количество строк
      */
     public long getTotalRowCount(String listName, List<FilterRequest> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return rowCountService.getRowCount(listName);
+        }
         StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM ").append(listName);
         List<Object> params = new ArrayList<>();
 
@@ -305,4 +356,20 @@ public class ExcelExportService {
             default -> throw new IllegalArgumentException("Unsupported operator: " + op);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Строки страницы и курсор следующей (null - страница последняя)
+     */
+    public static class TablePage {
+        private final List<List<String>> rows;
+        private final String nextCursor;
+
+        public TablePage(List<List<String>> rows, String nextCursor) {
+            this.rows = rows;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<List<String>> getRows() { return rows; }
+        public String getNextCursor() { return nextCursor; }
+    }
+}
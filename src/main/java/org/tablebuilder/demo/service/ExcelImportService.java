@@ -1,19 +1,30 @@
 package org.tablebuilder.demo.service;
 
-import jakarta.transaction.Transactional;
+import jakarta.annotation.PreDestroy;
 import org.tablebuilder.demo.model.ExcelImportResult;
+import org.tablebuilder.demo.model.ImportOptions;
+import org.tablebuilder.demo.model.LoadProgress;
 import org.tablebuilder.demo.store.*;
+import org.tablebuilder.demo.utils.AdaptiveBatchSizer;
 import org.tablebuilder.demo.utils.ColumnType;
+import org.tablebuilder.demo.utils.ColumnarChunk;
 import org.tablebuilder.demo.utils.NameUtils;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.tablebuilder.demo.utils.XlsxStreamingReader;
+import org.tablebuilder.demo.utils.TypeInferrer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,255 +45,435 @@ public class ExcelImportService {
     private JdbcTemplate jdbcTemplate;
     @Autowired
     private BatchInsertService batchInsertService;
+    @Autowired
+    private ImportPipeline importPipeline;
+    @Autowired
+    private UploadSpoolService uploadSpoolService;
+    @Autowired
+    private ImportAdmissionService importAdmissionService;
+    @Autowired
+    private TableMaintenanceService tableMaintenanceService;
+    @Autowired
+    private ParallelBulkLoader parallelBulkLoader;
 
-    @Transactional
-    public ExcelImportResult importExcel(MultipartFile file, String username) {
-        try {
-            String originalFilename = file.getOriginalFilename();
-            if (originalFilename == null) {
-                return new ExcelImportResult(false, 0, "", "Filename is null");
-            }
+    @Autowired
+    private BulkLoadMonitor bulkLoadMonitor;
 
-            // Убираем расширение
-            String baseFileName = originalFilename.replaceAll("\\.[^.]*$", "");
-            if (baseFileName.trim().isEmpty()) {
-                baseFileName = "unknown_file_" + System.currentTimeMillis();
-            }
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
-            String internalTableName = NameUtils.toValidSqlName(baseFileName);
-            if (internalTableName.isEmpty()) {
-                internalTableName = "table_" + System.currentTimeMillis();
-            }
+    @Autowired
+    private TableDeltaService tableDeltaService;
+    @Autowired
+    private RowCountService rowCountService;
 
-            // Проверяем, существует ли уже такой файл
-            UploadedTable existingTable = uploadedTableRepository.findByDisplayName(originalFilename);
-            UploadedTable savedTable;
-
-            if (existingTable != null) {
-                System.out.println("File already exists, deleting old data: " + originalFilename);
-                // Удаляем старые данные
-                deleteExistingTableData(existingTable);
-                // Обновляем метаданные
-                existingTable.setInternalName(internalTableName);
-                existingTable.setUsername(username);
-                savedTable = uploadedTableRepository.save(existingTable);
-            } else {
-                // Создаем новую таблицу
-                savedTable = metadataService.saveUploadedTable(originalFilename, internalTableName, username);
-            }
+    // Сколько строк держим в памяти перед вставкой в БД
+    @Value("${app.import.batch-size:5000}")
+    private int importBatchSize;
 
-            try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-                int totalRowsImported = 0;
-                List<String> processedTables = new ArrayList<>();
+    // Сколько листов одной книги импортируются одновременно
+    @Value("${app.import.sheet-parallelism:4}")
+    private int sheetParallelism;
 
-                // Проходим по всем листам
-                for (int sheetIndex = 0; sheetIndex < workbook.getNumberOfSheets(); sheetIndex++) {
-                    Sheet sheet = workbook.getSheetAt(sheetIndex);
-                    String sheetName = workbook.getSheetName(sheetIndex);
+    // Типы колонок: full - по всем строкам листа, sample - по первым строкам
+    @Value("${app.import.type-inference:full}")
+    private String typeInference;
 
-                    // Пропускаем пустые листы (минимум заголовок + 1 строка данных)
-                    if (sheet.getPhysicalNumberOfRows() < 2) {
-                        System.out.println("Skipping empty sheet: " + sheetName);
-                        continue;
-                    }
+    private final ExecutorService sheetExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sheet-import-", 0).factory());
 
-                    // === Генерируем безопасное имя таблицы ===
-                    String safeSheetName = NameUtils.toValidSqlName(sheetName);
-                    if (safeSheetName.isEmpty()) {
-                        safeSheetName = "sheet_" + sheetIndex;
-                    }
+    public ExcelImportResult importExcel(MultipartFile file, String username) {
+        return importExcel(file, username, ImportOptions.defaults());
+    }
 
-                    String tableName = NameUtils.toValidSqlName(internalTableName + "__" + safeSheetName);
-                    if (tableName.isEmpty()) {
-                        tableName = "table_" + System.currentTimeMillis() + "_" + sheetIndex;
-                    }
+    public ExcelImportResult importExcel(MultipartFile file, String username, ImportOptions options) {
+        // Книгу читаем с диска: zip открывается с произвольным доступом, а не буферизуется из потока
+        Path spooled;
+        try {
+            spooled = uploadSpoolService.spool(file);
+        } catch (IOException e) {
+            return new ExcelImportResult(false, 0, "", "File reading error: " + e.getMessage());
+        }
+        // Без памяти под книгу - 429/503 (ImportRejectedException), а не OutOfMemoryError на всех
+        try (ImportAdmissionService.Ticket ticket = importAdmissionService.admit(spooled, file.getOriginalFilename())) {
+            return importExcel(spooled, file.getOriginalFilename(), username, options, ImportListener.NONE);
+        } finally {
+            uploadSpoolService.delete(spooled);
+        }
+    }
 
-                    System.out.println("Creating table: " + tableName);
-
-                    // Удаляем старый лист если существует
-                    TableList existingList = tableListRepository.findByTableIdAndOriginalListName(savedTable.getId(), sheetName);
-                    if (existingList != null) {
-                        System.out.println("Deleting old sheet data: " + sheetName);
-                        // Удаляем старую таблицу из БД
-                        dropTableIfExists(existingList.getListName());
-                        // Удаляем метаданные колонок
-                        tableColumnRepository.deleteByTableIdAndListName(savedTable.getId(), existingList.getListName());
-                        // Удаляем метаданные листа
-                        tableListRepository.delete(existingList);
-                    }
+    /**
+     * Импорт книги из файла на диске с уведомлениями о ходе импорта
+     */
+    public ExcelImportResult importExcel(Path file, String originalFilename, String username, ImportOptions options,
+                                         ImportListener listener) {
+        if (originalFilename == null) {
+            return new ExcelImportResult(false, 0, "", "Filename is null");
+        }
 
-                    // Сохраняем метаданные листа
-                    metadataService.saveTableList(savedTable, tableName, sheetName);
+        try {
+            // Тот же файл, что и при прошлом успешном импорте - таблицы уже актуальны
+            String contentHash = uploadSpoolService.contentHash(file);
+            UploadedTable existingTable = uploadedTableRepository.findByDisplayName(originalFilename);
+            if (existingTable != null && contentHash.equals(existingTable.getContentHash())) {
+                return unchangedResult(existingTable, options);
+            }
 
-                    // Определяем количество столбцов по первой строке (заголовкам)
-                    Row firstRow = sheet.getRow(0);
-                    if (firstRow == null) {
-                        continue;
-                    }
+            // Книгу открываем до удаления старых данных: битый файл не должен их стереть
+            try (XlsxStreamingReader reader = XlsxStreamingReader.open(file.toFile())) {
+                return importWorkbook(reader, originalFilename, username, contentHash, options, listener);
+            }
+        } catch (IOException e) {
+            return new ExcelImportResult(false, 0, "", "File reading error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ExcelImportResult(false, 0, "", "Import interrupted");
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ExcelImportResult(false, 0, "", "Error: " + e.getMessage());
+        }
+    }
 
-                    int maxColumns = firstRow.getLastCellNum();
-                    if (maxColumns <= 0) {
-                        continue;
-                    }
+    private ExcelImportResult unchangedResult(UploadedTable table, ImportOptions options) {
+        List<TableList> lists = tableListRepository.findByTableId(table.getId());
+        // Данные актуальны, но запрошенные индексы все равно строятся
+        tableMaintenanceService.indexUnchanged(table, lists, options.getIndexColumns());
+        List<String> tables = lists.stream()
+                .map(TableList::getListName)
+                .toList();
+        System.out.println("File unchanged, import skipped: " + table.getDisplayName());
+        return new ExcelImportResult(
+                true,
+                table.getRowsImported() != null ? table.getRowsImported() : 0,
+                String.join(", ", tables),
+                "File unchanged, import skipped. Tables: " + tables
+        );
+    }
 
-                    // Парсим заголовки с гарантией уникальности
-                    List<String> originalColumnNames = new ArrayList<>();
-                    List<String> columnNames = new ArrayList<>();
-                    Set<String> usedNames = new HashSet<>();
+    private ExcelImportResult importWorkbook(XlsxStreamingReader reader, String originalFilename, String username,
+                                             String contentHash, ImportOptions options, ImportListener listener)
+            throws IOException, InterruptedException {
+        String internalTableName = NameUtils.fileTableName(originalFilename);
+
+        // Проверяем, существует ли уже такой файл
+        UploadedTable existingTable = uploadedTableRepository.findByDisplayName(originalFilename);
+        String tablePrefix = internalTableName;
+
+        // Повторный импорт грузится в staging-таблицы, старые данные доступны до переключения
+        boolean staged = existingTable != null;
+        UploadedTable savedTable = staged
+                ? existingTable
+                : new TransactionTemplate(transactionManager).execute(status ->
+                        metadataService.saveUploadedTable(originalFilename, tablePrefix, username));
+        if (staged) {
+            System.out.println("File already exists, loading into staging tables: " + originalFilename);
+        }
 
-                    for (int i = 0; i < maxColumns; i++) {
-                        Cell cell = firstRow.getCell(i);
-                        String originalName = (cell == null || cell.toString().trim().isEmpty())
-                                ? "Column_" + (i + 1)
-                                : cell.toString().trim();
+        // Листы, содержимое которых не изменилось с прошлого импорта, не перестраиваются
+        Map<String, TableList> previousLists = new HashMap<>();
+        if (staged) {
+            for (TableList tableList : tableListRepository.findByTableId(existingTable.getId())) {
+                previousLists.put(tableList.getOriginalListName(), tableList);
+            }
+        }
+        List<XlsxStreamingReader.SheetRef> sheets = new ArrayList<>();
+        Map<String, String> sheetHashes = new HashMap<>();
+        List<TableList> unchangedLists = new ArrayList<>();
+        for (XlsxStreamingReader.SheetRef sheet : reader.getSheets()) {
+            // Отпечаток из центрального каталога zip - лист для проверки не распаковывается
+            String sheetHash = reader.sheetChecksum(sheet);
+            TableList previous = previousLists.get(sheet.getName());
+            if (previous != null && sheetHash != null && sheetHash.equals(previous.getContentHash())) {
+                System.out.println("Sheet unchanged, skipping: " + sheet.getName());
+                unchangedLists.add(previous);
+            } else {
+                sheets.add(sheet);
+                sheetHashes.put(sheet.getName(), sheetHash);
+            }
+        }
+        listener.onStart(sheets.size(), estimateDataRows(reader, sheets));
+
+        // Листы независимы (каждый - своя таблица), поэтому импортируются параллельно.
+        // Семафор ограничивает число одновременно занятых соединений на одну загрузку
+        Semaphore permits = new Semaphore(Math.max(1, sheetParallelism));
+        List<Future<SheetImport>> futures = new ArrayList<>();
+        for (XlsxStreamingReader.SheetRef sheet : sheets) {
+            String sheetHash = sheetHashes.get(sheet.getName());
+            futures.add(sheetExecutor.submit(() ->
+                    importSheet(reader, savedTable, tablePrefix, sheet, sheetHash, staged, options, permits, listener)));
+        }
 
-                        // Создаем уникальное SQL-имя
-                        String sqlName = NameUtils.generateUniqueColumnName(originalName, i, usedNames);
+        int totalRowsImported = 0;
+        List<String> processedTables = new ArrayList<>();
+        List<SheetImport> importedSheets = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
 
-                        originalColumnNames.add(originalName);
-                        columnNames.add(sqlName);
-                        usedNames.add(sqlName);
-                    }
+        for (int i = 0; i < sheets.size(); i++) {
+            XlsxStreamingReader.SheetRef sheet = sheets.get(i);
+            SheetImport sheetImport;
+            try {
+                sheetImport = futures.get(i).get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException io ? io.getCause() : e.getCause();
+                System.err.println("Error importing sheet " + sheet.getName() + ": " + cause.getMessage());
+                errors.add(sheet.getName() + ": " + cause.getMessage());
+                continue;
+            }
 
-                    System.out.println("Columns found: " + columnNames.size());
+            if (!sheetImport.isImported()) {
+                System.out.println("Skipping empty sheet: " + sheet.getName());
+                continue;
+            }
 
-                    // === СБОР SAMPLE DATA ===
-                    List<Map<String, Object>> sampleData = new ArrayList<>();
-                    int sampleSize = Math.min(20, sheet.getLastRowNum());
+            totalRowsImported += sheetImport.getRowsImported();
+            processedTables.add(sheetImport.getTableName());
+            importedSheets.add(sheetImport);
+            System.out.println("Sheet processed: " + sheet.getName() + ", rows: " + sheetImport.getRowsImported());
+        }
 
-                    // Собираем данные НАЧИНАЯ С ПЕРВОЙ СТРОКИ ДАННЫХ (не заголовка)
-                    for (int r = 1; r <= Math.min(sampleSize + 1, sheet.getLastRowNum()); r++) {
-                        Row row = sheet.getRow(r);
-                        if (row == null || isEmptyRow(row)) {
-                            continue;
-                        }
+        if (staged && (!errors.isEmpty() || (processedTables.isEmpty() && unchangedLists.isEmpty()))) {
+            // Старые таблицы не тронуты - просто убираем staging
+            importedSheets.forEach(sheetImport -> dropTableIfExists(sheetImport.getTargetTable()));
+            String reason = errors.isEmpty() ? "No valid sheets found" : "Error: failed sheets " + errors;
+            return new ExcelImportResult(false, 0, originalFilename, reason + ", previous data kept");
+        }
 
-                        Map<String, Object> rowData = new HashMap<>();
-                        boolean hasData = false;
+        if (!staged && (!errors.isEmpty() || processedTables.isEmpty())) {
+            // Первый импорт не удался - убираем и загруженные листы, иначе следующая загрузка
+            // файла сочтет его уже импортированным
+            discardNewTable(savedTable, importedSheets);
+            String reason = errors.isEmpty() ? "No valid sheets found" : "Error: failed sheets " + errors;
+            return new ExcelImportResult(false, 0, originalFilename, reason + ", nothing imported");
+        }
 
-                        for (int c = 0; c < columnNames.size(); c++) {
-                            Cell cell = row.getCell(c, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-                            Object cellValue = getCellValue(cell);
+        List<String> unchangedTables = new ArrayList<>();
+        for (TableList tableList : unchangedLists) {
+            unchangedTables.add(tableList.getListName());
+            totalRowsImported += tableList.getRowsImported() != null ? tableList.getRowsImported() : 0;
+        }
+        processedTables.addAll(unchangedTables);
+
+        Map<String, TableDeltaService.DeltaResult> deltas = Map.of();
+        if (staged) {
+            deltas = swapStagedTables(existingTable, tablePrefix, username, importedSheets, unchangedLists,
+                    contentHash, totalRowsImported, options);
+        } else {
+            savedTable.setContentHash(contentHash);
+            savedTable.setRowsImported(totalRowsImported);
+            uploadedTableRepository.save(savedTable);
+        }
+        runPostLoad(importedSheets, options);
+        tableMaintenanceService.indexUnchanged(savedTable, unchangedLists, options.getIndexColumns());
+
+        String message = existingTable != null ?
+                "File re-imported successfully. Tables: " + processedTables :
+                "Import successful. Tables: " + processedTables;
+        if (!unchangedTables.isEmpty()) {
+            message += ", unchanged: " + unchangedTables;
+        }
+        if (!deltas.isEmpty()) {
+            message += ", delta: " + deltas;
+        }
 
-                            if (cellValue != null && !cellValue.toString().trim().isEmpty()) {
-                                hasData = true;
-                            }
-                            rowData.put(columnNames.get(c), cellValue);
-                        }
+        return new ExcelImportResult(
+                true,
+                totalRowsImported,
+                String.join(", ", processedTables),
+                message
+        );
+    }
 
-                        if (hasData) {
-                            sampleData.add(rowData);
-                        }
-                    }
+    /**
+     * Оценка числа строк данных по dimension листов (-1 если хотя бы для одного листа неизвестно)
+     */
+    private long estimateDataRows(XlsxStreamingReader reader, List<XlsxStreamingReader.SheetRef> sheets) throws IOException {
+        long total = 0;
+        for (XlsxStreamingReader.SheetRef sheet : sheets) {
+            int rows = reader.estimateRowCount(sheet);
+            if (rows < 0) {
+                return -1;
+            }
+            total += Math.max(0, rows - 1); // без заголовка
+        }
+        return total;
+    }
 
-                    // Если нет данных для анализа, используем TEXT по умолчанию
-                    if (sampleData.isEmpty()) {
-                        System.out.println("No sample data found, using TEXT for all columns");
-                        for (int r = 1; r <= Math.min(5, sheet.getLastRowNum()); r++) {
-                            Row row = sheet.getRow(r);
-                            if (row == null) continue;
-
-                            Map<String, Object> rowData = new HashMap<>();
-                            for (int c = 0; c < columnNames.size(); c++) {
-                                Cell cell = row.getCell(c, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-                                rowData.put(columnNames.get(c), getCellValue(cell));
-                            }
-                            sampleData.add(rowData);
-                        }
+    /**
+     * Импорт одного листа в своей транзакции (и на своем соединении).
+     * При ошибке откатывается только этот лист
+     */
+    private SheetImport importSheet(XlsxStreamingReader reader, UploadedTable savedTable, String internalTableName,
+                                    XlsxStreamingReader.SheetRef sheet, String contentHash, boolean staged,
+                                    ImportOptions options, Semaphore permits, ImportListener listener)
+            throws InterruptedException, IOException {
+        permits.acquire();
+        boolean imported = false;
+        try {
+            SheetImport sheetImport = new SheetImport(savedTable, internalTableName, sheet, contentHash, staged,
+                    options.isDelta(), reader.estimateRowCount(sheet) - 1, listener);
+            try {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    try {
+                        // Парсинг идет в отдельном потоке, вставка - в текущем (в транзакции)
+                        importPipeline.readSheet(reader, sheet, sheetImport);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
                     }
+                    sheetImport.finish();
+                });
+            } catch (Throwable e) {
+                // Любая ошибка (в том числе Error) останавливает параллельную загрузку и удаляет raw-таблицу
+                try {
+                    sheetImport.abort();
+                } catch (RuntimeException abortError) {
+                    e.addSuppressed(abortError);
+                }
+                throw e;
+            }
+            imported = sheetImport.isImported();
+            return sheetImport;
+        } finally {
+            permits.release();
+            listener.onSheetDone(sheet.getName(), imported);
+        }
+    }
 
-                    System.out.println("Sample data collected: " + sampleData.size() + " rows");
-
-                    // Создаём таблицу
-                    Map<Object, ColumnType> columnTypes = dynamicTableService.ensureTableExists(
-                            tableName, originalColumnNames, columnNames, sampleData);
-
-                    // Вставляем данные (начиная со второй строки - данные)
-                    int rowsImported = 0;
-                    List<Map<String, Object>> allRows = new ArrayList<>();
-
-                    for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-                        Row row = sheet.getRow(i);
-                        if (row == null || isEmptyRow(row)) continue;
-
-                        Map<String, Object> rowData = new HashMap<>();
-                        for (int j = 0; j < columnNames.size(); j++) {
-                            Cell cell = row.getCell(j, Row.MissingCellPolicy.CREATE_NULL_AS_BLANK);
-                            Object value = getCellValue(cell);
-                            rowData.put(columnNames.get(j), value);
-                        }
-                        allRows.add(rowData);
-                        rowsImported++;
-                    }
+    @PreDestroy
+    public void shutdown() {
+        sheetExecutor.shutdownNow();
+    }
 
-                    // Вставляем все данные одним пакетом
-                    if (!allRows.isEmpty()) {
-                        BatchInsertService.BatchInsertResult result = batchInsertService.batchInsert(tableName, allRows);
-                        System.out.println("Batch insert result: " + result.getSuccessCount() + " success, " + result.getErrorCount() + " errors");
+    /**
+     * Переключение на новые данные одной короткой транзакцией:
+     * старые таблицы листов удаляются (кроме неизменившихся), staging-таблицы переименовываются
+     * на их место, метаданные листов и колонок заменяются.
+     * В режиме DELTA изменения из staging применяются к существующей таблице той же структуры,
+     * а staging удаляется
+     *
+     * @return результаты применения изменений по таблицам (для режима DELTA)
+     */
+    private Map<String, TableDeltaService.DeltaResult> swapStagedTables(
+            UploadedTable table, String internalTableName, String username, List<SheetImport> sheets,
+            List<TableList> unchangedLists, String contentHash, int rowsImported, ImportOptions options) {
+        Set<Long> keptListIds = unchangedLists.stream().map(TableList::getId)
+                .collect(Collectors.toCollection(HashSet::new));
+        Map<String, TableDeltaService.DeltaResult> deltas = new LinkedHashMap<>();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            List<SheetImport> replacedSheets = new ArrayList<>(sheets);
+            if (options.isDelta()) {
+                Map<String, TableList> previousLists = new HashMap<>();
+                for (TableList tableList : tableListRepository.findByTableId(table.getId())) {
+                    previousLists.put(tableList.getListName(), tableList);
+                }
+                for (SheetImport sheet : sheets) {
+                    TableList previous = previousLists.get(sheet.getTableName());
+                    if (previous == null || !tableDeltaService.isCompatible(sheet.getTableName(), sheet.getTargetTable())) {
+                        continue;
                     }
+                    deltas.put(sheet.getTableName(), applyDelta(table, previous, sheet, options));
+                    keptListIds.add(previous.getId());
+                    replacedSheets.remove(sheet);
+                }
+            }
 
-                    totalRowsImported += rowsImported;
-                    processedTables.add(tableName);
-
-                    // Сохраняем метаданные для этого листа
-                    metadataService.saveTableMetadata(
-                            savedTable,
-                            originalColumnNames,
-                            columnNames,
-                            tableName
-                    );
-
-                    System.out.println("Sheet processed: " + sheetName + ", rows: " + rowsImported);
+            for (TableList tableList : tableListRepository.findByTableId(table.getId())) {
+                if (keptListIds.contains(tableList.getId())) {
+                    continue;
                 }
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + tableList.getListName());
+                rowCountService.remove(tableList.getListName());
+                tableColumnRepository.deleteByTableIdAndListName(table.getId(), tableList.getListName());
+                tableListRepository.delete(tableList);
+            }
 
-                if (processedTables.isEmpty()) {
-                    return new ExcelImportResult(false, 0, originalFilename, "No valid sheets found");
+            for (SheetImport sheet : replacedSheets) {
+                String tableName = sheet.getTableName();
+                String stagingName = sheet.getTargetTable();
+                if (options.isDelta()) {
+                    // Для DELTA staging остался UNLOGGED - структура не совпала, таблица заменяется целиком
+                    jdbcTemplate.execute("ALTER TABLE " + stagingName + " SET LOGGED");
                 }
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + tableName);
+                jdbcTemplate.execute("ALTER TABLE " + stagingName + " RENAME TO " + tableName);
+                dynamicTableService.renameOwnedObjects(tableName);
+
+                metadataService.saveTableList(table, tableName, sheet.getSheetName(),
+                        sheet.getContentHash(), sheet.getRowsImported());
+                rowCountService.setRowCount(tableName, sheet.getRowsWritten());
+                metadataService.saveTableMetadata(table, sheet.getOriginalColumnNames(), sheet.getColumnNames(), tableName);
+            }
 
-                String message = existingTable != null ?
-                        "File re-imported successfully. Tables: " + processedTables :
-                        "Import successful. Tables: " + processedTables;
+            table.setInternalName(internalTableName);
+            table.setUsername(username);
+            table.setContentHash(contentHash);
+            table.setRowsImported(rowsImported);
+            uploadedTableRepository.save(table);
+        });
+        System.out.println("Swapped staging tables for: " + table.getDisplayName());
+        return deltas;
+    }
 
-                return new ExcelImportResult(
-                        true,
-                        totalRowsImported,
-                        String.join(", ", processedTables),
-                        message
-                );
-            }
+    private TableDeltaService.DeltaResult applyDelta(UploadedTable table, TableList previous, SheetImport sheet,
+                                                     ImportOptions options) {
+        String tableName = sheet.getTableName();
+        String keyColumn = resolveKeyColumn(sheet, options.getKeyColumn());
+        TableDeltaService.DeltaResult result = tableDeltaService.applyDelta(
+                tableName, sheet.getTargetTable(), sheet.getColumnNames(), keyColumn);
+        jdbcTemplate.execute("DROP TABLE " + sheet.getTargetTable());
+        rowCountService.adjust(tableName, result.getInserted() - result.getDeleted());
+        System.out.println("Applied delta to " + tableName + ": " + result);
+
+        // Таблица и ее id остаются, обновляются только метаданные
+        previous.setContentHash(sheet.getContentHash());
+        previous.setRowsImported(sheet.getRowsImported());
+        tableListRepository.save(previous);
+        tableColumnRepository.deleteByTableIdAndListName(table.getId(), tableName);
+        metadataService.saveTableMetadata(table, sheet.getOriginalColumnNames(), sheet.getColumnNames(), tableName);
+        return result;
+    }
 
-        } catch (IOException e) {
-            return new ExcelImportResult(false, 0, "", "File reading error: " + e.getMessage());
-        } catch (Exception e) {
-            e.printStackTrace();
-            return new ExcelImportResult(false, 0, "", "Error: " + e.getMessage());
+    /**
+     * Ключевая колонка по SQL-имени или по имени из заголовка листа
+     */
+    private String resolveKeyColumn(SheetImport sheet, String keyColumn) {
+        String resolved = NameUtils.resolveColumn(sheet.getColumnNames(), sheet.getOriginalColumnNames(), keyColumn);
+        if (resolved == null && keyColumn != null && !keyColumn.isBlank()) {
+            System.out.println("Key column not found in sheet " + sheet.getSheetName() + ": " + keyColumn);
         }
+        return resolved;
     }
 
     /**
-     * Удаление существующих данных таблицы
+     * Завершающий этап после фиксации загрузки: статистика, заморозка строк и запрошенные индексы
      */
-    private void deleteExistingTableData(UploadedTable table) {
-        try {
-            // Получаем все листы таблицы
-            List<TableList> tableLists = tableListRepository.findByTableId(table.getId());
-
-            for (TableList tableList : tableLists) {
-                // Удаляем таблицу из БД
-                dropTableIfExists(tableList.getListName());
+    private void runPostLoad(List<SheetImport> sheets, ImportOptions options) {
+        for (SheetImport sheet : sheets) {
+            List<String> indexColumns = new ArrayList<>();
+            for (String requested : options.getIndexColumns()) {
+                String column = NameUtils.resolveColumn(sheet.getColumnNames(), sheet.getOriginalColumnNames(), requested);
+                if (column != null && !indexColumns.contains(column)) {
+                    indexColumns.add(column);
+                }
             }
+            tableMaintenanceService.afterLoad(sheet.getTableName(), indexColumns);
+        }
+    }
 
-            // Удаляем метаданные колонок
+    /**
+     * Откат первого импорта файла: таблицы загруженных листов, их метаданные и счетчики строк
+     * удаляются вместе с записью файла
+     */
+    private void discardNewTable(UploadedTable table, List<SheetImport> sheets) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (SheetImport sheet : sheets) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + sheet.getTableName());
+                rowCountService.remove(sheet.getTableName());
+            }
             tableColumnRepository.deleteByTableId(table.getId());
-
-            // Удаляем метаданные листов
             tableListRepository.deleteByTableId(table.getId());
-
-            System.out.println("Deleted old data for table: " + table.getDisplayName());
-
-        } catch (Exception e) {
-            System.err.println("Error deleting old table data: " + e.getMessage());
-        }
+            uploadedTableRepository.delete(table);
+        });
+        System.out.println("Discarded failed import: " + table.getDisplayName());
     }
 
     /**
@@ -298,90 +489,398 @@ public class ExcelImportService {
     }
 
     /**
-     * Проверяет, является ли строка полностью пустой
+     * Импорт одного листа: заголовок, выборка для анализа типов и вставка пачками.
+     * В памяти держится не больше одной пачки строк
      */
-    private boolean isEmptyRow(Row row) {
-        if (row == null) return true;
-
-        for (int i = 0; i < row.getLastCellNum(); i++) {
-            Cell cell = row.getCell(i);
-            if (cell != null) {
-                Object value = getCellValue(cell);
-                if (value != null && !value.toString().trim().isEmpty()) {
-                    return false; // Нашли непустую ячейку
+    private class SheetImport implements XlsxStreamingReader.RowHandler {
+        private static final int SAMPLE_SIZE = 20;
+        private static final int PROGRESS_STEP = 1000;
+
+        private final UploadedTable savedTable;
+        private final XlsxStreamingReader.SheetRef sheet;
+        private final String tableName;
+        // Куда пишутся строки: сама таблица или ее staging при повторном импорте
+        private final String targetTable;
+        private final boolean staged;
+        private final ImportListener listener;
+        // Отпечаток листа (CRC-32 частей zip) - по нему следующий импорт пропускает неизменившийся лист
+        private final String contentHash;
+        // В режиме DELTA staging не переводится в LOGGED: он только источник изменений
+        private final boolean delta;
+        private TableList tableList;
+        // Типы по всем строкам: строки сначала пишутся как текст в raw-таблицу
+        private final boolean fullInference;
+        private String rawTable;
+        private TypeInferrer inferrer;
+        // Оценка строк данных по dimension листа (-1 если неизвестно) - по ней включается параллельная загрузка
+        private final long estimatedRows;
+        private ParallelBulkLoader.Session parallelLoad;
+        // Ход записи листа по пачкам и его отмена
+        private BulkLoadMonitor.Tracker tracker;
+        // raw-таблица создана вне транзакции листа и не исчезнет при ее откате
+        private boolean rawCommitted;
+
+        private final List<String> originalColumnNames = new ArrayList<>();
+        private final List<String> columnNames = new ArrayList<>();
+        // Первые строки листа - выборка для определения типов колонок
+        private final List<Map<String, Object>> sampleRows = new ArrayList<>();
+        private final List<Integer> sampleRowIndexes = new ArrayList<>();
+        // После создания таблицы строки копятся по колонкам, без map на строку
+        private ColumnarChunk chunk;
+        private AdaptiveBatchSizer chunkSizer;
+
+        private boolean headerParsed;
+        private boolean skipped;
+        private boolean started;
+        private int dataRowsSeen;
+        private int rowsImported;
+        private int successCount;
+        private int errorCount;
+        private int parsedSinceReport;
+
+        SheetImport(UploadedTable savedTable, String internalTableName, XlsxStreamingReader.SheetRef sheet,
+                    String contentHash, boolean staged, boolean delta, long estimatedRows, ImportListener listener) {
+            this.savedTable = savedTable;
+            this.estimatedRows = estimatedRows;
+            this.sheet = sheet;
+            this.contentHash = contentHash;
+            this.delta = delta;
+            this.staged = staged;
+            this.listener = listener;
+
+            this.tableName = NameUtils.sheetTableName(internalTableName, sheet.getName(), sheet.getIndex());
+            this.targetTable = staged ? NameUtils.withSuffix(tableName, "_stg") : tableName;
+            this.fullInference = !"sample".equalsIgnoreCase(typeInference);
+        }
+
+        @Override
+        public void onRow(int rowIndex, List<Object> values) {
+            if (skipped) {
+                return;
+            }
+
+            if (!headerParsed) {
+                // Заголовки должны быть в первой строке листа
+                if (rowIndex != 0 || values.isEmpty()) {
+                    skipped = true;
+                    return;
                 }
+                parseHeader(values);
+                headerParsed = true;
+                if (fullInference && !columnNames.isEmpty()) {
+                    startRaw();
+                }
+                return;
+            }
+
+            dataRowsSeen++;
+            if (isEmptyRow(values)) {
+                return;
+            }
+
+            rowsImported++;
+            if (++parsedSinceReport >= PROGRESS_STEP) {
+                listener.onRowsParsed(sheet.getName(), parsedSinceReport);
+                parsedSinceReport = 0;
+            }
+
+            if (started) {
+                if (inferrer != null) {
+                    inferrer.accept(values);
+                }
+                chunk.addRow(rowIndex, values);
+                if (chunk.isFull()) {
+                    flush();
+                }
+                return;
+            }
+
+            Map<String, Object> rowData = new HashMap<>();
+            for (int c = 0; c < columnNames.size(); c++) {
+                rowData.put(columnNames.get(c), c < values.size() ? values.get(c) : null);
+            }
+            sampleRows.add(rowData);
+            sampleRowIndexes.add(rowIndex);
+            if (sampleRows.size() >= SAMPLE_SIZE) {
+                start();
             }
         }
-        return true; // Все ячейки пустые
-    }
 
-    /**
-     * Улучшенный метод получения значения ячейки
-     */
-    private Object getCellValue(Cell cell) {
-        if (cell == null) return null;
+        /**
+         * Парсим заголовки с гарантией уникальности
+         */
+        private void parseHeader(List<Object> values) {
+            originalColumnNames.addAll(NameUtils.headerNames(values));
+            columnNames.addAll(NameUtils.generateColumnNames(originalColumnNames));
 
-        try {
-            switch (cell.getCellType()) {
-                case STRING:
-                    String stringValue = cell.getStringCellValue().trim();
-                    return stringValue.isEmpty() ? null : stringValue;
-
-                case NUMERIC:
-                    if (DateUtil.isCellDateFormatted(cell)) {
-                        return cell.getDateCellValue();
-                    } else {
-                        double numericValue = cell.getNumericCellValue();
-                        // Для целых чисел возвращаем Long, для дробных - Double
-                        if (numericValue == Math.floor(numericValue) && !Double.isInfinite(numericValue)) {
-                            return (long) numericValue;
-                        }
-                        return numericValue;
-                    }
+            System.out.println("Columns found: " + columnNames.size());
+        }
 
-                case BOOLEAN:
-                    return cell.getBooleanCellValue();
+        /**
+         * Создание таблицы по накопленной выборке (первые непустые строки листа)
+         */
+        private void start() {
+            if (staged) {
+                createStagingTable();
+            } else {
+                createTable();
+            }
+            openChunk(targetTable);
+            started = true;
+        }
 
-                case FORMULA:
-                    try {
-                        return getFormulaCellValue(cell);
-                    } catch (Exception e) {
-                        return null;
-                    }
+        /**
+         * Полный вывод типов: все колонки - TEXT в UNLOGGED raw-таблице, типы копятся по ходу чтения
+         */
+        private void startRaw() {
+            rawTable = NameUtils.withSuffix(tableName, "_raw");
+            boolean parallel = parallelBulkLoader.isEnabledFor(estimatedRows);
+            if (parallel) {
+                // Другие соединения увидят таблицу, только если она закоммичена
+                TransactionTemplate separate = new TransactionTemplate(transactionManager);
+                separate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+                separate.executeWithoutResult(status -> createRawTable());
+                rawCommitted = true;
+            } else {
+                createRawTable();
+            }
+            inferrer = new TypeInferrer(columnNames.size());
+            openChunk(rawTable);
+            if (parallel) {
+                parallelLoad = parallelBulkLoader.open(rawTable, chunk, tracker,
+                        r -> listener.onRowsInserted(sheet.getName(), r.getSuccessCount(), r.getErrorCount()));
+            }
+            started = true;
+        }
+
+        private void createRawTable() {
+            System.out.println("Creating raw table: " + rawTable);
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + rawTable);
+            dynamicTableService.createTypedTable(rawTable, columnNames,
+                    Collections.nCopies(columnNames.size(), ColumnType.TEXT), true);
+        }
+
+        /**
+         * Перенос строк из raw-таблицы в таблицу с выведенными типами
+         */
+        private void loadFromRaw() {
+            List<ColumnType> types = inferrer.resolveAll();
+            System.out.println("Inferred column types for " + tableName + ": " + types);
 
-                case BLANK:
-                    return null;
+            if (staged) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + targetTable);
+            } else {
+                replaceSheetList();
+            }
+            // Значение, прошедшее проверку формата, но не приводимое (31.02.2024), не валит лист:
+            // таблица создается из TEXT-колонок, как при импорте CSV
+            dynamicTableService.createFromRaw(rawTable, targetTable, columnNames, types, staged);
+            jdbcTemplate.execute("DROP TABLE " + rawTable);
+        }
+
+        private void createTable() {
+            System.out.println("Creating table: " + tableName);
+            replaceSheetList();
+
+            System.out.println("Sample data collected: " + sampleRows.size() + " rows");
+
+            // Создаём таблицу
+            dynamicTableService.ensureTableExists(tableName, originalColumnNames, columnNames, sampleRows);
+        }
 
-                default:
-                    return null;
+        /**
+         * Удаление старого листа с тем же именем и сохранение метаданных нового
+         */
+        private void replaceSheetList() {
+            // Удаляем старый лист если существует
+            TableList existingList = tableListRepository.findByTableIdAndOriginalListName(savedTable.getId(), sheet.getName());
+            if (existingList != null) {
+                System.out.println("Deleting old sheet data: " + sheet.getName());
+                // Удаляем старую таблицу из БД
+                dropTableIfExists(existingList.getListName());
+                rowCountService.remove(existingList.getListName());
+                // Удаляем метаданные колонок
+                tableColumnRepository.deleteByTableIdAndListName(savedTable.getId(), existingList.getListName());
+                // Удаляем метаданные листа
+                tableListRepository.delete(existingList);
             }
-        } catch (Exception e) {
-            System.err.println("Error reading cell value at " + cell.getAddress() + ": " + e.getMessage());
-            return null;
+
+            // Сохраняем метаданные листа (отпечаток - в конце, когда лист загружен целиком)
+            tableList = metadataService.saveTableList(savedTable, tableName, sheet.getName(), null, null);
         }
+
+        /**
+         * Создание UNLOGGED staging-таблицы. Метаданные листа сохраняются только при переключении
+         */
+        private void createStagingTable() {
+            System.out.println("Creating staging table: " + targetTable);
+            // Остаток от прерванного импорта
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + targetTable);
+            dynamicTableService.ensureTableExists(targetTable, originalColumnNames, columnNames, sampleRows, true);
+        }
+
+        /**
+         * Колоночная пачка по типам созданной таблицы; выборка переносится в нее
+         */
+        private void openChunk(String table) {
+            List<ColumnType> types = batchInsertService.getColumnTypes(table, columnNames);
+            if (types == null) {
+                throw new IllegalStateException("Unsupported column types in table " + table);
+            }
+            // Массивы - под наибольший размер для такой ширины, набирается - подобранный
+            chunkSizer = batchInsertService.copySizer(columnNames.size(), Math.max(1, importBatchSize));
+            chunk = new ColumnarChunk(columnNames, types, chunkSizer.getMaxSize());
+            chunk.setLimit(chunkSizer.current());
+            tracker = bulkLoadMonitor.start(targetTable, LoadProgress.CancelMode.ROLLBACK,
+                    listener.getCancellationToken(), null);
+
+            for (int i = 0; i < sampleRows.size(); i++) {
+                Map<String, Object> rowData = sampleRows.get(i);
+                List<Object> values = new ArrayList<>(columnNames.size());
+                for (String column : columnNames) {
+                    values.add(rowData.get(column));
+                }
+                chunk.addRow(sampleRowIndexes.get(i), values);
+                if (chunk.isFull()) {
+                    flush();
+                }
+            }
+            sampleRows.clear();
+            sampleRowIndexes.clear();
+        }
+
+        /**
+         * Вставка накопленной пачки
+         */
+        private void flush() {
+            if (chunk == null || (chunk.isEmpty() && chunk.getRejectedRows().isEmpty())) {
+                return;
+            }
+            // Отмена: исключение откатывает транзакцию листа
+            tracker.stopRequested();
+            if (parallelLoad != null) {
+                chunk = parallelLoad.submit(chunk);
+                chunk.setLimit(chunkSizer.current());
+                return;
+            }
+            String table = rawTable != null ? rawTable : targetTable;
+            long bytes = chunk.estimateBytes();
+            BatchInsertService.BatchInsertResult result = batchInsertService.batchInsertWithProgress(table, chunk,
+                    r -> listener.onRowsInserted(sheet.getName(), r.getSuccessCount(), r.getErrorCount()));
+            tracker.record(result.getSuccessCount(), result.getErrorCount(), bytes);
+            successCount += result.getSuccessCount();
+            errorCount += result.getErrorCount();
+            chunk.clear();
+            chunk.setLimit(chunkSizer.current());
+        }
+
+        /**
+         * Завершение листа: дозаписываем хвост и сохраняем метаданные колонок
+         */
+        void finish() {
+            // Пропускаем пустые листы (минимум заголовок + 1 строка данных)
+            if (skipped || !headerParsed || columnNames.isEmpty() || dataRowsSeen < 1) {
+                skipped = true;
+                finishParallelLoad();
+                finishTracker(false);
+                if (rawTable != null) {
+                    dropTableIfExists(rawTable);
+                }
+                return;
+            }
+
+            if (!started) {
+                start();
+            }
+            if (parsedSinceReport > 0) {
+                listener.onRowsParsed(sheet.getName(), parsedSinceReport);
+                parsedSinceReport = 0;
+            }
+            flush();
+            finishParallelLoad();
+            finishTracker(false);
+            System.out.println("Batch insert result: " + successCount + " success, " + errorCount + " errors");
+
+            if (rawTable != null) {
+                loadFromRaw();
+            }
+
+            if (staged) {
+                if (!delta) {
+                    // Перед переключением таблица должна стать обычной (с WAL), иначе не переживет сбой
+                    jdbcTemplate.execute("ALTER TABLE " + targetTable + " SET LOGGED");
+                }
+                return;
+            }
+
+            // Сохраняем метаданные для этого листа
+            metadataService.saveTableMetadata(
+                    savedTable,
+                    originalColumnNames,
+                    columnNames,
+                    tableName
+            );
+            tableList.setContentHash(contentHash);
+            tableList.setRowsImported(rowsImported);
+            tableListRepository.save(tableList);
+            rowCountService.setRowCount(tableName, successCount);
+        }
+
+        /**
+         * Дождаться записи пачек, отданных параллельной загрузке
+         */
+        private void finishParallelLoad() {
+            if (parallelLoad == null) {
+                return;
+            }
+            BatchInsertService.BatchInsertResult result = parallelLoad.finish();
+            parallelLoad = null;
+            successCount += result.getSuccessCount();
+            errorCount += result.getErrorCount();
+        }
+
+        /**
+         * Уборка после отката листа: остановка параллельной загрузки и удаление закоммиченной raw-таблицы
+         */
+        void abort() {
+            if (parallelLoad != null) {
+                parallelLoad.abort();
+                parallelLoad = null;
+            }
+            finishTracker(true);
+            if (rawCommitted) {
+                dropTableIfExists(rawTable);
+            }
+        }
+
+        private void finishTracker(boolean failed) {
+            if (tracker != null) {
+                tracker.finish(failed);
+            }
+        }
+
+        boolean isImported() { return !skipped; }
+        int getRowsImported() { return rowsImported; }
+        // Строк записано в таблицу (без отклоненных)
+        int getRowsWritten() { return successCount; }
+        String getTableName() { return tableName; }
+        String getTargetTable() { return targetTable; }
+        String getContentHash() { return contentHash; }
+        String getSheetName() { return sheet.getName(); }
+        List<String> getOriginalColumnNames() { return originalColumnNames; }
+        List<String> getColumnNames() { return columnNames; }
     }
 
     /**
-     * Получение значения формульной ячейки
+     * Проверяет, является ли строка полностью пустой
      */
-    private Object getFormulaCellValue(Cell cell) {
-        try {
-            switch (cell.getCachedFormulaResultType()) {
-                case STRING:
-                    return cell.getStringCellValue();
-                case NUMERIC:
-                    if (DateUtil.isCellDateFormatted(cell)) {
-                        return cell.getDateCellValue();
-                    }
-                    return cell.getNumericCellValue();
-                case BOOLEAN:
-                    return cell.getBooleanCellValue();
-                default:
-                    return null;
+    private boolean isEmptyRow(List<Object> values) {
+        for (Object value : values) {
+            if (value != null && !value.toString().trim().isEmpty()) {
+                return false; // Нашли непустую ячейку
             }
-        } catch (Exception e) {
-            return null;
         }
+        return true; // Все ячейки пустые
     }
 
     /**
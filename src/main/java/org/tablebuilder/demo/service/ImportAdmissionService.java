@@ -0,0 +1,302 @@
+package org.tablebuilder.demo.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.tablebuilder.demo.exception.ImportRejectedException;
+import org.tablebuilder.demo.exception.LoadCancelledException;
+import org.tablebuilder.demo.model.ImportAdmissionStats;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Допуск импортов по общему бюджету памяти. Стоимость импорта оценивается по размерам
+ * распакованных частей книги: общие строки целиком держатся в памяти, а каждый из
+ * одновременно импортируемых листов - не больше своего рабочего набора (пачки строк и очередь конвейера).
+ * Импорт, которому не хватает памяти, ждет в очереди (FIFO); при заполненной очереди - отказ
+ */
+@Service
+public class ImportAdmissionService {
+
+    // Объекты Java (UTF-16, заголовки объектов) занимают примерно вдвое больше, чем XML-текст
+    private static final int HEAP_PER_XML_BYTE = 2;
+    private static final long KB = 1024;
+
+    // Бюджет памяти на все импорты (пусто - половина -Xmx)
+    @Value("${app.import.admission.memory-budget:}")
+    private DataSize memoryBudget;
+
+    // Потолок памяти на один импортируемый лист
+    @Value("${app.import.admission.sheet-working-set:64MB}")
+    private DataSize sheetWorkingSet;
+
+    // Сколько импортов может ждать памяти
+    @Value("${app.import.admission.max-queue:8}")
+    private int maxQueue;
+
+    // Сколько синхронная загрузка ждет памяти до ответа 503
+    @Value("${app.import.admission.wait-timeout:30s}")
+    private Duration waitTimeout;
+
+    // Retry-After в ответах 429/503
+    @Value("${app.import.admission.retry-after:30s}")
+    private Duration retryAfter;
+
+    @Value("${app.import.sheet-parallelism:4}")
+    private int sheetParallelism;
+
+    private long budgetKb;
+    private Semaphore memory;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong admittedTotal = new AtomicLong();
+    private final AtomicLong rejectedTotal = new AtomicLong();
+    private final AtomicLong timedOutTotal = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        long budget = memoryBudget != null ? memoryBudget.toBytes() : Runtime.getRuntime().maxMemory() / 2;
+        // Семафор в килобайтах: int хватает на бюджет до 2 ТБ
+        budgetKb = Math.max(1, Math.min(Integer.MAX_VALUE, budget / KB));
+        memory = new Semaphore((int) budgetKb, true);
+        System.out.println("Import memory budget: " + budgetKb / KB + " MB");
+    }
+
+    /**
+     * Встать в очередь на импорт файла. Если память есть - билет сразу допущен,
+     * иначе занимает место в очереди до {@link Ticket#await}
+     *
+     * @throws ImportRejectedException 429, если очередь заполнена
+     */
+    public Ticket reserve(Path file, String originalFilename) {
+        long costKb = Math.min(budgetKb, Math.max(1, estimateCost(file, originalFilename) / KB));
+        Ticket ticket = new Ticket(originalFilename, (int) costKb);
+        try {
+            if (memory.tryAcquire(ticket.costKb, 0, TimeUnit.MILLISECONDS)) {
+                ticket.admit();
+                return ticket;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int depth;
+        do {
+            depth = queued.get();
+            if (depth >= maxQueue) {
+                rejectedTotal.incrementAndGet();
+                throw new ImportRejectedException(HttpStatus.TOO_MANY_REQUESTS, retryAfter.toSeconds(),
+                        "Too many imports in progress (" + depth + " queued), retry later");
+            }
+        } while (!queued.compareAndSet(depth, depth + 1));
+        ticket.queued = true;
+        return ticket;
+    }
+
+    /**
+     * Синхронный импорт: дождаться памяти не дольше wait-timeout
+     */
+    public Ticket admit(Path file, String originalFilename) {
+        Ticket ticket = reserve(file, originalFilename);
+        try {
+            ticket.await(waitTimeout);
+            return ticket;
+        } catch (RuntimeException e) {
+            ticket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Оценка памяти импорта в байтах
+     */
+    public long estimateCost(Path file, String originalFilename) {
+        long perSheetLimit = sheetWorkingSet.toBytes();
+        if (CsvImportService.isCsvFile(originalFilename)) {
+            // CSV целиком уходит в COPY, в памяти только выборка для типов
+            try {
+                return Math.min(perSheetLimit, Files.size(file) * HEAP_PER_XML_BYTE);
+            } catch (IOException e) {
+                return perSheetLimit;
+            }
+        }
+
+        long sharedStrings = 0;
+        List<Long> sheets = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                long size = Math.max(0, entry.getSize());
+                if (name.equals("xl/sharedStrings.xml")) {
+                    sharedStrings = size;
+                } else if (name.startsWith("xl/worksheets/") && name.endsWith(".xml")) {
+                    sheets.add(Math.min(perSheetLimit, size * HEAP_PER_XML_BYTE));
+                }
+            }
+        } catch (IOException e) {
+            // Не zip - импорт упадет сам, резервируем как за один лист
+            return perSheetLimit;
+        }
+
+        // Одновременно в памяти - самые тяжелые листы в пределах sheet-parallelism
+        long sheetCost = sheets.stream()
+                .sorted(Comparator.reverseOrder())
+                .limit(Math.max(1, sheetParallelism))
+                .mapToLong(Long::longValue)
+                .sum();
+        return sharedStrings * HEAP_PER_XML_BYTE + sheetCost;
+    }
+
+    public ImportAdmissionStats getStats() {
+        ImportAdmissionStats stats = new ImportAdmissionStats();
+        long usedKb = budgetKb - memory.availablePermits();
+        stats.setBudgetBytes(budgetKb * KB);
+        stats.setUsedBytes(usedKb * KB);
+        stats.setBudgetUsage(Math.round(usedKb * 1000.0 / budgetKb) / 1000.0);
+        stats.setRunning(running.get());
+        stats.setQueued(queued.get());
+        stats.setMaxQueue(maxQueue);
+        stats.setAdmittedTotal(admittedTotal.get());
+        stats.setRejectedTotal(rejectedTotal.get());
+        stats.setTimedOutTotal(timedOutTotal.get());
+        return stats;
+    }
+
+    /**
+     * Допуск одного импорта. close() возвращает память или освобождает место в очереди
+     */
+    public class Ticket implements AutoCloseable {
+        private final String fileName;
+        private final int costKb;
+        private boolean queued;
+        private volatile boolean admitted;
+        private boolean closed;
+        private volatile boolean cancelled;
+        private Thread waiter;
+
+        private Ticket(String fileName, int costKb) {
+            this.fileName = fileName;
+            this.costKb = costKb;
+        }
+
+        /**
+         * Дождаться памяти
+         *
+         * @param timeout null - ждать без ограничения
+         * @throws ImportRejectedException 503, если память не освободилась за timeout
+         * @throws LoadCancelledException если билет отменен до допуска; память не занимается
+         */
+        public void await(Duration timeout) {
+            if (admitted) {
+                return;
+            }
+            synchronized (this) {
+                if (cancelled) {
+                    leaveQueue();
+                    throw new LoadCancelledException("Import of " + fileName + " cancelled while queued");
+                }
+                waiter = Thread.currentThread();
+            }
+            boolean acquired = false;
+            try {
+                if (timeout == null) {
+                    memory.acquire(costKb);
+                    acquired = true;
+                } else {
+                    acquired = memory.tryAcquire(costKb, timeout.toMillis(), TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                if (!cancelled) {
+                    Thread.currentThread().interrupt();
+                    throw new ImportRejectedException(HttpStatus.SERVICE_UNAVAILABLE, retryAfter.toSeconds(),
+                            "Import of " + fileName + " interrupted while waiting for memory");
+                }
+            } finally {
+                synchronized (this) {
+                    waiter = null;
+                    if (cancelled) {
+                        // Прерывание от cancel() могло прийти уже после получения памяти
+                        Thread.interrupted();
+                    }
+                }
+            }
+            if (cancelled) {
+                if (acquired) {
+                    memory.release(costKb);
+                }
+                leaveQueue();
+                throw new LoadCancelledException("Import of " + fileName + " cancelled while queued");
+            }
+            if (!acquired) {
+                timedOutTotal.incrementAndGet();
+                throw new ImportRejectedException(HttpStatus.SERVICE_UNAVAILABLE, retryAfter.toSeconds(),
+                        "Not enough memory to import " + fileName + " now, retry later");
+            }
+            leaveQueue();
+            admit();
+        }
+
+        /**
+         * Отменить ожидание: {@link #await} сразу выходит из очереди, не занимая память.
+         * Уже допущенный билет не затрагивается
+         */
+        public void cancel() {
+            synchronized (this) {
+                if (admitted) {
+                    return;
+                }
+                cancelled = true;
+                if (waiter != null) {
+                    waiter.interrupt();
+                }
+            }
+        }
+
+        public long getCostBytes() {
+            return costKb * KB;
+        }
+
+        private void admit() {
+            admitted = true;
+            running.incrementAndGet();
+            admittedTotal.incrementAndGet();
+        }
+
+        private void leaveQueue() {
+            if (queued) {
+                queued = false;
+                ImportAdmissionService.this.queued.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            leaveQueue();
+            if (admitted) {
+                running.decrementAndGet();
+                memory.release(costKb);
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package org.tablebuilder.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.tablebuilder.demo.exception.EntityNotFoundException;
+import org.tablebuilder.demo.exception.LoadCancelledException;
+import org.tablebuilder.demo.model.ExcelImportResult;
+import org.tablebuilder.demo.model.ImportJobStatus;
+import org.tablebuilder.demo.model.ImportOptions;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновые задачи импорта: загрузка сразу возвращает id задачи,
+ * ход импорта публикуется в STOMP-топик /topic/import/{jobId} и доступен по REST
+ */
+@Service
+public class ImportJobService {
+
+    public static final String TOPIC_PREFIX = "/topic/import/";
+
+    @Autowired
+    private ExcelImportService excelImportService;
+    @Autowired
+    private CsvImportService csvImportService;
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+    @Autowired
+    private UploadSpoolService uploadSpoolService;
+    @Autowired
+    private ImportAdmissionService importAdmissionService;
+
+    // Не чаще одного события прогресса за интервал (завершение листа публикуется всегда)
+    @Value("${app.import.jobs.progress-interval-ms:500}")
+    private long progressIntervalMs;
+
+    // Сколько хранить завершенные задачи
+    @Value("${app.import.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService jobExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("import-job-", 0).factory());
+
+    /**
+     * Поставить multipart-файл в очередь импорта.
+     * Содержимое сразу сохраняется во временный файл: после ответа multipart-файл будет удален
+     */
+    public ImportJobStatus submit(MultipartFile file, String username, ImportOptions options) throws IOException {
+        return submit(uploadSpoolService.spool(file), file.getOriginalFilename(), username, options);
+    }
+
+    /**
+     * Поставить в очередь уже сохраненный на диск файл. Файл удаляется по завершении задачи.
+     * Задача ждет памяти в состоянии QUEUED; при заполненной очереди файл удаляется сразу
+     *
+     * @throws org.tablebuilder.demo.exception.ImportRejectedException 429, если очередь заполнена
+     */
+    public ImportJobStatus submit(Path spooledFile, String originalFilename, String username, ImportOptions options) {
+        evictFinishedJobs();
+
+        ImportAdmissionService.Ticket ticket;
+        try {
+            ticket = importAdmissionService.reserve(spooledFile, originalFilename);
+        } catch (RuntimeException e) {
+            uploadSpoolService.delete(spooledFile);
+            throw e;
+        }
+
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), originalFilename, username, ticket);
+        jobs.put(job.jobId, job);
+        jobExecutor.submit(() -> run(job, spooledFile, options, ticket));
+
+        return job.snapshot();
+    }
+
+    /**
+     * Отменить задачу: ждущая в очереди не начнется, идущая остановится перед следующей пачкой
+     * и откатит листы (при повторном импорте старые данные остаются)
+     */
+    public ImportJobStatus cancel(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new EntityNotFoundException("Import job not found: " + jobId);
+        }
+        if (job.finishedAt == null) {
+            System.out.println("Cancelling import job " + jobId + " (" + job.fileName + ")");
+            job.cancellationToken.cancel("Cancelled by user");
+            // Ждущая в очереди задача сразу освобождает место и не занимает память
+            job.ticket.cancel();
+            publish(job);
+        }
+        return job.snapshot();
+    }
+
+    /**
+     * Текущее состояние задачи
+     */
+    public ImportJobStatus getStatus(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new EntityNotFoundException("Import job not found: " + jobId);
+        }
+        return job.snapshot();
+    }
+
+    private void run(ImportJob job, Path tempFile, ImportOptions options, ImportAdmissionService.Ticket ticket) {
+        ExcelImportResult result;
+        try (ticket) {
+            boolean admitted;
+            try {
+                ticket.await(null);
+                admitted = true;
+            } catch (LoadCancelledException e) {
+                admitted = false;
+            }
+
+            if (!admitted || job.cancellationToken.isCancelled()) {
+                result = new ExcelImportResult(false, 0, "", "Import cancelled before start");
+            } else {
+                job.state = ImportJobStatus.State.RUNNING;
+                job.startedAt = LocalDateTime.now();
+                job.startNanos = System.nanoTime();
+                publish(job);
+
+                result = CsvImportService.isCsvFile(job.fileName)
+                        ? csvImportService.importCsv(tempFile, job.fileName, job.username, options, job)
+                        : excelImportService.importExcel(tempFile, job.fileName, job.username, options, job);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            result = new ExcelImportResult(false, 0, "", "Import failed: " + e.getMessage());
+        } finally {
+            uploadSpoolService.delete(tempFile);
+        }
+
+        job.result = result;
+        job.finishNanos = System.nanoTime();
+        job.finishedAt = LocalDateTime.now();
+        if (result.isSuccess()) {
+            job.state = ImportJobStatus.State.COMPLETED;
+        } else {
+            job.state = job.cancellationToken.isCancelled()
+                    ? ImportJobStatus.State.CANCELLED : ImportJobStatus.State.FAILED;
+        }
+        publish(job);
+    }
+
+    private void publish(ImportJob job) {
+        try {
+            messagingTemplate.convertAndSend(TOPIC_PREFIX + job.jobId, job.snapshot());
+        } catch (Exception e) {
+            System.err.println("Error publishing import progress for job " + job.jobId + ": " + e.getMessage());
+        }
+    }
+
+    private void evictFinishedJobs() {
+        LocalDateTime threshold = LocalDateTime.now().minus(Duration.ofMinutes(retentionMinutes));
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(threshold));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Задача импорта. Листы идут параллельно, поэтому счетчики атомарные
+     */
+    private class ImportJob implements ImportListener {
+        private final String jobId;
+        private final String fileName;
+        private final String username;
+
+        private volatile ImportJobStatus.State state = ImportJobStatus.State.QUEUED;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile long startNanos;
+        private volatile long finishNanos;
+        private volatile ExcelImportResult result;
+
+        private volatile int totalSheets;
+        private volatile long estimatedRows = -1;
+        private final AtomicInteger sheetsDone = new AtomicInteger();
+        private final AtomicLong rowsParsed = new AtomicLong();
+        private final AtomicLong rowsInserted = new AtomicLong();
+        private final AtomicLong rowsFailed = new AtomicLong();
+        private final AtomicLong lastPublishedNanos = new AtomicLong();
+        private final CancellationToken cancellationToken = new CancellationToken();
+        private final ImportAdmissionService.Ticket ticket;
+
+        ImportJob(String jobId, String fileName, String username, ImportAdmissionService.Ticket ticket) {
+            this.jobId = jobId;
+            this.fileName = fileName;
+            this.username = username;
+            this.ticket = ticket;
+        }
+
+        @Override
+        public void onStart(int totalSheets, long estimatedRows) {
+            this.totalSheets = totalSheets;
+            this.estimatedRows = estimatedRows;
+            publish(this);
+        }
+
+        @Override
+        public void onRowsParsed(String sheetName, int rows) {
+            rowsParsed.addAndGet(rows);
+            publishThrottled();
+        }
+
+        @Override
+        public void onRowsInserted(String sheetName, int inserted, int errors) {
+            rowsInserted.addAndGet(inserted);
+            rowsFailed.addAndGet(errors);
+            publishThrottled();
+        }
+
+        @Override
+        public void onSheetDone(String sheetName, boolean imported) {
+            sheetsDone.incrementAndGet();
+            publish(this);
+        }
+
+        @Override
+        public CancellationToken getCancellationToken() {
+            return cancellationToken;
+        }
+
+        private void publishThrottled() {
+            long now = System.nanoTime();
+            long last = lastPublishedNanos.get();
+            if (now - last >= progressIntervalMs * 1_000_000L && lastPublishedNanos.compareAndSet(last, now)) {
+                publish(this);
+            }
+        }
+
+        ImportJobStatus snapshot() {
+            ImportJobStatus status = new ImportJobStatus();
+            status.setJobId(jobId);
+            status.setFileName(fileName);
+            status.setUsername(username);
+            status.setState(state);
+            status.setTotalSheets(totalSheets);
+            status.setSheetsDone(sheetsDone.get());
+            status.setEstimatedRows(estimatedRows);
+            status.setRowsParsed(rowsParsed.get());
+            status.setRowsInserted(rowsInserted.get());
+            status.setRowsFailed(rowsFailed.get());
+            status.setStartedAt(startedAt);
+            status.setFinishedAt(finishedAt);
+            status.setResult(result);
+
+            double rate = 0;
+            long done = rowsInserted.get() + rowsFailed.get();
+            if (startedAt != null) {
+                long end = finishedAt != null ? finishNanos : System.nanoTime();
+                double seconds = (end - startNanos) / 1e9;
+                rate = seconds > 0 ? rowsInserted.get() / seconds : 0;
+            }
+            status.setRowsPerSecond(Math.round(rate * 10) / 10.0);
+
+            if (finishedAt != null) {
+                status.setEtaSeconds(0);
+            } else if (estimatedRows > 0 && rate > 0) {
+                status.setEtaSeconds(Math.max(0, Math.round((estimatedRows - done) / rate)));
+            } else {
+                status.setEtaSeconds(-1);
+            }
+            return status;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.tablebuilder.demo.service;
+
+/**
+ * Слушатель хода импорта книги.
+ * Листы импортируются параллельно, поэтому методы вызываются из разных потоков
+ */
+public interface ImportListener {
+
+    ImportListener NONE = new ImportListener() {
+    };
+
+    /**
+     * Книга открыта
+     *
+     * @param totalSheets   количество листов
+     * @param estimatedRows оценка числа строк данных по всем листам (-1 если неизвестно)
+     */
+    default void onStart(int totalSheets, long estimatedRows) {
+    }
+
+    /**
+     * Прочитаны очередные строки листа
+     */
+    default void onRowsParsed(String sheetName, int rows) {
+    }
+
+    /**
+     * Записана очередная пачка строк листа
+     */
+    default void onRowsInserted(String sheetName, int inserted, int errors) {
+    }
+
+    /**
+     * Лист завершен (imported = false для пропущенного или упавшего листа)
+     */
+    default void onSheetDone(String sheetName, boolean imported) {
+    }
+
+    /**
+     * Токен отмены: импорт проверяет его перед каждой пачкой (null - импорт не отменяется)
+     */
+    default CancellationToken getCancellationToken() {
+        return null;
+    }
+}
@@ -0,0 +1,153 @@
+package org.tablebuilder.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tablebuilder.demo.utils.XlsxStreamingReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Конвейер импорта: парсинг листа идет в отдельном потоке и складывает пачки строк
+ * в ограниченную очередь, а вызывающий поток (с транзакцией) пишет их в БД.
+ * Когда очередь заполнена, парсер ждет - он не может уйти вперед базы больше чем на queue-capacity пачек
+ */
+@Component
+public class ImportPipeline {
+
+    @Value("${app.import.pipeline.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.import.pipeline.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.import.pipeline.queue-capacity:4}")
+    private int queueCapacity;
+
+    // Как часто парсер, ждущий места в очереди, проверяет, не завершился ли потребитель
+    private static final long STOP_CHECK_MS = 100;
+
+    private final ExecutorService parserExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("xlsx-parser-", 0).factory());
+
+    /**
+     * Прочитать лист и передать строки обработчику в вызывающем потоке
+     */
+    public void readSheet(XlsxStreamingReader reader, XlsxStreamingReader.SheetRef sheet,
+                          XlsxStreamingReader.RowHandler consumer) throws IOException {
+        if (!enabled) {
+            reader.readSheet(sheet, consumer);
+            return;
+        }
+
+        BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        AtomicBoolean stopped = new AtomicBoolean();
+        Future<?> producer = parserExecutor.submit(() -> produce(reader, sheet, queue, stopped));
+
+        try {
+            while (true) {
+                Chunk chunk = queue.take();
+                if (chunk.error != null) {
+                    if (chunk.error instanceof IOException ioException) {
+                        throw ioException;
+                    }
+                    if (chunk.error instanceof Error error) {
+                        throw error;
+                    }
+                    throw new IOException("Error parsing sheet '" + sheet.getName() + "': " + chunk.error.getMessage(), chunk.error);
+                }
+                if (chunk.last) {
+                    break;
+                }
+                for (ParsedRow row : chunk.rows) {
+                    consumer.onRow(row.index, row.values);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } finally {
+            // При ошибке записи парсер может висеть на put() - останавливаем его флагом, а не прерыванием:
+            // прерванное чтение FileChannel закрывает файл книги, который читают парсеры других листов
+            stopped.set(true);
+            producer.cancel(false);
+        }
+    }
+
+    /**
+     * Стадия парсинга: складывает строки пачками по chunk-size
+     */
+    private void produce(XlsxStreamingReader reader, XlsxStreamingReader.SheetRef sheet, BlockingQueue<Chunk> queue,
+                         AtomicBoolean stopped) {
+        try {
+            List<ParsedRow> current = new ArrayList<>(chunkSize);
+            try {
+                reader.readSheet(sheet, (rowIndex, values) -> {
+                    current.add(new ParsedRow(rowIndex, values));
+                    if (current.size() >= chunkSize) {
+                        put(queue, new Chunk(new ArrayList<>(current), false, null), stopped);
+                        current.clear();
+                    }
+                });
+                if (!current.isEmpty()) {
+                    put(queue, new Chunk(current, false, null), stopped);
+                }
+                put(queue, new Chunk(List.of(), true, null), stopped);
+            } catch (PipelineCancelledException e) {
+                // Потребитель уже завершился, писать некуда
+            } catch (Throwable e) {
+                // Любая ошибка парсера (включая Error) должна дойти до потребителя, иначе он ждет в take() вечно
+                put(queue, new Chunk(List.of(), true, e), stopped);
+            }
+        } catch (PipelineCancelledException ignored) {
+            // Потребитель уже завершился
+        }
+    }
+
+    private void put(BlockingQueue<Chunk> queue, Chunk chunk, AtomicBoolean stopped) {
+        try {
+            while (!queue.offer(chunk, STOP_CHECK_MS, TimeUnit.MILLISECONDS)) {
+                if (stopped.get()) {
+                    throw new PipelineCancelledException();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PipelineCancelledException();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parserExecutor.shutdownNow();
+    }
+
+    private static class ParsedRow {
+        private final int index;
+        private final List<Object> values;
+
+        ParsedRow(int index, List<Object> values) {
+            this.index = index;
+            this.values = values;
+        }
+    }
+
+    private static class Chunk {
+        private final List<ParsedRow> rows;
+        private final boolean last;
+        private final Throwable error;
+
+        Chunk(List<ParsedRow> rows, boolean last, Throwable error) {
+            this.rows = rows;
+            this.last = last;
+            this.error = error;
+        }
+    }
+
+    private static class PipelineCancelledException extends RuntimeException {
+    }
+}
@@ -0,0 +1,210 @@
+package org.tablebuilder.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.tablebuilder.demo.model.ColumnPreview;
+import org.tablebuilder.demo.model.ImportPreview;
+import org.tablebuilder.demo.model.SheetPreview;
+import org.tablebuilder.demo.store.UploadedTableRepository;
+import org.tablebuilder.demo.utils.*;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Предпросмотр импорта без записи в БД: читаются только первые строки каждого листа
+ * (общие строки книги - тоже только до нужного индекса), число строк оценивается
+ * по dimension листа или по размеру его XML в zip
+ */
+@Service
+public class ImportPreviewService {
+
+    @Autowired
+    private UploadSpoolService uploadSpoolService;
+    @Autowired
+    private UploadedTableRepository uploadedTableRepository;
+
+    // Предел строк предпросмотра на лист
+    @Value("${app.import.preview.max-rows:1000}")
+    private int maxPreviewRows;
+
+    public ImportPreview preview(MultipartFile file, int rows) throws IOException {
+        Path spooled = uploadSpoolService.spool(file);
+        try {
+            return preview(spooled, file.getOriginalFilename(), rows);
+        } finally {
+            uploadSpoolService.delete(spooled);
+        }
+    }
+
+    public ImportPreview preview(Path file, String originalFilename, int rows) throws IOException {
+        if (originalFilename == null) {
+            throw new IllegalArgumentException("Filename is null");
+        }
+        int previewRows = Math.max(1, Math.min(rows, maxPreviewRows));
+
+        ImportPreview preview = new ImportPreview();
+        preview.setFileName(originalFilename);
+        preview.setTableName(NameUtils.fileTableName(originalFilename));
+        preview.setFileSize(Files.size(file));
+        preview.setAlreadyImported(uploadedTableRepository.findByDisplayName(originalFilename) != null);
+        preview.setPreviewRows(previewRows);
+
+        if (CsvImportService.isCsvFile(originalFilename)) {
+            preview.getSheets().add(previewCsv(file, originalFilename, preview.getTableName(), previewRows));
+            return preview;
+        }
+
+        try (XlsxStreamingReader reader = XlsxStreamingReader.openForPreview(file.toFile())) {
+            for (XlsxStreamingReader.SheetRef sheet : reader.getSheets()) {
+                preview.getSheets().add(previewSheet(reader, sheet, preview.getTableName(), previewRows));
+            }
+        }
+        return preview;
+    }
+
+    private SheetPreview previewSheet(XlsxStreamingReader reader, XlsxStreamingReader.SheetRef sheet,
+                                      String fileTableName, int previewRows) throws IOException {
+        SheetPreview result = new SheetPreview();
+        result.setSheetName(sheet.getName());
+        result.setTableName(NameUtils.sheetTableName(fileTableName, sheet.getName(), sheet.getIndex()));
+        result.setUncompressedSize(reader.getUncompressedSize(sheet));
+        result.setCompressedSize(reader.getCompressedSize(sheet));
+
+        SamplingHandler handler = new SamplingHandler(previewRows);
+        long bytesRead = reader.readSheetPrefix(sheet, previewRows + 1, handler);
+        // Как и при импорте: лист без заголовка в первой строке пропускается
+        if (handler.originalNames == null) {
+            return result;
+        }
+        fillSample(result, handler);
+
+        if (bytesRead < 0) {
+            result.setEstimatedRows(handler.dataRows);
+            result.setRowEstimate(SheetPreview.RowEstimate.EXACT);
+            return result;
+        }
+
+        // Некоторые генераторы пишут dimension "A1" - такой dimension меньше уже прочитанного
+        int dimensionRows = reader.estimateRowCount(sheet);
+        if (dimensionRows > handler.dataRows + 1) {
+            result.setEstimatedRows(dimensionRows - 1);
+            result.setRowEstimate(SheetPreview.RowEstimate.DIMENSION);
+        } else {
+            estimateBySize(result, handler.dataRows + 1, bytesRead, result.getUncompressedSize());
+        }
+        return result;
+    }
+
+    private SheetPreview previewCsv(Path file, String originalFilename, String tableName, int previewRows)
+            throws IOException {
+        SheetPreview result = new SheetPreview();
+        result.setSheetName(originalFilename);
+        result.setTableName(tableName);
+        result.setUncompressedSize(Files.size(file));
+
+        Charset charset = CsvTokenizer.detectCharset(file);
+        boolean quoting = !CsvImportService.isTsvFile(originalFilename);
+        char delimiter = quoting ? CsvTokenizer.detectDelimiter(file, charset) : '\t';
+
+        SamplingHandler handler = new SamplingHandler(previewRows);
+        boolean complete = false;
+        long bytesRead;
+        try (CsvTokenizer tokenizer = CsvTokenizer.open(file, charset, delimiter, quoting)) {
+            int rowIndex = 0;
+            while (rowIndex <= previewRows) {
+                List<String> record = tokenizer.nextRecord();
+                if (record == null) {
+                    complete = true;
+                    break;
+                }
+                handler.onRow(rowIndex++, new ArrayList<>(record));
+            }
+            bytesRead = tokenizer.getBytesRead();
+        }
+        if (handler.originalNames == null) {
+            return result;
+        }
+        fillSample(result, handler);
+
+        if (complete) {
+            result.setEstimatedRows(handler.dataRows);
+            result.setRowEstimate(SheetPreview.RowEstimate.EXACT);
+        } else {
+            estimateBySize(result, handler.dataRows + 1, bytesRead, result.getUncompressedSize());
+        }
+        return result;
+    }
+
+    private void fillSample(SheetPreview result, SamplingHandler handler) {
+        List<String> sqlNames = NameUtils.generateColumnNames(handler.originalNames);
+        List<ColumnType> types = handler.inferrer.resolveAll();
+        for (int i = 0; i < sqlNames.size(); i++) {
+            result.getColumns().add(new ColumnPreview(handler.originalNames.get(i), sqlNames.get(i), types.get(i)));
+        }
+        result.setSampleRows(handler.rows);
+    }
+
+    /**
+     * Экстраполяция по доле прочитанных байт (строки в начале листа не длиннее остальных)
+     */
+    private void estimateBySize(SheetPreview result, int rowsRead, long bytesRead, long totalBytes) {
+        if (bytesRead <= 0 || totalBytes <= 0) {
+            return;
+        }
+        long rows = Math.round((double) rowsRead * totalBytes / bytesRead);
+        result.setEstimatedRows(Math.max(0, rows - 1));
+        result.setRowEstimate(SheetPreview.RowEstimate.EXTRAPOLATED);
+    }
+
+    /**
+     * Заголовок, первые строки данных и типы по ним
+     */
+    private static class SamplingHandler implements XlsxStreamingReader.RowHandler {
+        private final int maxRows;
+        private final List<List<Object>> rows = new ArrayList<>();
+        private List<String> originalNames;
+        private TypeInferrer inferrer;
+        private int dataRows;
+        private boolean skipped;
+
+        SamplingHandler(int maxRows) {
+            this.maxRows = maxRows;
+        }
+
+        @Override
+        public void onRow(int rowIndex, List<Object> values) {
+            if (skipped) {
+                return;
+            }
+            if (originalNames == null) {
+                if (rowIndex != 0 || values.isEmpty()) {
+                    skipped = true;
+                    return;
+                }
+                originalNames = NameUtils.headerNames(values);
+                inferrer = new TypeInferrer(originalNames.size());
+                return;
+            }
+
+            dataRows++;
+            if (rows.size() >= maxRows) {
+                return;
+            }
+            List<Object> row = new ArrayList<>(originalNames.size());
+            for (int i = 0; i < originalNames.size(); i++) {
+                Object value = i < values.size() ? values.get(i) : null;
+                row.add(value instanceof Date ? ValueConverter.toText(value) : value);
+            }
+            inferrer.accept(values);
+            rows.add(row);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package org.tablebuilder.demo.service;
+
+import org.postgresql.util.PSQLException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.*;
+
+/**
+ * Выполнение INSERT для способов записи через обычные запросы: multi-value INSERT одной
+ * JDBC-пачкой и поиск ошибочных строк делением пополам под savepoint
+ */
+@Component
+public class InsertStatementExecutor {
+
+    private static final int SQL_CACHE_SIZE = 64;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Текст multi-value INSERT по (таблица, колонки, строк в запросе)
+    private final Map<String, String> multiValueSqlCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > SQL_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Вставка пачки с поиском ошибочных строк делением пополам. Каждая попытка - под savepoint:
+     * ошибка откатывает только ее, а не всю транзакцию. Одна плохая строка из N стоит
+     * O(log N) запросов вместо N
+     *
+     * @param rowsPerStatement строк в одном INSERT (1 - классическая JDBC-пачка)
+     * @return сколько строк вставлено
+     */
+    public int insertIsolatingErrors(BulkLoad load, List<Map<String, Object>> batch, int startIndex,
+                                     int rowsPerStatement, List<BatchInsertService.InsertError> errors) {
+        Integer inserted = jdbcTemplate.execute((ConnectionCallback<Integer>) con ->
+                insertRange(con, load, batch, 0, batch.size(), startIndex, rowsPerStatement, errors));
+        return inserted != null ? inserted : 0;
+    }
+
+    /**
+     * Вставка по одной строке без JDBC-пачек (для драйверов без batch updates)
+     */
+    public int insertRowByRow(BulkLoad load, List<Map<String, Object>> batch, int startIndex,
+                              List<BatchInsertService.InsertError> errors) {
+        Integer inserted = jdbcTemplate.execute((ConnectionCallback<Integer>) con -> {
+            int count = 0;
+            String sql = multiValueInsertSql(load.getTableName(), load.getSqlColumns(), 1);
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                for (int r = 0; r < batch.size(); r++) {
+                    Savepoint savepoint = con.getAutoCommit() ? null : con.setSavepoint();
+                    try {
+                        new MultiValueBatchPreparedStatementSetter(load.getColumns(), batch.subList(r, r + 1), 1)
+                                .setValues(ps, 0);
+                        count += ps.executeUpdate();
+                        if (savepoint != null) {
+                            con.releaseSavepoint(savepoint);
+                        }
+                    } catch (SQLException e) {
+                        if (savepoint != null) {
+                            con.rollback(savepoint);
+                        }
+                        errors.add(describeFailure(con, load, batch.get(r), startIndex + r, e));
+                    }
+                }
+            }
+            return count;
+        });
+        return inserted != null ? inserted : 0;
+    }
+
+    private int insertRange(Connection con, BulkLoad load, List<Map<String, Object>> batch,
+                            int from, int to, int startIndex, int rowsPerStatement,
+                            List<BatchInsertService.InsertError> errors) throws SQLException {
+        Savepoint savepoint = con.getAutoCommit() ? null : con.setSavepoint();
+        try {
+            int inserted = executeRange(con, load, batch.subList(from, to), rowsPerStatement);
+            if (savepoint != null) {
+                con.releaseSavepoint(savepoint);
+            }
+            return inserted;
+        } catch (SQLException e) {
+            if (savepoint != null) {
+                con.rollback(savepoint);
+            }
+            if (to - from == 1) {
+                errors.add(describeFailure(con, load, batch.get(from), startIndex + from, e));
+                return 0;
+            }
+            if (from == 0 && to == batch.size()) {
+                System.err.println("Batch failed, isolating bad rows: " + rootCause(e).getMessage());
+            }
+            int middle = (from + to) >>> 1;
+            return insertRange(con, load, batch, from, middle, startIndex, rowsPerStatement, errors)
+                    + insertRange(con, load, batch, middle, to, startIndex, rowsPerStatement, errors);
+        }
+    }
+
+    /**
+     * Строки диапазона: полные INSERT по rowsPerStatement строк одной JDBC-пачкой, остаток - отдельным INSERT
+     */
+    private int executeRange(Connection con, BulkLoad load, List<Map<String, Object>> rows,
+                             int rowsPerStatement) throws SQLException {
+        String tableName = load.getTableName();
+        List<String> columns = load.getColumns();
+        int inserted = 0;
+        int fullRows = rows.size() / rowsPerStatement * rowsPerStatement;
+        if (fullRows > 0) {
+            MultiValueBatchPreparedStatementSetter setter =
+                    new MultiValueBatchPreparedStatementSetter(columns, rows.subList(0, fullRows), rowsPerStatement);
+            try (PreparedStatement ps = con.prepareStatement(
+                    multiValueInsertSql(tableName, load.getSqlColumns(), rowsPerStatement))) {
+                if (setter.getBatchSize() == 1) {
+                    setter.setValues(ps, 0);
+                    inserted += ps.executeUpdate();
+                } else {
+                    for (int i = 0; i < setter.getBatchSize(); i++) {
+                        setter.setValues(ps, i);
+                        ps.addBatch();
+                    }
+                    inserted += Arrays.stream(ps.executeBatch()).filter(count -> count > 0).sum();
+                }
+            }
+        }
+        if (fullRows < rows.size()) {
+            List<Map<String, Object>> tail = rows.subList(fullRows, rows.size());
+            try (PreparedStatement ps = con.prepareStatement(
+                    multiValueInsertSql(tableName, load.getSqlColumns(), tail.size()))) {
+                new MultiValueBatchPreparedStatementSetter(columns, tail, tail.size()).setValues(ps, 0);
+                inserted += ps.executeUpdate();
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Ошибка одной строки: колонка - из ответа сервера, а если сервер ее не назвал -
+     * пробной вставкой значений по одному (под savepoint, с откатом)
+     */
+    private BatchInsertService.InsertError describeFailure(Connection con, BulkLoad load, Map<String, Object> row,
+                                                           int rowIndex, SQLException e) throws SQLException {
+        SQLException cause = rootCause(e);
+        String column = null;
+        if (cause instanceof PSQLException psql && psql.getServerErrorMessage() != null) {
+            String serverColumn = psql.getServerErrorMessage().getColumn();
+            for (int c = 0; c < load.getColumnCount() && serverColumn != null; c++) {
+                if (load.getColumns().get(c).equals(serverColumn)
+                        || load.getSqlColumns().get(c).equals("\"" + serverColumn + "\"")) {
+                    column = load.getColumns().get(c);
+                    break;
+                }
+            }
+        }
+        if (column == null && !con.getAutoCommit()) {
+            column = probeFailingColumn(con, load, row);
+        }
+        System.err.printf("Failed to insert row %d%s: %s%n", rowIndex,
+                column != null ? " (column " + column + ")" : "", cause.getMessage());
+        return new BatchInsertService.InsertError(rowIndex, cause.getMessage(), row, column,
+                column != null ? row.get(column) : null);
+    }
+
+    private String probeFailingColumn(Connection con, BulkLoad load, Map<String, Object> row) throws SQLException {
+        for (int c = 0; c < load.getColumnCount(); c++) {
+            String column = load.getColumns().get(c);
+            Object value = row.get(column);
+            if (value == null) {
+                continue;
+            }
+            Savepoint savepoint = con.setSavepoint();
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO " + load.getTableName() + " (" + load.getSqlColumns().get(c) + ") VALUES (?)")) {
+                ps.setObject(1, value);
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                return column;
+            } finally {
+                con.rollback(savepoint);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ошибка JDBC-пачки содержит причину в getNextException
+     */
+    private static SQLException rootCause(SQLException e) {
+        SQLException cause = e;
+        while (cause.getNextException() != null) {
+            cause = cause.getNextException();
+        }
+        return cause;
+    }
+
+    /**
+     * Текст multi-value INSERT из кэша: для загрузки нужны только формы полного и последнего INSERT,
+     * а одинаковый текст позволяет драйверу переиспользовать подготовленный на сервере запрос
+     */
+    private String multiValueInsertSql(String tableName, List<String> sqlColumns, int rowCount) {
+        String key = tableName + "|" + String.join(",", sqlColumns) + "|" + rowCount;
+        synchronized (multiValueSqlCache) {
+            return multiValueSqlCache.computeIfAbsent(key, k -> buildMultiValueInsertSQL(tableName, sqlColumns, rowCount));
+        }
+    }
+
+    /**
+     * Multi-value INSERT SQL: INSERT INTO table (col1, col2) VALUES (?, ?), (?, ?), ...
+     */
+    private String buildMultiValueInsertSQL(String tableName, List<String> sqlColumns, int rowCount) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ");
+        sql.append(tableName).append(" (");
+        sql.append(String.join(", ", sqlColumns));
+        sql.append(") VALUES ");
+
+        // Создаем placeholders для всех строк: (?, ?, ?), (?, ?, ?), ...
+        String rowPlaceholder = "(" + "?, ".repeat(sqlColumns.size() - 1) + "?)";
+        sql.append(String.join(", ", Collections.nCopies(rowCount, rowPlaceholder)));
+
+        return sql.toString();
+    }
+
+    /**
+     * BatchPreparedStatementSetter для multi-value INSERT: каждый элемент JDBC-пачки -
+     * один INSERT на rowsPerStatement строк (размер пачки кратен rowsPerStatement)
+     */
+    private static class MultiValueBatchPreparedStatementSetter implements BatchPreparedStatementSetter {
+        private final List<String> columns;
+        private final List<Map<String, Object>> batch;
+        private final int rowsPerStatement;
+
+        public MultiValueBatchPreparedStatementSetter(List<String> columns, List<Map<String, Object>> batch,
+                                                      int rowsPerStatement) {
+            this.columns = columns;
+            this.batch = batch;
+            this.rowsPerStatement = rowsPerStatement;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps, int statementIndex) throws SQLException {
+            int firstRow = statementIndex * rowsPerStatement;
+            int parameter = 1;
+            for (int r = firstRow; r < firstRow + rowsPerStatement; r++) {
+                Map<String, Object> row = batch.get(r);
+                for (String column : columns) {
+                    ps.setObject(parameter++, row.get(column));
+                }
+            }
+        }
+
+        @Override
+        public int getBatchSize() {
+            return batch.size() / rowsPerStatement;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.tablebuilder.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Классический batch insert: INSERT на одну строку, строки - одной JDBC-пачкой
+ */
+@Component
+@Order(3)
+public class JdbcBatchBulkWriter implements BulkWriter {
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    @Autowired
+    private InsertStatementExecutor executor;
+
+    @Autowired
+    private DatabaseCapabilities capabilities;
+
+    @Override
+    public String getName() {
+        return "batch";
+    }
+
+    @Override
+    public boolean supports(BulkLoad load) {
+        return capabilities.isBatchUpdatesSupported() && load.getColumnCount() <= capabilities.getMaxBindParameters();
+    }
+
+    @Override
+    public int getDefaultBatchSize() {
+        return DEFAULT_BATCH_SIZE;
+    }
+
+    @Override
+    public int write(BulkLoad load, List<Map<String, Object>> rows, int startIndex,
+                     List<BatchInsertService.InsertError> errors) {
+        return executor.insertIsolatingErrors(load, rows, startIndex, 1, errors);
+    }
+}
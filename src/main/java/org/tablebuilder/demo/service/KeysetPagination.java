@@ -0,0 +1,254 @@
+package org.tablebuilder.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.tablebuilder.demo.model.SortRequest;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Постраничное чтение по ключу (keyset): следующая страница начинается сразу после последней строки
+ * предыдущей - условием на колонки сортировки и id, а не пропуском OFFSET строк, поэтому время
+ * запроса не растет с номером страницы. Курсор - непрозрачная строка (Base64 JSON) с порядком
+ * сортировки и значениями ключа последней строки
+ */
+@Component
+public class KeysetPagination {
+
+    private static final String ID_COLUMN = "id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Порядок строк: колонки сортировки (проверяются по таблице) и id последним, чтобы порядок был полным
+     *
+     * @param sorts сортировка по SQL-именам колонок (может быть пустой)
+     */
+    public Order order(String tableName, List<SortRequest> sorts) {
+        Map<String, Key> columns = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT a.attname, format_type(a.atttypid, a.atttypmod), a.attnotnull FROM pg_attribute a " +
+                        "WHERE a.attrelid = CAST(? AS regclass) AND a.attnum > 0 AND NOT a.attisdropped",
+                rs -> {
+                    String name = rs.getString(1);
+                    columns.put(name.toLowerCase(), new Key(name, rs.getString(2), !rs.getBoolean(3), true));
+                },
+                tableName);
+
+        List<Key> keys = new ArrayList<>();
+        Set<String> used = new HashSet<>();
+        for (SortRequest sort : sorts != null ? sorts : List.<SortRequest>of()) {
+            Key column = sort.getColumn() != null ? columns.get(sort.getColumn().toLowerCase()) : null;
+            if (column == null) {
+                throw new IllegalArgumentException("Sort column '" + sort.getColumn() + "' not found in table");
+            }
+            if (used.add(column.column)) {
+                keys.add(new Key(column.column, column.type, column.nullable, "ASC".equalsIgnoreCase(sort.getDirection())));
+            }
+        }
+        Key id = columns.get(ID_COLUMN);
+        if (id == null) {
+            throw new IllegalStateException("Table " + tableName + " has no id column");
+        }
+        if (used.add(id.column)) {
+            keys.add(id);
+        }
+        return new Order(keys);
+    }
+
+    /**
+     * Курсор на строку: следующая страница начнется после нее
+     *
+     * @param row значение колонки строки по имени
+     */
+    public String cursorAfter(Order order, Function<String, Object> row) {
+        List<String> values = new ArrayList<>(order.keys.size());
+        for (Key key : order.keys) {
+            Object value = row.apply(key.column);
+            // Значение в текстовом виде: в запросе оно приводится обратно к типу колонки
+            values.add(value != null ? value.toString() : null);
+        }
+        Map<String, Object> cursor = new LinkedHashMap<>();
+        cursor.put("order", order.signature());
+        cursor.put("key", values);
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(cursor));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode cursor", e);
+        }
+    }
+
+    /**
+     * Условие "строка после курсора" для WHERE. При одинаковом направлении сортировки и колонках
+     * без NULL - сравнение кортежей (c1, c2, id) > (?, ?, ?), иначе цепочка
+     * c1 > ? OR (c1 = ? AND c2 < ?) OR ... NULL считается больше любого значения, как в ORDER BY
+     * PostgreSQL по умолчанию (ASC - NULLS LAST, DESC - NULLS FIRST)
+     *
+     * @param bind регистрирует значение параметра и возвращает его место в SQL
+     */
+    public void appendSeekCondition(StringBuilder sql, Order order, String cursor, Function<Object, String> bind) {
+        List<String> values = decode(order, cursor);
+        List<Key> keys = order.keys;
+
+        boolean uniform = true;
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            uniform &= !key.nullable && values.get(i) != null && key.ascending == keys.get(0).ascending;
+        }
+        if (uniform) {
+            List<String> parameters = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                parameters.add(keys.get(i).cast(bind.apply(values.get(i))));
+            }
+            sql.append("(").append(keys.stream().map(Key::sqlColumn).collect(Collectors.joining(", ")))
+                    .append(keys.get(0).ascending ? ") > (" : ") < (")
+                    .append(String.join(", ", parameters)).append(")");
+            return;
+        }
+
+        List<String> terms = new ArrayList<>();
+        for (int k = 0; k < keys.size(); k++) {
+            // NULL - самое большое: после него по ASC ничего нет
+            if (keys.get(k).ascending && values.get(k) == null) {
+                continue;
+            }
+            // Параметры регистрируются в порядке текста запроса (для позиционных "?")
+            List<String> parts = new ArrayList<>();
+            for (int i = 0; i < k; i++) {
+                parts.add(equal(keys.get(i), values.get(i), bind));
+            }
+            parts.add(after(keys.get(k), values.get(k), bind));
+            terms.add(parts.size() == 1 ? parts.get(0) : "(" + String.join(" AND ", parts) + ")");
+        }
+        sql.append(terms.isEmpty() ? "FALSE" : "(" + String.join(" OR ", terms) + ")");
+    }
+
+    /**
+     * Позиционные параметры: значение добавляется в список, место - "?"
+     */
+    public static Function<Object, String> positional(List<Object> params) {
+        return value -> {
+            params.add(value);
+            return "?";
+        };
+    }
+
+    /**
+     * Именованные параметры: cursor_0, cursor_1, ...
+     */
+    public static Function<Object, String> named(MapSqlParameterSource params) {
+        return value -> {
+            String name = "cursor_" + params.getParameterNames().length;
+            params.addValue(name, value);
+            return ":" + name;
+        };
+    }
+
+    /**
+     * Строго после значения в порядке сортировки (кроме NULL по ASC - после него строк нет)
+     */
+    private String after(Key key, String value, Function<Object, String> bind) {
+        String column = key.sqlColumn();
+        if (value == null) {
+            // По DESC после NULL идут все значения
+            return column + " IS NOT NULL";
+        }
+        String parameter = key.cast(bind.apply(value));
+        if (!key.ascending) {
+            return column + " < " + parameter;
+        }
+        return key.nullable
+                ? "(" + column + " > " + parameter + " OR " + column + " IS NULL)"
+                : column + " > " + parameter;
+    }
+
+    private String equal(Key key, String value, Function<Object, String> bind) {
+        return value == null
+                ? key.sqlColumn() + " IS NULL"
+                : key.sqlColumn() + " = " + key.cast(bind.apply(value));
+    }
+
+    private List<String> decode(Order order, String cursor) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(Base64.getUrlDecoder().decode(cursor));
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (node == null || !order.signature().equals(node.path("order").asText())
+                || node.path("key").size() != order.keys.size()) {
+            throw new IllegalArgumentException("Cursor does not match the sort order of the request");
+        }
+        List<String> values = new ArrayList<>();
+        for (JsonNode value : node.path("key")) {
+            values.add(value.isNull() ? null : value.asText());
+        }
+        return values;
+    }
+
+    /**
+     * Полный порядок строк страницы
+     */
+    public static class Order {
+        private final List<Key> keys;
+
+        Order(List<Key> keys) {
+            this.keys = keys;
+        }
+
+        /**
+         * Текст для ORDER BY
+         */
+        public String getOrderBy() {
+            return keys.stream()
+                    .map(key -> key.sqlColumn() + (key.ascending ? " ASC" : " DESC"))
+                    .collect(Collectors.joining(", "));
+        }
+
+        /**
+         * Имена колонок ключа (значения нужны для курсора)
+         */
+        public List<String> getColumns() {
+            return keys.stream().map(key -> key.column).collect(Collectors.toList());
+        }
+
+        String signature() {
+            return keys.stream()
+                    .map(key -> key.column + (key.ascending ? " ASC" : " DESC"))
+                    .collect(Collectors.joining(","));
+        }
+    }
+
+    private static class Key {
+        private final String column;
+        private final String type;
+        private final boolean nullable;
+        private final boolean ascending;
+
+        Key(String column, String type, boolean nullable, boolean ascending) {
+            this.column = column;
+            this.type = type;
+            this.nullable = nullable;
+            this.ascending = ascending;
+        }
+
+        String sqlColumn() {
+            return "\"" + column.replace("\"", "\"\"") + "\"";
+        }
+
+        String cast(String parameter) {
+            return "CAST(" + parameter + " AS " + type + ")";
+        }
+    }
+}
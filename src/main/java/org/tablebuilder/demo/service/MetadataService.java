@@ -1,6 +1,5 @@
 package org.tablebuilder.demo.service;
 
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.tablebuilder.demo.model.FileInfo;
 import org.tablebuilder.demo.model.SheetInfo;
 import org.tablebuilder.demo.store.*;
@@ -13,8 +12,6 @@ import java.util.stream.Collectors;
 
 @Service
 public class MetadataService {
-    @Autowired
-    private JdbcTemplate jdbcTemplate;
     @Autowired
     private UploadedTableRepository uploadedTableRepository;
 
@@ -24,6 +21,9 @@ public class MetadataService {
     @Autowired
     private TableListRepository tableListRepository;
 
+    @Autowired
+    private RowCountService rowCountService;
+
     /**
      * Сохраняем метаданные таблицы
      *
@@ -85,13 +85,19 @@ public class MetadataService {
 
     }
 
-    public void saveTableList(UploadedTable savedTable, String tableName,String originalListName) {
+    public TableList saveTableList(UploadedTable savedTable, String tableName,String originalListName) {
+        return saveTableList(savedTable, tableName, originalListName, null, null);
+    }
+
+    public TableList saveTableList(UploadedTable savedTable, String tableName, String originalListName,
+                                   String contentHash, Integer rowsImported) {
         TableList tableList = new TableList();
         tableList.setListName(tableName);
         tableList.setTable(savedTable);
         tableList.setOriginalListName(originalListName);
-        tableListRepository.save(tableList);
-
+        tableList.setContentHash(contentHash);
+        tableList.setRowsImported(rowsImported);
+        return tableListRepository.save(tableList);
     }
 
     /**
@@ -122,9 +128,7 @@ public class MetadataService {
             Long totalRows = 0L;
             for (TableList tableList : tableLists) {
                 try {
-                    Long rowCount = jdbcTemplate.queryForObject(
-                            "SELECT COUNT(*) FROM " + tableList.getListName(), Long.class);
-                    totalRows += rowCount != null ? rowCount : 0;
+                    totalRows += rowCountService.getRowCount(tableList.getListName());
                 } catch (Exception e) {
 //                    log.warn("Error counting rows for table {}: {}", tableList.getListName(), e.getMessage());
                 }
@@ -224,8 +228,7 @@ public class MetadataService {
             // Получаем количество строк
             Long rowCount = 0L;
             try {
-                rowCount = jdbcTemplate.queryForObject(
-                        "SELECT COUNT(*) FROM " + tableList.getListName(), Long.class);
+                rowCount = rowCountService.getRowCount(tableList.getListName());
             } catch (Exception e) {
                 System.out.println(e.getMessage());
             }
@@ -0,0 +1,81 @@
+package org.tablebuilder.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Multi-value INSERT (один запрос с множеством VALUES), несколько таких запросов - одной JDBC-пачкой
+ */
+@Component
+@Order(2)
+public class MultiValueBulkWriter implements BulkWriter {
+
+    private static final int DEFAULT_BATCH_SIZE = 5000;
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+    private static final int PAYLOAD_SAMPLE_ROWS = 100;
+    private static final int FIXED_VALUE_BYTES = 16;
+
+    @Autowired
+    private InsertStatementExecutor executor;
+
+    @Autowired
+    private DatabaseCapabilities capabilities;
+
+    // Предел объема значений в одном multi-value INSERT
+    @Value("${app.insert.max-statement-bytes:4MB}")
+    private DataSize maxStatementBytes;
+
+    @Override
+    public String getName() {
+        return "multi-value";
+    }
+
+    @Override
+    public boolean supports(BulkLoad load) {
+        // Одна строка - обычный INSERT; строка шире лимита параметров не влезет и в один VALUES
+        return capabilities.isMultiValueInsertSupported() && load.getRowCount() > 1
+                && load.getColumnCount() <= capabilities.getMaxBindParameters();
+    }
+
+    @Override
+    public int getDefaultBatchSize() {
+        return DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Строк в одном multi-value INSERT: rows x columns параметров не больше лимита драйвера,
+     * текст значений - не больше max-statement-bytes (оценка по первым строкам загрузки)
+     */
+    @Override
+    public int rowsPerStatement(BulkLoad load) {
+        if (load.getRowsPerStatement() == null) {
+            int byParameters = capabilities.getMaxBindParameters() / Math.max(1, load.getColumnCount());
+
+            long sampleBytes = 0;
+            int sampleRows = Math.min(load.getRowCount(), PAYLOAD_SAMPLE_ROWS);
+            for (int r = 0; r < sampleRows; r++) {
+                for (String column : load.getColumns()) {
+                    Object value = load.getRows().get(r).get(column);
+                    sampleBytes += value instanceof String text ? text.length() * 2L : FIXED_VALUE_BYTES;
+                }
+            }
+            long rowBytes = Math.max(1, sampleBytes / Math.max(1, sampleRows));
+            long byPayload = maxStatementBytes.toBytes() / rowBytes;
+
+            load.setRowsPerStatement((int) Math.max(1, Math.min(MAX_ROWS_PER_STATEMENT, Math.min(byParameters, byPayload))));
+        }
+        return load.getRowsPerStatement();
+    }
+
+    @Override
+    public int write(BulkLoad load, List<Map<String, Object>> rows, int startIndex,
+                     List<BatchInsertService.InsertError> errors) {
+        return executor.insertIsolatingErrors(load, rows, startIndex, rowsPerStatement(load), errors);
+    }
+}
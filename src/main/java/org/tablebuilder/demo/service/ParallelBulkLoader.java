@@ -0,0 +1,375 @@
+package org.tablebuilder.demo.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.tablebuilder.demo.model.ParallelLoadStats;
+import org.tablebuilder.demo.model.WorkerLoadStats;
+import org.tablebuilder.demo.utils.ColumnarChunk;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Параллельная загрузка одной большой таблицы по нескольким соединениям.
+ * Парсер отдает заполненные колоночные пачки, а пишут их worker-потоки - каждую в своей короткой
+ * транзакции. id строк пачки заранее выделяются из sequence таблицы, поэтому порядок строк источника
+ * сохраняется, какое бы соединение ни записало пачку первым.
+ * Таблица должна быть закоммичена до начала загрузки, чтобы ее видели другие соединения: это
+ * промежуточная UNLOGGED-таблица, из которой строки переносятся одним запросом в транзакции листа
+ */
+@Service
+public class ParallelBulkLoader {
+
+    private static final int RECENT_LOADS = 20;
+    // Метка конца работы для worker-потока
+    private static final ColumnarChunk STOP = new ColumnarChunk(List.of(), List.of(), 0);
+    // Как часто ожидание очереди проверяет, живы ли worker-потоки
+    private static final long POLL_MILLIS = 200;
+
+    @Autowired
+    private BatchInsertService batchInsertService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.import.parallel-load.enabled:false}")
+    private boolean enabled;
+
+    // С какого числа строк листа загрузка идет по нескольким соединениям
+    @Value("${app.import.parallel-load.min-rows:200000}")
+    private long minRows;
+
+    // Предел соединений на одну таблицу
+    @Value("${app.import.parallel-load.workers:4}")
+    private int workersPerTable;
+
+    // Предел соединений на все параллельные загрузки сразу (остальные грузятся обычным путем)
+    @Value("${app.import.parallel-load.max-connections:16}")
+    private int maxConnections;
+
+    private Semaphore connections;
+    private final Deque<Session> recentLoads = new ArrayDeque<>();
+
+    private final ExecutorService workerExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("bulk-load-", 0).factory());
+
+    @PostConstruct
+    void init() {
+        connections = new Semaphore(Math.max(0, maxConnections));
+    }
+
+    /**
+     * Стоит ли грузить таблицу с таким числом строк параллельно
+     */
+    public boolean isEnabledFor(long estimatedRows) {
+        return enabled && workersPerTable > 1 && estimatedRows >= minRows;
+    }
+
+    /**
+     * Начать параллельную загрузку в таблицу с id BIGSERIAL
+     *
+     * @param chunk    пачка, которую заполняет парсер; по ее колонкам и емкости создаются остальные
+     * @param tracker  ход загрузки по пачкам (может быть null)
+     * @param callback вызывается из worker-потоков после каждой записанной пачки
+     * @return null - если свободных соединений меньше двух или у таблицы нет sequence (грузить обычным путем)
+     */
+    public Session open(String tableName, ColumnarChunk chunk, BulkLoadMonitor.Tracker tracker,
+                        BatchInsertService.ProgressCallback callback) {
+        int workers = 0;
+        while (workers < workersPerTable && connections.tryAcquire()) {
+            workers++;
+        }
+        if (workers < 2) {
+            connections.release(workers);
+            System.out.println("No free connections for parallel load of " + tableName + ", loading serially");
+            return null;
+        }
+
+        String sequence = jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence(?, 'id')", String.class, tableName);
+        if (sequence == null) {
+            connections.release(workers);
+            return null;
+        }
+
+        Session session = new Session(tableName, sequence, workers, chunk, tracker, callback);
+        synchronized (recentLoads) {
+            recentLoads.addFirst(session);
+            while (recentLoads.size() > RECENT_LOADS) {
+                recentLoads.removeLast();
+            }
+        }
+        System.out.println("Parallel load of " + tableName + " over " + workers + " connections");
+        return session;
+    }
+
+    /**
+     * Текущие и последние параллельные загрузки со скоростью по соединениям
+     */
+    public List<ParallelLoadStats> getStats() {
+        synchronized (recentLoads) {
+            return recentLoads.stream().map(Session::toStats).toList();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workerExecutor.shutdownNow();
+    }
+
+    /**
+     * Загрузка одной таблицы. Пачки передаются через submit(), в конце - finish() или abort()
+     */
+    public class Session {
+        private final String tableName;
+        private final String sequence;
+        private final int workers;
+        private final BulkLoadMonitor.Tracker tracker;
+        private final BatchInsertService.ProgressCallback callback;
+        private final BlockingQueue<ColumnarChunk> work;
+        private final BlockingQueue<ColumnarChunk> free;
+        private final List<Future<?>> futures = new ArrayList<>();
+        private final Worker[] workerStats;
+        private final Date startedAt = new Date();
+        private final long startNanos = System.nanoTime();
+
+        private volatile Throwable failure;
+        private volatile Date finishedAt;
+        private volatile long elapsedNanos;
+        private boolean closed;
+
+        private Session(String tableName, String sequence, int workers, ColumnarChunk chunk,
+                        BulkLoadMonitor.Tracker tracker, BatchInsertService.ProgressCallback callback) {
+            this.tableName = tableName;
+            this.sequence = sequence;
+            this.workers = workers;
+            this.tracker = tracker;
+            this.callback = callback;
+            this.work = new ArrayBlockingQueue<>(workers);
+            // Пачек вдвое больше соединений: пока одни пишутся, парсер заполняет следующие
+            this.free = new ArrayBlockingQueue<>(workers * 2);
+            for (int i = 1; i < workers * 2; i++) {
+                free.add(new ColumnarChunk(chunk.getColumns(), chunk.getTypes(), chunk.getCapacity()));
+            }
+
+            this.workerStats = new Worker[workers];
+            for (int i = 0; i < workers; i++) {
+                Worker worker = new Worker(i);
+                workerStats[i] = worker;
+                futures.add(workerExecutor.submit(worker::run));
+            }
+        }
+
+        /**
+         * Отдать заполненную пачку на запись
+         *
+         * @return пустая пачка для следующих строк (ждет, пока одно из соединений освободит пачку)
+         */
+        public ColumnarChunk submit(ColumnarChunk chunk) {
+            checkFailure();
+            if (!chunk.isEmpty()) {
+                chunk.setFirstId(allocateIds(chunk.size()));
+            }
+            try {
+                // Ожидание с проверкой: если все worker-потоки остановились, очередь никто не разберет
+                while (!work.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    checkWorkers();
+                }
+                ColumnarChunk next;
+                while ((next = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    checkWorkers();
+                }
+                return next;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Parallel load of " + tableName + " interrupted", e);
+            }
+        }
+
+        /**
+         * Диапазон id из sequence таблицы одним запросом
+         *
+         * @return первый id диапазона
+         */
+        private long allocateIds(int count) {
+            Long last = jdbcTemplate.queryForObject("SELECT setval(?::regclass, nextval(?::regclass) + ? - 1)",
+                    Long.class, sequence, sequence, count);
+            return last - count + 1;
+        }
+
+        /**
+         * Дождаться записи всех пачек
+         *
+         * @return суммарный результат (без списка ошибок)
+         */
+        public BatchInsertService.BatchInsertResult finish() {
+            close();
+            checkFailure();
+            long inserted = 0;
+            long failed = 0;
+            for (Worker worker : workerStats) {
+                inserted += worker.rowsInserted.get();
+                failed += worker.rowsFailed.get();
+            }
+            System.out.printf("Parallel load of %s completed: %d rows over %d connections in %d ms%n",
+                    tableName, inserted, workers, elapsedNanos / 1_000_000);
+            return new BatchInsertService.BatchInsertResult((int) inserted, (int) failed, List.of());
+        }
+
+        /**
+         * Остановить загрузку после ошибки (уже записанные пачки остаются в таблице)
+         */
+        public void abort() {
+            if (failure == null) {
+                failure = new IllegalStateException("Parallel load of " + tableName + " aborted");
+            }
+            close();
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                for (int i = 0; i < workers && !allWorkersDone(); i++) {
+                    while (!work.offer(STOP, POLL_MILLIS, TimeUnit.MILLISECONDS) && !allWorkersDone()) {
+                        // ждем, пока worker-потоки разберут очередь
+                    }
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(future -> future.cancel(true));
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new IllegalStateException(e.getCause().getMessage(), e.getCause());
+                }
+            } finally {
+                elapsedNanos = System.nanoTime() - startNanos;
+                finishedAt = new Date();
+                connections.release(workers);
+            }
+        }
+
+        private void checkFailure() {
+            Throwable error = failure;
+            if (error != null) {
+                throw new IllegalStateException("Parallel load of " + tableName + " failed: " + error.getMessage(), error);
+            }
+        }
+
+        private void checkWorkers() {
+            checkFailure();
+            if (allWorkersDone()) {
+                Throwable cause = futures.stream()
+                        .filter(future -> future.state() == Future.State.FAILED)
+                        .map(Future::exceptionNow)
+                        .findFirst().orElse(null);
+                failure = new IllegalStateException("All connections of parallel load of " + tableName + " stopped"
+                        + (cause != null ? ": " + cause : ""), cause);
+                checkFailure();
+            }
+        }
+
+        private boolean allWorkersDone() {
+            return futures.stream().allMatch(Future::isDone);
+        }
+
+        private ParallelLoadStats toStats() {
+            ParallelLoadStats stats = new ParallelLoadStats();
+            stats.setTableName(tableName);
+            stats.setWorkers(workers);
+            stats.setStartedAt(startedAt);
+            stats.setFinishedAt(finishedAt);
+            stats.setFailed(failure != null);
+
+            long elapsed = finishedAt != null ? elapsedNanos : System.nanoTime() - startNanos;
+            long inserted = 0;
+            for (Worker worker : workerStats) {
+                WorkerLoadStats workerLoad = worker.toStats();
+                stats.getWorkerStats().add(workerLoad);
+                inserted += workerLoad.getRowsInserted();
+                stats.setRowsFailed(stats.getRowsFailed() + workerLoad.getRowsFailed());
+                stats.setChunks(stats.getChunks() + workerLoad.getChunks());
+            }
+            stats.setRowsInserted(inserted);
+            stats.setElapsedMs(elapsed / 1_000_000);
+            stats.setRowsPerSecond(elapsed > 0 ? Math.round(inserted * 1e9 / elapsed) : 0);
+            return stats;
+        }
+
+        /**
+         * Соединение загрузки: пишет пачки из очереди, каждую в своей транзакции
+         */
+        private class Worker {
+            private final int index;
+            private final AtomicLong rowsInserted = new AtomicLong();
+            private final AtomicLong rowsFailed = new AtomicLong();
+            private final AtomicLong chunks = new AtomicLong();
+            private final AtomicLong busyNanos = new AtomicLong();
+
+            Worker(int index) {
+                this.index = index;
+            }
+
+            void run() {
+                while (true) {
+                    ColumnarChunk chunk;
+                    try {
+                        chunk = work.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (chunk == STOP) {
+                        return;
+                    }
+                    try {
+                        // После ошибки пачки только возвращаются в пул, чтобы парсер не ждал вечно
+                        if (failure == null) {
+                            write(chunk);
+                        }
+                    } catch (Throwable e) {
+                        // Error тоже только запоминается: поток продолжает возвращать пачки в пул
+                        System.err.println("Parallel load of " + tableName + " failed on connection " + index
+                                + ": " + e.getMessage());
+                        failure = e;
+                    } finally {
+                        chunk.clear();
+                        free.add(chunk);
+                    }
+                }
+            }
+
+            private void write(ColumnarChunk chunk) {
+                long bytes = tracker != null ? chunk.estimateBytes() : 0;
+                long start = System.nanoTime();
+                // batchInsert транзакционный: без транзакции в этом потоке пачка коммитится сразу
+                BatchInsertService.BatchInsertResult result = batchInsertService.batchInsert(tableName, chunk);
+                busyNanos.addAndGet(System.nanoTime() - start);
+                chunks.incrementAndGet();
+                rowsInserted.addAndGet(result.getSuccessCount());
+                rowsFailed.addAndGet(result.getErrorCount());
+                if (tracker != null) {
+                    tracker.record(result.getSuccessCount(), result.getErrorCount(), bytes);
+                }
+                if (callback != null) {
+                    callback.onComplete(result);
+                }
+            }
+
+            WorkerLoadStats toStats() {
+                long busy = busyNanos.get();
+                long inserted = rowsInserted.get();
+                return new WorkerLoadStats(index, inserted, rowsFailed.get(), chunks.get(), busy / 1_000_000,
+                        busy > 0 ? Math.round(inserted * 1e9 / busy) : 0);
+            }
+        }
+    }
+}
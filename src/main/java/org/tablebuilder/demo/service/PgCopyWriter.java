@@ -0,0 +1,282 @@
+package org.tablebuilder.demo.service;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.stereotype.Component;
+import org.tablebuilder.demo.utils.ColumnType;
+import org.tablebuilder.demo.utils.ColumnarChunk;
+import org.tablebuilder.demo.utils.ValueConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Загрузка строк в PostgreSQL через COPY FROM STDIN в бинарном формате.
+ * Значения кодируются на клиенте по типу колонки, поэтому строка с неприводимым
+ * значением не ломает весь COPY, а попадает в список ошибок
+ */
+@Component
+public class PgCopyWriter {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final LocalDate PG_EPOCH = LocalDate.of(2000, 1, 1);
+    private static final long PG_EPOCH_DAY = PG_EPOCH.toEpochDay();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Map<ColumnType, FieldEncoder> ENCODERS = new EnumMap<>(ColumnType.class);
+
+    static {
+        ENCODERS.put(ColumnType.NUMBER, PgCopyWriter::writeNumeric);
+        ENCODERS.put(ColumnType.DATE, PgCopyWriter::writeDate);
+        ENCODERS.put(ColumnType.BOOLEAN, PgCopyWriter::writeBoolean);
+        ENCODERS.put(ColumnType.TEXT, PgCopyWriter::writeText);
+    }
+
+    /**
+     * COPY пачки строк одним потоком.
+     * Если соединение в транзакции, COPY выполняется под savepoint: при ошибке сервера
+     * откатывается только эта пачка, и вызывающий код может повторить ее обычным INSERT
+     *
+     * @param columns    имена колонок в строках
+     * @param sqlColumns экранированные имена колонок для SQL
+     * @param startIndex индекс первой строки пачки (для ошибок)
+     * @return количество записанных строк
+     */
+    public long copy(Connection con, String tableName, List<String> columns, List<String> sqlColumns,
+                     List<ColumnType> types, List<Map<String, Object>> rows, int startIndex,
+                     List<BatchInsertService.InsertError> errors) throws SQLException {
+        FieldEncoder[] encoders = new FieldEncoder[types.size()];
+        for (int i = 0; i < types.size(); i++) {
+            encoders[i] = ENCODERS.get(types.get(i));
+        }
+
+        return runCopy(con, tableName, sqlColumns, out -> {
+            ByteArrayOutputStream rowBytes = new ByteArrayOutputStream(256);
+            DataOutputStream row = new DataOutputStream(rowBytes);
+
+            for (int r = 0; r < rows.size(); r++) {
+                Map<String, Object> rowData = rows.get(r);
+                rowBytes.reset();
+                int c = 0;
+                try {
+                    row.writeShort(columns.size());
+                    for (; c < columns.size(); c++) {
+                        Object value = rowData.get(columns.get(c));
+                        if (ValueConverter.isEmpty(value)) {
+                            row.writeInt(-1); // NULL
+                        } else {
+                            encoders[c].write(row, value);
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    errors.add(new BatchInsertService.InsertError(startIndex + r, e.getMessage(), rowData,
+                            columns.get(c), rowData.get(columns.get(c))));
+                    continue;
+                }
+                rowBytes.writeTo(out);
+            }
+        });
+    }
+
+    /**
+     * COPY колоночной пачки. Значения уже приведены к типам колонок, поэтому пишутся
+     * прямо из примитивных массивов; строки словаря кодируются в UTF-8 один раз.
+     * Если id строк назначены заранее, первой колонкой пишется id
+     */
+    public long copy(Connection con, String tableName, List<String> sqlColumns, ColumnarChunk chunk) throws SQLException {
+        int columnCount = chunk.getColumns().size();
+        List<String> dictionary = chunk.getDictionary();
+        byte[][] textBytes = new byte[dictionary.size()][];
+        boolean withIds = chunk.hasIds();
+        List<String> copyColumns = sqlColumns;
+        if (withIds) {
+            copyColumns = new ArrayList<>(sqlColumns.size() + 1);
+            copyColumns.add("id");
+            copyColumns.addAll(sqlColumns);
+        }
+
+        return runCopy(con, tableName, copyColumns, out -> {
+            for (int r = 0; r < chunk.size(); r++) {
+                if (withIds) {
+                    out.writeShort(columnCount + 1);
+                    out.writeInt(8);
+                    out.writeLong(chunk.getId(r));
+                } else {
+                    out.writeShort(columnCount);
+                }
+                for (int c = 0; c < columnCount; c++) {
+                    if (chunk.isNull(r, c)) {
+                        out.writeInt(-1); // NULL
+                        continue;
+                    }
+                    switch (chunk.getType(c)) {
+                        case NUMBER -> writeDecimal(out, chunk.getDecimal(r, c));
+                        case DATE -> {
+                            out.writeInt(4);
+                            out.writeInt((int) (chunk.getEpochDay(r, c) - PG_EPOCH_DAY));
+                        }
+                        case BOOLEAN -> {
+                            out.writeInt(1);
+                            out.writeByte(chunk.getBoolean(r, c) ? 1 : 0);
+                        }
+                        default -> {
+                            int code = chunk.getTextCode(r, c);
+                            byte[] bytes = textBytes[code];
+                            if (bytes == null) {
+                                bytes = dictionary.get(code).getBytes(StandardCharsets.UTF_8);
+                                textBytes[code] = bytes;
+                            }
+                            out.writeInt(bytes.length);
+                            out.write(bytes);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Общая часть COPY: заголовок, данные, завершение и откат к savepoint при ошибке
+     */
+    private long runCopy(Connection con, String tableName, List<String> sqlColumns, CopyBody body) throws SQLException {
+        String sql = "COPY " + tableName + " (" + String.join(", ", sqlColumns) + ") FROM STDIN (FORMAT binary)";
+
+        Savepoint savepoint = con.getAutoCommit() ? null : con.setSavepoint();
+        PGCopyOutputStream copyStream = null;
+        try {
+            copyStream = new PGCopyOutputStream(con.unwrap(PGConnection.class), sql, BUFFER_SIZE);
+            DataOutputStream out = new DataOutputStream(copyStream);
+            out.write(SIGNATURE);
+            out.writeInt(0); // flags
+            out.writeInt(0); // длина расширения заголовка
+
+            body.write(out);
+
+            out.writeShort(-1); // конец данных
+            out.flush();
+            long copied = copyStream.endCopy();
+
+            if (savepoint != null) {
+                con.releaseSavepoint(savepoint);
+            }
+            return copied;
+
+        } catch (IOException | SQLException | RuntimeException e) {
+            if (copyStream != null && copyStream.isActive()) {
+                try {
+                    copyStream.cancelCopy();
+                } catch (SQLException ignored) {
+                    // соединение уже в ошибке
+                }
+            }
+            if (savepoint != null) {
+                con.rollback(savepoint);
+            }
+            if (e instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("COPY into " + tableName + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CopyBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // ========== ENCODERS ==========
+
+    /**
+     * Кодировщик значения одной колонки: длина поля + данные
+     */
+    @FunctionalInterface
+    private interface FieldEncoder {
+        void write(DataOutputStream out, Object value) throws IOException;
+    }
+
+    /**
+     * NUMERIC: ndigits, weight, sign, dscale и цифры по основанию 10000
+     */
+    private static void writeNumeric(DataOutputStream out, Object value) throws IOException {
+        writeDecimal(out, ValueConverter.toBigDecimal(value));
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal decimal) throws IOException {
+        int sign = decimal.signum() < 0 ? 0x4000 : 0x0000;
+        decimal = decimal.abs();
+        if (decimal.scale() < 0) {
+            decimal = decimal.setScale(0);
+        }
+        int dscale = decimal.scale();
+
+        String plain = decimal.toPlainString();
+        int dot = plain.indexOf('.');
+        String intPart = dot >= 0 ? plain.substring(0, dot) : plain;
+        String fracPart = dot >= 0 ? plain.substring(dot + 1) : "";
+
+        // Дополняем до групп по 4 цифры
+        intPart = "0".repeat((4 - intPart.length() % 4) % 4) + intPart;
+        fracPart = fracPart + "0".repeat((4 - fracPart.length() % 4) % 4);
+        String digitsStr = intPart + fracPart;
+
+        int groups = digitsStr.length() / 4;
+        short[] digits = new short[groups];
+        for (int i = 0; i < groups; i++) {
+            digits[i] = Short.parseShort(digitsStr.substring(i * 4, i * 4 + 4));
+        }
+
+        int weight = intPart.length() / 4 - 1;
+        int first = 0;
+        while (first < groups && digits[first] == 0) {
+            first++;
+            weight--;
+        }
+        int last = groups;
+        while (last > first && digits[last - 1] == 0) {
+            last--;
+        }
+        int ndigits = last - first;
+        if (ndigits == 0) {
+            weight = 0;
+            sign = 0x0000;
+        }
+
+        out.writeInt(8 + ndigits * 2);
+        out.writeShort(ndigits);
+        out.writeShort(weight);
+        out.writeShort(sign);
+        out.writeShort(dscale);
+        for (int i = first; i < last; i++) {
+            out.writeShort(digits[i]);
+        }
+    }
+
+    /**
+     * DATE: количество дней от 2000-01-01
+     */
+    private static void writeDate(DataOutputStream out, Object value) throws IOException {
+        LocalDate date = ValueConverter.toLocalDate(value);
+        out.writeInt(4);
+        out.writeInt((int) ChronoUnit.DAYS.between(PG_EPOCH, date));
+    }
+
+    private static void writeBoolean(DataOutputStream out, Object value) throws IOException {
+        out.writeInt(1);
+        out.writeByte(ValueConverter.toBoolean(value) ? 1 : 0);
+    }
+
+    private static void writeText(DataOutputStream out, Object value) throws IOException {
+        byte[] bytes = ValueConverter.toText(value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
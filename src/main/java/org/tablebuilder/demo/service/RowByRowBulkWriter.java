@@ -0,0 +1,42 @@
+package org.tablebuilder.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Запасной способ для любой СУБД: отдельный INSERT на каждую строку
+ */
+@Component
+@Order(4)
+public class RowByRowBulkWriter implements BulkWriter {
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    @Autowired
+    private InsertStatementExecutor executor;
+
+    @Override
+    public String getName() {
+        return "row";
+    }
+
+    @Override
+    public boolean supports(BulkLoad load) {
+        return true;
+    }
+
+    @Override
+    public int getDefaultBatchSize() {
+        return DEFAULT_BATCH_SIZE;
+    }
+
+    @Override
+    public int write(BulkLoad load, List<Map<String, Object>> rows, int startIndex,
+                     List<BatchInsertService.InsertError> errors) {
+        return executor.insertRowByRow(load, rows, startIndex, errors);
+    }
+}
@@ -0,0 +1,174 @@
+package org.tablebuilder.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Точное число строк в таблицах листов без COUNT(*) на каждый запрос. Счетчики хранятся
+ * в table_row_counts и меняются в той же транзакции, что и строки (импорт, создание, удаление,
+ * пакетные операции), поэтому откат изменений откатывает и счетчик. Прочитанные значения
+ * кэшируются в памяти; кэш сбрасывается после завершения транзакции, изменившей счетчик.
+ * Чтение ничего не пишет: счетчики таблиц, созданных до их появления, заполняются один раз при старте
+ */
+@Service
+public class RowCountService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Long> cache = new ConcurrentHashMap<>();
+    // Растет при каждом сбросе кэша: значение, прочитанное до сброса, в кэш не попадает
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Число строк таблицы. Для таблицы без счетчика (создана вне импорта после заполнения при старте)
+     * строки считаются COUNT(*) и только кэшируются - счетчик появится при первой записи строк
+     */
+    public long getRowCount(String tableName) {
+        boolean changedHere = changedInCurrentTransaction(tableName);
+        if (!changedHere) {
+            Long cached = cache.get(tableName);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long seen = invalidations.get();
+        List<Long> stored = jdbcTemplate.queryForList(
+                "SELECT row_count FROM table_row_counts WHERE table_name = ?", Long.class, tableName);
+        long count;
+        if (!stored.isEmpty()) {
+            count = stored.get(0);
+        } else {
+            count = countRows(tableName);
+        }
+        if (!changedHere && invalidations.get() == seen) {
+            cache.put(tableName, count);
+            // Сброс мог пройти между проверкой и записью - тогда устаревшее значение убирается
+            if (invalidations.get() != seen) {
+                cache.remove(tableName, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Записать число строк (после загрузки таблицы целиком)
+     */
+    public void setRowCount(String tableName, long count) {
+        jdbcTemplate.update("INSERT INTO table_row_counts (table_name, row_count, updated_at) VALUES (?, ?, now()) " +
+                "ON CONFLICT (table_name) DO UPDATE SET row_count = EXCLUDED.row_count, updated_at = now()",
+                tableName, count);
+        changed(tableName);
+    }
+
+    /**
+     * Изменить число строк на delta (вызывается после записи строк, в той же транзакции)
+     */
+    public void adjust(String tableName, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        int updated = jdbcTemplate.update("UPDATE table_row_counts SET row_count = row_count + ?, updated_at = now() " +
+                "WHERE table_name = ?", delta, tableName);
+        if (updated == 0) {
+            // Счетчика еще нет - считаем строки вместе с только что записанными
+            jdbcTemplate.update("INSERT INTO table_row_counts (table_name, row_count, updated_at) " +
+                    "SELECT ?, count(*), now() FROM " + tableName + " " +
+                    "ON CONFLICT (table_name) DO UPDATE SET row_count = EXCLUDED.row_count, updated_at = now()",
+                    tableName);
+        }
+        changed(tableName);
+    }
+
+    /**
+     * Удалить счетчик удаленной таблицы
+     */
+    public void remove(String tableName) {
+        jdbcTemplate.update("DELETE FROM table_row_counts WHERE table_name = ?", tableName);
+        changed(tableName);
+    }
+
+    /**
+     * Счетчики для таблиц листов, у которых их нет (загружены до появления table_row_counts).
+     * Один раз при старте, а не на чтении: GET-запросы остаются только чтением
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillMissingCounts() {
+        List<String> tables = jdbcTemplate.queryForList(
+                "SELECT l.list_name FROM table_list l " +
+                "LEFT JOIN table_row_counts c ON c.table_name = l.list_name " +
+                "WHERE c.table_name IS NULL AND to_regclass(l.list_name) IS NOT NULL", String.class);
+        for (String tableName : tables) {
+            try {
+                // Счетчик, записанный параллельной транзакцией, точнее этого подсчета
+                jdbcTemplate.update("INSERT INTO table_row_counts (table_name, row_count, updated_at) " +
+                        "SELECT ?, count(*), now() FROM " + tableName + " ON CONFLICT (table_name) DO NOTHING", tableName);
+                invalidate(Set.of(tableName));
+            } catch (DataAccessException e) {
+                System.err.println("Error backfilling row count for table " + tableName + ": " + e.getMessage());
+            }
+        }
+        if (!tables.isEmpty()) {
+            System.out.println("Row counts backfilled for " + tables.size() + " tables");
+        }
+    }
+
+    /**
+     * Ошибка подсчета (например, таблицы нет) не превращается в 0 и не попадает в кэш
+     */
+    private long countRows(String tableName) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + tableName, Long.class);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Сброс кэша после завершения транзакции (до фиксации другие транзакции видят старый счетчик).
+     * Таблицы, измененные в транзакции, до ее конца читаются мимо кэша
+     */
+    @SuppressWarnings("unchecked")
+    private void changed(String tableName) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(Set.of(tableName));
+            return;
+        }
+        Set<String> tables = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (tables == null) {
+            Set<String> changedTables = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, changedTables);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(RowCountService.this);
+                    invalidate(changedTables);
+                }
+            });
+            tables = changedTables;
+        }
+        tables.add(tableName);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean changedInCurrentTransaction(String tableName) {
+        Set<String> tables = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        return tables != null && tables.contains(tableName);
+    }
+
+    private void invalidate(Set<String> tableNames) {
+        invalidations.incrementAndGet();
+        tableNames.forEach(cache::remove);
+    }
+}
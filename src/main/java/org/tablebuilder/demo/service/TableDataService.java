@@ -1,5 +1,9 @@
 package org.tablebuilder.demo.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.tablebuilder.demo.exception.EntityNotFoundException;
 import org.tablebuilder.demo.model.*;
 import org.tablebuilder.demo.store.*;
 import lombok.RequiredArgsConstructor;
@@ -11,7 +15,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.tablebuilder.demo.utils.NameUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -24,26 +32,43 @@ public class TableDataService {
     private final UploadedTableRepository uploadedTableRepository;
     private final TableListRepository tableListRepository;
     private final TableColumnRepository tableColumnRepository;
+    private final BatchInsertService batchInsertService;
+    private final KeysetPagination keysetPagination;
+    private final RowCountService rowCountService;
+    private final ObjectMapper objectMapper;
 
     /**
      * Получить все строки с пагинацией
      */
     public PageableResponse<Map<String, Object>> getAllRows(String fileName, String sheetName,
                                                             int page, int size) {
+        return getAllRows(fileName, sheetName, page, size, null);
+    }
+
+    /**
+     * Получить все строки: по курсору (keyset, page не используется) или по номеру страницы (OFFSET)
+     */
+    public PageableResponse<Map<String, Object>> getAllRows(String fileName, String sheetName,
+                                                            int page, int size, String cursor) {
         UploadedTable table = resolveTableName(fileName);
         TableList list_name = tableListRepository.findByTableIdAndOriginalListName(table.getId(), sheetName);
+        String tableName = list_name.getListName();
         // Получаем общее количество
-        long totalCount = getTotalCount(list_name.getListName());
+        long totalCount = getTotalCount(tableName);
 
         // Получаем данные с пагинацией
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
-                "SELECT * FROM " + list_name.getListName() + " ORDER BY id LIMIT ? OFFSET ?",
-                size, page * size
-        );
+        KeysetPagination.Order order = keysetPagination.order(tableName, null);
+        StringBuilder sql = new StringBuilder("SELECT * FROM " + tableName);
+        List<Object> params = new ArrayList<>();
+        if (cursor != null) {
+            sql.append(" WHERE ");
+            keysetPagination.appendSeekCondition(sql, order, cursor, KeysetPagination.positional(params));
+        }
+        sql.append(" ORDER BY ").append(order.getOrderBy());
+        appendPageLimit(sql, page, size, cursor);
 
-        // Преобразуем к правильным типам
-        List<Map<String, Object>> typedRows = convertRowTypes(rows);
-        return createPageableResponse(typedRows, page, size, totalCount);
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql.toString(), params.toArray());
+        return createPageableResponse(rows, page, size, totalCount, order, cursor);
     }
 
     /**
@@ -124,6 +149,8 @@ public class TableDataService {
         if (affectedRows == 0) {
             throw new RuntimeException("Failed to insert row");
         }
+        rowCountService.adjust(tableName, affectedRows);
+        markModified(tableName);
 
         // Получаем ID последней вставленной строки
         Long generatedId = getLastInsertId(tableName);
@@ -200,6 +227,7 @@ public class TableDataService {
         if (affectedRows == 0) {
             throw new RuntimeException("Failed to insert row");
         }
+        markModified(list_name.getListName());
 
         // Возвращаем обновленную строку
         Map<String, Object> updatedRow = getRowById(list_name.getListName(), id);
@@ -229,6 +257,8 @@ public class TableDataService {
         if (affectedRows == 0) {
             throw new RuntimeException("Row not found with id: " + id);
         }
+        rowCountService.adjust(list_name.getListName(), -affectedRows);
+        markModified(list_name.getListName());
     }
 
     /**
@@ -248,6 +278,8 @@ public class TableDataService {
         if (affectedRows == 0) {
             throw new RuntimeException("Row not found with id: " + id);
         }
+        rowCountService.adjust(list_name.getListName(), -affectedRows);
+        markModified(list_name.getListName());
     }
 
     /**
@@ -267,21 +299,25 @@ public class TableDataService {
         MapSqlParameterSource params = new MapSqlParameterSource();
 
         // Добавляем WHERE если есть фильтры
-        if (searchRequest.getFilters() != null && !searchRequest.getFilters().isEmpty()) {
+        boolean hasFilters = searchRequest.getFilters() != null && !searchRequest.getFilters().isEmpty();
+        if (hasFilters) {
             sql.append(" WHERE ");
             buildFilterClause(sql, params, searchRequest.getFilters(), tableName);
         }
 
-        // Добавляем ORDER BY если есть сортировка
-        if (searchRequest.getSorts() != null && !searchRequest.getSorts().isEmpty()) {
-            sql.append(" ORDER BY ");
-            buildSortClause(sql, searchRequest.getSorts(), tableName);
+        // Курсор продолжает выборку после последней строки предыдущей страницы
+        KeysetPagination.Order order = keysetPagination.order(tableName, searchRequest.getSorts());
+        String cursor = searchRequest.getCursor();
+        if (cursor != null) {
+            sql.append(hasFilters ? " AND " : " WHERE ");
+            keysetPagination.appendSeekCondition(sql, order, cursor, KeysetPagination.named(params));
         }
 
+        // Сортировка с id в конце: порядок строк полный и одинаковый для всех страниц
+        sql.append(" ORDER BY ").append(order.getOrderBy());
+
         // Добавляем пагинацию
-        sql.append(" LIMIT :limit OFFSET :offset");
-        params.addValue("limit", size);
-        params.addValue("offset", page * size);
+        appendPageLimit(sql, page, size, cursor);
 
         // Выполняем запрос
         List<Map<String, Object>> rows = namedParameterJdbcTemplate.queryForList(
@@ -291,38 +327,172 @@ public class TableDataService {
         // Получаем общее количество с учетом фильтров
         long totalCount = getFilteredCount(tableName, searchRequest.getFilters());
 
-        List<Map<String, Object>> typedRows = convertRowTypes(rows);
-        return createPageableResponse(typedRows, page, size, totalCount);
-    }
-
-//    /**
-//     * Массовое создание строк
-//     */
-//    @Transactional
-//    public BatchOperationResult createBatchRows(String fileName, String sheetName,
-//                                                List<Map<String, Object>> rowsData) {
-//        UploadedTable table = resolveTableName(fileName);
-//        TableList list_name = tableListRepository.findByTableIdAndOriginalListName(table.getId(), sheetName);
-//
-//        String tableName = table.getInternalName();
-//
-//        BatchOperationResult result = new BatchOperationResult(0, 0, new ArrayList<>());
-//
-//        for (int i = 0; i < rowsData.size(); i++) {
-//            try {
-//                createRow(fileName, sheetName, rowsData.get(i));
-//                result.setSuccessCount(result.getSuccessCount() + 1);
-//            } catch (Exception e) {
-//                result.setErrorCount(result.getErrorCount() + 1);
-//                result.getErrors().add(new OperationError(
-//                        i, e.getMessage(), rowsData.get(i)
-//                ));
-//                log.error("Failed to create row at index {}: {}", i, e.getMessage());
-//            }
-//        }
-//
-//        return result;
-//    }
+        return createPageableResponse(rows, page, size, totalCount, order, cursor);
+    }
+
+    /**
+     * Массовое создание строк из JSON-массива объектов. Тело читается потоком и передается
+     * в потоковую вставку: в памяти только текущая пачка строк.
+     * Ключи объектов - имена колонок из заголовка листа или SQL-имена
+     */
+    @Transactional
+    public BatchOperationResult createBatchRows(String fileName, String sheetName, InputStream json) throws IOException {
+        BatchRowsTarget target = resolveBatchTarget(fileName, sheetName);
+        BatchInsertService.BatchInsertResult result = readJsonRows(json, target,
+                rows -> batchInsertService.batchInsert(target.tableName, target.columns, rows));
+        rowCountService.adjust(target.tableName, result.getSuccessCount());
+        markModified(target.tableName);
+        return new BatchOperationResult(result.getSuccessCount(), result.getErrorCount(), toOperationErrors(result.getErrors()));
+    }
+
+    /**
+     * Upsert строк по ключевой колонке: тело - JSON-массив объектов {колонка: значение}, читается потоком.
+     * Строки с существующим ключом обновляются (если что-то изменилось), остальные добавляются
+     *
+     * @param keyColumn      ключевая колонка - SQL-имя или имя из заголовка листа
+     * @param createKeyIndex создать уникальный индекс по ключу, если его нет (иначе upsert отклоняется)
+     */
+    @Transactional
+    public BatchUpsertResult upsertBatchRows(String fileName, String sheetName, String keyColumn,
+                                             boolean createKeyIndex, InputStream json) throws IOException {
+        BatchRowsTarget target = resolveBatchTarget(fileName, sheetName);
+        Integer keyPosition = keyColumn != null ? target.positions.get(keyColumn.toLowerCase()) : null;
+        if (keyPosition == null) {
+            throw new IllegalArgumentException("Key column '" + keyColumn + "' not found in table");
+        }
+        String key = target.columns.get(keyPosition);
+        BatchInsertService.UpsertResult result = readJsonRows(json, target,
+                rows -> batchInsertService.batchUpsert(target.tableName, target.columns, key, createKeyIndex, rows));
+        rowCountService.adjust(target.tableName, result.getInserted());
+        markModified(target.tableName);
+        return new BatchUpsertResult(key, result.getInserted(), result.getUpdated(), result.getUnchanged(),
+                result.getCollapsed(), result.getErrorCount(), toOperationErrors(result.getErrors()));
+    }
+
+    /**
+     * Таблица листа и позиции колонок по SQL-именам и именам из заголовка (без учета регистра)
+     */
+    private BatchRowsTarget resolveBatchTarget(String fileName, String sheetName) {
+        UploadedTable table = resolveTableName(fileName);
+        if (table == null) {
+            throw new EntityNotFoundException("File not found: " + fileName);
+        }
+        TableList list_name = tableListRepository.findByTableIdAndOriginalListName(table.getId(), sheetName);
+        if (list_name == null) {
+            throw new EntityNotFoundException("Sheet not found: " + sheetName);
+        }
+        String tableName = list_name.getListName();
+
+        List<String> columns = getTableColumns(tableName);
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            positions.put(columns.get(i).toLowerCase(), i);
+        }
+        for (TableColumn column : tableColumnRepository.findByTableIdAndListNameOrderByOriginalIndex(table.getId(), tableName)) {
+            Integer position = positions.get(column.getInternalName().toLowerCase());
+            if (position != null) {
+                positions.putIfAbsent(column.getDisplayName().toLowerCase(), position);
+            }
+        }
+        return new BatchRowsTarget(tableName, columns, positions);
+    }
+
+    private <R> R readJsonRows(InputStream json, BatchRowsTarget target,
+                               Function<Iterator<Object[]>, R> consumer) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected a JSON array of row objects");
+            }
+            return consumer.apply(new JsonRowIterator(parser, target.positions, target.columns.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static List<OperationError> toOperationErrors(List<BatchInsertService.InsertError> errors) {
+        return errors.stream()
+                .map(error -> new OperationError(error.getRowIndex(),
+                        error.getColumn() != null ? error.getColumn() + ": " + error.getMessage() : error.getMessage(),
+                        error.getRowData()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Куда пишутся строки массовой операции
+     */
+    private static class BatchRowsTarget {
+        private final String tableName;
+        private final List<String> columns;
+        private final Map<String, Integer> positions;
+
+        BatchRowsTarget(String tableName, List<String> columns, Map<String, Integer> positions) {
+            this.tableName = tableName;
+            this.columns = columns;
+            this.positions = positions;
+        }
+    }
+
+    /**
+     * Объекты JSON-массива по одному: значения раскладываются по позициям колонок,
+     * неизвестные ключи - ошибка запроса
+     */
+    private static class JsonRowIterator implements Iterator<Object[]> {
+        private final JsonParser parser;
+        private final Map<String, Integer> positions;
+        private final int columnCount;
+        private Boolean hasNext;
+
+        JsonRowIterator(JsonParser parser, Map<String, Integer> positions, int columnCount) {
+            this.parser = parser;
+            this.positions = positions;
+            this.columnCount = columnCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                try {
+                    JsonToken token = parser.nextToken();
+                    if (token != JsonToken.START_OBJECT && token != JsonToken.END_ARRAY) {
+                        throw new IllegalArgumentException("Expected a row object, got " + token);
+                    }
+                    hasNext = token == JsonToken.START_OBJECT;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public Object[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            Object[] values = new Object[columnCount];
+            try {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    Integer position = positions.get(name.toLowerCase());
+                    if (position == null) {
+                        throw new IllegalArgumentException("Column '" + name + "' not found in table");
+                    }
+                    JsonToken token = parser.nextToken();
+                    values[position] = switch (token) {
+                        case VALUE_NULL -> null;
+                        case VALUE_TRUE, VALUE_FALSE -> parser.getBooleanValue();
+                        case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDecimalValue();
+                        case VALUE_STRING -> parser.getText();
+                        default -> throw new IllegalArgumentException("Unsupported value for column '" + name + "': " + token);
+                    };
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return values;
+        }
+    }
 
     /**
      * Массовое удаление строк
@@ -354,6 +524,15 @@ public class TableDataService {
 
     // ========== ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ==========
 
+    /**
+     * Строки изменены в обход импорта: хеши листа и файла сбрасываются в той же транзакции,
+     * чтобы повторная загрузка того же файла не была пропущена как "без изменений"
+     */
+    private void markModified(String tableName) {
+        tableListRepository.clearContentHash(tableName);
+        uploadedTableRepository.clearContentHashByListName(tableName);
+    }
+
     private UploadedTable resolveTableName(String fileName) {
         UploadedTable table = uploadedTableRepository.findByDisplayName(fileName);
         return table;
@@ -382,13 +561,13 @@ public class TableDataService {
     }
 
     private long getTotalCount(String tableName) {
-        Long count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM " + tableName, Long.class
-        );
-        return count != null ? count : 0;
+        return rowCountService.getRowCount(tableName);
     }
 
     private long getFilteredCount(String tableName, List<FilterRequest> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return rowCountService.getRowCount(tableName);
+        }
         StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM " + tableName);
         MapSqlParameterSource params = new MapSqlParameterSource();
 
@@ -431,15 +610,6 @@ public class TableDataService {
         }
     }
 
-    private void buildSortClause(StringBuilder sql, List<SortRequest> sorts, String tableName) {
-        for (int i = 0; i < sorts.size(); i++) {
-            if (i > 0) sql.append(", ");
-            SortRequest sort = sorts.get(i);
-            String direction = "ASC".equalsIgnoreCase(sort.getDirection()) ? "ASC" : "DESC";
-            sql.append(sort.getColumn()).append(" ").append(direction);
-        }
-    }
-
     private List<Map<String, Object>> convertRowTypes(List<Map<String, Object>> rows) {
         return rows.stream()
                 .map(this::convertRowTypes)
@@ -451,6 +621,38 @@ public class TableDataService {
         return new LinkedHashMap<>(row); // сохраняем порядок колонок
     }
 
+    /**
+     * LIMIT на одну строку больше страницы - по ней видно, есть ли следующая. OFFSET - только без курсора
+     */
+    private void appendPageLimit(StringBuilder sql, int page, int size, String cursor) {
+        sql.append(" LIMIT ").append((long) size + 1);
+        if (cursor == null) {
+            sql.append(" OFFSET ").append((long) page * size);
+        }
+    }
+
+    /**
+     * Страница из выбранных строк (на одну больше размера страницы) и курсор следующей страницы
+     */
+    private PageableResponse<Map<String, Object>> createPageableResponse(List<Map<String, Object>> rows, int page,
+                                                                         int size, long totalElements,
+                                                                         KeysetPagination.Order order, String cursor) {
+        boolean hasNext = rows.size() > size;
+        if (hasNext) {
+            rows = rows.subList(0, size);
+        }
+        // Преобразуем к правильным типам
+        PageableResponse<Map<String, Object>> response = createPageableResponse(convertRowTypes(rows), page, size, totalElements);
+        if (hasNext) {
+            response.setNextCursor(keysetPagination.cursorAfter(order, rows.get(rows.size() - 1)::get));
+        }
+        if (cursor != null) {
+            response.setFirst(false);
+            response.setLast(!hasNext);
+        }
+        return response;
+    }
+
     private <T> PageableResponse<T> createPageableResponse(List<T> content, int page, int size, long totalElements) {
         int totalPages = (int) Math.ceil((double) totalElements / size);
         return new PageableResponse<>(
@@ -0,0 +1,152 @@
+package org.tablebuilder.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Применение изменений из staging-таблицы к существующей таблице листа.
+ * Вместо пересоздания таблицы выполняются только нужные INSERT/UPDATE/DELETE (по одному
+ * set-based запросу на каждый вид), поэтому id неизменившихся строк сохраняются,
+ * а объем WAL и перестройка индексов пропорциональны числу изменений.
+ * Вызывается внутри транзакции переключения
+ */
+@Service
+public class TableDeltaService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Можно ли применить staging к таблице: те же колонки тех же типов в том же порядке
+     */
+    public boolean isCompatible(String tableName, String stagingTable) {
+        List<String> target = describeColumns(tableName);
+        return !target.isEmpty() && target.equals(describeColumns(stagingTable));
+    }
+
+    /**
+     * Применить изменения. Если задан ключ и он уникален в обеих таблицах - строки сопоставляются
+     * по ключу (изменившиеся обновляются на месте), иначе - по хешу содержимого строки
+     *
+     * @param keyColumn SQL-имя ключевой колонки или null
+     */
+    public DeltaResult applyDelta(String tableName, String stagingTable, List<String> columns, String keyColumn) {
+        // Staging-таблица только что заполнена - без статистики планировщик выберет вложенные циклы
+        jdbcTemplate.execute("ANALYZE " + stagingTable);
+
+        if (keyColumn != null && columns.contains(keyColumn)) {
+            if (isUnique(tableName, keyColumn) && isUnique(stagingTable, keyColumn)) {
+                return applyByKey(tableName, stagingTable, columns, keyColumn);
+            }
+            System.out.println("Key column " + keyColumn + " is not unique in " + tableName
+                    + ", matching rows by content hash");
+        }
+        return applyByHash(tableName, stagingTable, columns);
+    }
+
+    private DeltaResult applyByKey(String tableName, String stagingTable, List<String> columns, String key) {
+        String columnList = String.join(", ", columns);
+        String targetRow = prefixed("t", columns);
+        String stagingRow = prefixed("s", columns);
+        String assignments = columns.stream()
+                .filter(column -> !column.equals(key))
+                .map(column -> column + " = s." + column)
+                .collect(Collectors.joining(", "));
+
+        // Строки с пустым ключом сопоставить нельзя - они пересоздаются
+        int deleted = jdbcTemplate.update(
+                "DELETE FROM " + tableName + " t WHERE t." + key + " IS NULL " +
+                "OR NOT EXISTS (SELECT 1 FROM " + stagingTable + " s WHERE s." + key + " = t." + key + ")");
+
+        int updated = assignments.isEmpty() ? 0 : jdbcTemplate.update(
+                "UPDATE " + tableName + " t SET " + assignments + " FROM " + stagingTable + " s " +
+                "WHERE t." + key + " = s." + key + " AND ROW(" + targetRow + ") IS DISTINCT FROM ROW(" + stagingRow + ")");
+
+        int inserted = jdbcTemplate.update(
+                "INSERT INTO " + tableName + " (" + columnList + ") " +
+                "SELECT " + columnList + " FROM " + stagingTable + " s " +
+                "WHERE s." + key + " IS NULL " +
+                "OR NOT EXISTS (SELECT 1 FROM " + tableName + " t WHERE t." + key + " = s." + key + ") " +
+                "ORDER BY s.id");
+
+        return new DeltaResult(inserted, updated, deleted);
+    }
+
+    /**
+     * Сопоставление по хешу строки. Одинаковые строки нумеруются (row_number), поэтому
+     * дубликаты считаются как мультимножество: лишние удаляются, недостающие добавляются.
+     * Изменившаяся строка - это удаление старой и вставка новой
+     */
+    private DeltaResult applyByHash(String tableName, String stagingTable, List<String> columns) {
+        String columnList = String.join(", ", columns);
+        String targetRows = numberedHashes(tableName, columns);
+        String stagingRows = numberedHashes(stagingTable, columns);
+
+        int deleted = jdbcTemplate.update(
+                "DELETE FROM " + tableName + " WHERE id IN (" +
+                "SELECT t.id FROM (" + targetRows + ") t " +
+                "WHERE NOT EXISTS (SELECT 1 FROM (" + stagingRows + ") s WHERE s.h = t.h AND s.n = t.n))");
+
+        // После удаления в таблице остались только сопоставленные строки
+        int inserted = jdbcTemplate.update(
+                "INSERT INTO " + tableName + " (" + columnList + ") " +
+                "SELECT " + columnList + " FROM " + stagingTable + " WHERE id IN (" +
+                "SELECT s.id FROM (" + stagingRows + ") s " +
+                "WHERE NOT EXISTS (SELECT 1 FROM (" + targetRows + ") t WHERE t.h = s.h AND t.n = s.n)) " +
+                "ORDER BY id");
+
+        return new DeltaResult(inserted, 0, deleted);
+    }
+
+    private String numberedHashes(String table, List<String> columns) {
+        String hash = "md5(ROW(" + String.join(", ", columns) + ")::text)";
+        return "SELECT id, " + hash + " AS h, row_number() OVER (PARTITION BY " + hash + " ORDER BY id) AS n FROM " + table;
+    }
+
+    private boolean isUnique(String table, String column) {
+        List<Integer> duplicates = jdbcTemplate.queryForList(
+                "SELECT 1 FROM " + table + " WHERE " + column + " IS NOT NULL " +
+                "GROUP BY " + column + " HAVING count(*) > 1 LIMIT 1", Integer.class);
+        return duplicates.isEmpty();
+    }
+
+    private List<String> describeColumns(String table) {
+        return new ArrayList<>(jdbcTemplate.queryForList(
+                "SELECT column_name || ':' || data_type FROM information_schema.columns " +
+                "WHERE table_schema = current_schema() AND table_name = ? ORDER BY ordinal_position",
+                String.class, table));
+    }
+
+    private static String prefixed(String alias, List<String> columns) {
+        return columns.stream().map(column -> alias + "." + column).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Число вставленных, обновленных и удаленных строк
+     */
+    public static class DeltaResult {
+        private final int inserted;
+        private final int updated;
+        private final int deleted;
+
+        public DeltaResult(int inserted, int updated, int deleted) {
+            this.inserted = inserted;
+            this.updated = updated;
+            this.deleted = deleted;
+        }
+
+        public int getInserted() { return inserted; }
+        public int getUpdated() { return updated; }
+        public int getDeleted() { return deleted; }
+
+        @Override
+        public String toString() {
+            return "+" + inserted + " ~" + updated + " -" + deleted;
+        }
+    }
+}
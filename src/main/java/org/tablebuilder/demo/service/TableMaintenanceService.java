@@ -0,0 +1,116 @@
+package org.tablebuilder.demo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.tablebuilder.demo.store.TableColumn;
+import org.tablebuilder.demo.store.TableColumnRepository;
+import org.tablebuilder.demo.store.TableList;
+import org.tablebuilder.demo.store.UploadedTable;
+import org.tablebuilder.demo.utils.NameUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Обслуживание таблиц после загрузки: статистика для планировщика, заморозка строк
+ * и вторичные индексы. Индексы строятся после загрузки одним проходом, а не поддерживаются
+ * на каждой вставленной строке. Ошибки здесь импорт не отменяют - данные уже записаны
+ */
+@Service
+public class TableMaintenanceService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TableColumnRepository tableColumnRepository;
+
+    // ANALYZE после загрузки: без статистики первые запросы получают плохие планы
+    @Value("${app.import.post-load.analyze:true}")
+    private boolean analyze;
+
+    // VACUUM (FREEZE): строки замораживаются сразу, а не при первом чтении и не при anti-wraparound
+    @Value("${app.import.post-load.vacuum-freeze:true}")
+    private boolean vacuumFreeze;
+
+    /**
+     * Обработать только что загруженную таблицу. Вызывается после фиксации транзакции загрузки:
+     * VACUUM внутри транзакции невозможен
+     *
+     * @param indexColumns SQL-имена колонок для вторичных индексов
+     */
+    public void afterLoad(String tableName, List<String> indexColumns) {
+        long start = System.currentTimeMillis();
+        try {
+            if (vacuumFreeze && !TransactionSynchronizationManager.isActualTransactionActive()) {
+                // ANALYZE в том же проходе по таблице
+                jdbcTemplate.execute("VACUUM (FREEZE" + (analyze ? ", ANALYZE" : "") + ") " + tableName);
+            } else if (analyze) {
+                jdbcTemplate.execute("ANALYZE " + tableName);
+            }
+
+            createIndexes(tableName, indexColumns);
+        } catch (RuntimeException e) {
+            System.err.println("Post-load maintenance failed for " + tableName + ": " + e.getMessage());
+            return;
+        }
+        System.out.println("Post-load maintenance for " + tableName + " took " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Запрошенные индексы для таблиц, которые не перезагружались (файл или лист не изменился).
+     * Колонки задаются как при импорте - SQL-именем или именем из заголовка
+     */
+    public void indexUnchanged(UploadedTable table, List<TableList> lists, List<String> requested) {
+        if (requested.isEmpty()) {
+            return;
+        }
+        for (TableList list : lists) {
+            List<String> columnNames = new ArrayList<>();
+            List<String> originalNames = new ArrayList<>();
+            for (TableColumn column : tableColumnRepository.findByTableIdAndListNameOrderByOriginalIndex(
+                    table.getId(), list.getListName())) {
+                columnNames.add(column.getInternalName());
+                originalNames.add(column.getDisplayName());
+            }
+            List<String> indexColumns = new ArrayList<>();
+            for (String name : requested) {
+                String column = NameUtils.resolveColumn(columnNames, originalNames, name);
+                if (column != null && !indexColumns.contains(column)) {
+                    indexColumns.add(column);
+                }
+            }
+            try {
+                createIndexes(list.getListName(), indexColumns);
+            } catch (RuntimeException e) {
+                System.err.println("Index creation failed for " + list.getListName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Индекс по каждой колонке, если у нее еще нет индекса (с любым именем, в том числе созданного
+     * прежней схемой имен)
+     */
+    private void createIndexes(String tableName, List<String> indexColumns) {
+        for (String column : indexColumns) {
+            if (hasColumnIndex(tableName, column)) {
+                continue;
+            }
+            String indexName = NameUtils.indexName(tableName, column, "_idx");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName + " ON " + tableName + " (" + column + ")");
+        }
+    }
+
+    private boolean hasColumnIndex(String tableName, String column) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_index i " +
+                "JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = i.indkey[0] " +
+                "WHERE i.indrelid = to_regclass(?) AND i.indnkeyatts = 1 " +
+                "AND i.indpred IS NULL AND i.indexprs IS NULL AND a.attname = ?)",
+                Boolean.class, tableName, column));
+    }
+}
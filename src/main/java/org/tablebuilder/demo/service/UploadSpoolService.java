@@ -0,0 +1,123 @@
+package org.tablebuilder.demo.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.multipart.MultipartFile;
+import org.tablebuilder.demo.utils.HashUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Сохранение загружаемых файлов во временный файл на диске.
+ * POI открывает книгу с диска (zip с произвольным доступом), а не буферизует весь поток в памяти
+ */
+@Service
+public class UploadSpoolService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Каталог для временных файлов (по умолчанию java.io.tmpdir)
+    @Value("${app.import.upload.temp-dir:}")
+    private String tempDir;
+
+    // Максимальный размер загружаемого файла
+    @Value("${app.import.upload.max-size:1GB}")
+    private DataSize maxSize;
+
+    // SHA-256 сохраненных файлов до их удаления
+    private final Map<Path, String> contentHashes = new ConcurrentHashMap<>();
+
+    /**
+     * Сохранить multipart-файл. Если контейнер уже записал его на диск, файл просто переносится
+     */
+    public Path spool(MultipartFile file) throws IOException {
+        Path target = createTempFile();
+        try {
+            file.transferTo(target);
+            return target;
+        } catch (IOException | RuntimeException e) {
+            delete(target);
+            throw e;
+        }
+    }
+
+    /**
+     * Сохранить тело запроса потоком, не держа его в памяти
+     */
+    public Path spool(InputStream in, long contentLength) throws IOException {
+        long limit = maxSize.toBytes();
+        if (contentLength > limit) {
+            throw new MaxUploadSizeExceededException(limit);
+        }
+
+        Path target = createTempFile();
+        MessageDigest digest = HashUtils.sha256();
+        try (OutputStream out = Files.newOutputStream(target)) {
+            // Хеш считается по пути на диск - импорт не перечитывает файл ради него
+            in = new DigestInputStream(in, digest);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > limit) {
+                    throw new MaxUploadSizeExceededException(limit);
+                }
+                out.write(buffer, 0, read);
+            }
+            contentHashes.put(target, HexFormat.of().formatHex(digest.digest()));
+            return target;
+        } catch (IOException | RuntimeException e) {
+            delete(target);
+            throw e;
+        }
+    }
+
+    /**
+     * SHA-256 файла: посчитанный при сохранении потока или по содержимому файла
+     * (multipart переносится на диск без чтения - хеш считается здесь один раз)
+     */
+    public String contentHash(Path file) throws IOException {
+        String hash = contentHashes.get(file);
+        if (hash == null) {
+            hash = HashUtils.sha256(file);
+            contentHashes.put(file, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Удалить временный файл (ошибка только логируется)
+     */
+    public void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        contentHashes.remove(file);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Error deleting temp file " + file + ": " + e.getMessage());
+        }
+    }
+
+    private Path createTempFile() throws IOException {
+        if (tempDir == null || tempDir.isBlank()) {
+            return Files.createTempFile("excel-import-", ".xlsx");
+        }
+        Path dir = Files.createDirectories(Paths.get(tempDir));
+        return Files.createTempFile(dir, "excel-import-", ".xlsx");
+    }
+}
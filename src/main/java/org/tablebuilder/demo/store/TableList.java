@@ -20,4 +20,7 @@ public class TableList {
     private String listName;
     @Column(nullable = false, length = 63)
     private String originalListName;
+    @Column(length = 64)
+    private String contentHash; // отпечаток листа, из которого построена таблица (null - строки менялись после импорта)
+    private Integer rowsImported;
 }
@@ -1,6 +1,8 @@
 package org.tablebuilder.demo.store;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -12,4 +14,11 @@ public interface TableListRepository extends JpaRepository<TableList, Long> {
     TableList findByTableIdAndOriginalListName(Long id, String sheetName);
 
     void deleteByTableId(Long id);
+
+    /**
+     * Сбросить хеш листа: строки таблицы изменены и больше не совпадают с листом файла
+     */
+    @Modifying
+    @Query("UPDATE TableList l SET l.contentHash = NULL WHERE l.listName = :listName")
+    int clearContentHash(String listName);
 }
@@ -0,0 +1,24 @@
+package org.tablebuilder.demo.store;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Точное число строк таблицы листа, чтобы не считать COUNT(*) на каждый запрос.
+ * Записи ведет RowCountService атомарными UPDATE в транзакциях, меняющих строки
+ */
+@Entity
+@Table(name = "table_row_counts")
+@Data
+public class TableRowCount {
+    @Id
+    @Column(length = 63)
+    private String tableName;
+
+    @Column(nullable = false)
+    private long rowCount;
+
+    private LocalDateTime updatedAt;
+}
@@ -28,4 +28,9 @@ public class UploadedTable {
     private String username;
 
     private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(length = 64)
+    private String contentHash; // SHA-256 последнего успешно импортированного файла
+
+    private Integer rowsImported;
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package org.tablebuilder.demo.store;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -16,4 +18,12 @@ public interface UploadedTableRepository extends JpaRepository<UploadedTable, Lo
     UploadedTable findByDisplayName(String displayName);
 
     List<UploadedTable> findAllByOrderByCreatedAtDesc();
+
+    /**
+     * Сбросить хеш файла, которому принадлежит таблица листа
+     */
+    @Modifying
+    @Query("UPDATE UploadedTable t SET t.contentHash = NULL " +
+            "WHERE t.id IN (SELECT l.table.id FROM TableList l WHERE l.listName = :listName)")
+    int clearContentHashByListName(String listName);
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package org.tablebuilder.demo.utils;
+
+/**
+ * Подбор размера пачки по измеренной скорости (AIMD): пока пачки укладываются в целевую
+ * задержку и скорость не падает, размер растет на постоянный шаг; если пачка слишком долгая
+ * или рост размера снизил скорость - размер уменьшается в разы.
+ * Запоминается размер с лучшей скоростью. Потокобезопасен: листы одной формы делят один экземпляр
+ */
+public class AdaptiveBatchSizer {
+
+    // Падение скорости меньше этой доли считается шумом
+    private static final double TOLERANCE = 0.1;
+    private static final double BACKOFF = 0.75;
+    private static final double SMOOTHING = 0.3;
+
+    private final int minSize;
+    private final int maxSize;
+    private final int step;
+    private final long targetLatencyNanos;
+
+    private int currentSize;
+    private int previousSize;
+    private double previousThroughput;
+    private double smoothedThroughput;
+    private int bestSize;
+    private double bestThroughput;
+    private double lastLatencyMs;
+    private long samples;
+
+    public AdaptiveBatchSizer(int minSize, int maxSize, int initialSize, long targetLatencyMs) {
+        this.minSize = Math.max(1, Math.min(minSize, maxSize));
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.currentSize = clamp(initialSize);
+        this.bestSize = currentSize;
+        this.step = Math.max(this.minSize, this.currentSize / 4);
+        this.targetLatencyNanos = targetLatencyMs * 1_000_000L;
+    }
+
+    /**
+     * Размер следующей пачки
+     */
+    public synchronized int current() {
+        return currentSize;
+    }
+
+    /**
+     * Учесть записанную пачку
+     *
+     * @param rows  строк в пачке
+     * @param nanos время записи
+     */
+    public synchronized void record(int rows, long nanos) {
+        // Хвост листа меньше текущего размера и ничего не говорит о нем
+        if (rows <= 0 || nanos <= 0 || rows < currentSize / 2) {
+            return;
+        }
+        samples++;
+        double throughput = rows * 1e9 / nanos;
+        lastLatencyMs = nanos / 1e6;
+        smoothedThroughput = smoothedThroughput == 0
+                ? throughput
+                : smoothedThroughput * (1 - SMOOTHING) + throughput * SMOOTHING;
+        if (throughput > bestThroughput) {
+            bestThroughput = throughput;
+            bestSize = rows;
+        }
+
+        int size = currentSize;
+        if (nanos > targetLatencyNanos) {
+            currentSize = clamp(size / 2);
+        } else if (size > previousSize && previousThroughput > 0
+                && throughput < previousThroughput * (1 - TOLERANCE)) {
+            // Рост размера перестал окупаться - возвращаемся ниже
+            currentSize = clamp((int) (size * BACKOFF));
+        } else {
+            currentSize = clamp(size + step);
+        }
+        previousSize = size;
+        previousThroughput = throughput;
+    }
+
+    private int clamp(int size) {
+        return Math.max(minSize, Math.min(maxSize, size));
+    }
+
+    public synchronized int getBestSize() { return bestSize; }
+    public synchronized double getBestThroughput() { return bestThroughput; }
+    public synchronized double getSmoothedThroughput() { return smoothedThroughput; }
+    public synchronized double getLastLatencyMs() { return lastLatencyMs; }
+    public synchronized long getSamples() { return samples; }
+    public int getMinSize() { return minSize; }
+    public int getMaxSize() { return maxSize; }
+}
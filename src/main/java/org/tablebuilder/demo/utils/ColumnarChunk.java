@@ -0,0 +1,311 @@
+package org.tablebuilder.demo.utils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Пачка строк для вставки, хранящаяся по колонкам в примитивных массивах:
+ * NUMBER - double[], BOOLEAN - boolean[], DATE - long[] (дни от 1970-01-01),
+ * TEXT - коды в словаре уникальных строк. NULL отмечается битовой маской.
+ * Значения приводятся к типу колонки при добавлении; неприводимая строка в пачку не попадает,
+ * а запоминается в списке отклоненных. Массивы переиспользуются после clear()
+ */
+public class ColumnarChunk {
+
+    // Целые числа до 2^53 double хранит точно
+    private static final double MAX_EXACT_LONG = 9007199254740992d;
+
+    private final List<String> columns;
+    private final ColumnType[] types;
+    private final int capacity;
+
+    private final double[][] numbers;
+    private final boolean[][] booleans;
+    private final long[][] dates;
+    private final int[][] textCodes;
+    private final long[][] nulls;
+    private final int[] rowIndexes;
+
+    // Числа, которые double не хранит точно (длинные строки, BigDecimal) - редкость
+    private final Map<Long, BigDecimal> exactNumbers = new HashMap<>();
+
+    private final Map<String, Integer> dictionaryIndex = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+
+    private final List<RejectedRow> rejectedRows = new ArrayList<>();
+    private int size;
+    // Сколько строк набирать до записи (не больше capacity), меняется между пачками
+    private int limit;
+    // id первой строки, если id назначены заранее (0 - id выдает sequence таблицы при вставке)
+    private long firstId;
+
+    public ColumnarChunk(List<String> columns, List<ColumnType> types, int capacity) {
+        if (columns.size() != types.size()) {
+            throw new IllegalArgumentException("Columns and types size mismatch");
+        }
+        this.columns = List.copyOf(columns);
+        this.types = types.toArray(new ColumnType[0]);
+        this.capacity = capacity;
+        this.limit = capacity;
+
+        int columnCount = columns.size();
+        this.numbers = new double[columnCount][];
+        this.booleans = new boolean[columnCount][];
+        this.dates = new long[columnCount][];
+        this.textCodes = new int[columnCount][];
+        this.nulls = new long[columnCount][(capacity + 63) >>> 6];
+        this.rowIndexes = new int[capacity];
+
+        for (int c = 0; c < columnCount; c++) {
+            switch (this.types[c]) {
+                case NUMBER -> numbers[c] = new double[capacity];
+                case BOOLEAN -> booleans[c] = new boolean[capacity];
+                case DATE -> dates[c] = new long[capacity];
+                default -> textCodes[c] = new int[capacity];
+            }
+        }
+    }
+
+    /**
+     * Добавить строку (значения по порядку колонок)
+     *
+     * @param rowIndex номер строки в источнике (для ошибок)
+     * @return false - если значение не приводится к типу колонки (строка отклонена)
+     */
+    public boolean addRow(int rowIndex, List<Object> values) {
+        if (size >= capacity) {
+            throw new IllegalStateException("Chunk is full: " + capacity);
+        }
+
+        int row = size;
+        int column = 0;
+        try {
+            for (; column < types.length; column++) {
+                Object value = column < values.size() ? values.get(column) : null;
+                setValue(row, column, value);
+            }
+        } catch (IllegalArgumentException e) {
+            // Откатываем уже записанные значения этой строки
+            for (int c = 0; c < column; c++) {
+                exactNumbers.remove(key(row, c));
+            }
+            rejectedRows.add(new RejectedRow(rowIndex, columns.get(column), e.getMessage(), toMap(values)));
+            return false;
+        }
+
+        rowIndexes[row] = rowIndex;
+        size++;
+        return true;
+    }
+
+    private void setValue(int row, int column, Object value) {
+        if (ValueConverter.isEmpty(value)) {
+            nulls[column][row >>> 6] |= 1L << row;
+            return;
+        }
+        nulls[column][row >>> 6] &= ~(1L << row);
+
+        switch (types[column]) {
+            case NUMBER -> setNumber(row, column, value);
+            case BOOLEAN -> booleans[column][row] = ValueConverter.toBoolean(value);
+            case DATE -> dates[column][row] = ValueConverter.toLocalDate(value).toEpochDay();
+            default -> textCodes[column][row] = encode(ValueConverter.toText(value));
+        }
+    }
+
+    private void setNumber(int row, int column, Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new IllegalArgumentException("Value '" + value + "' is not a valid NUMERIC");
+            }
+            numbers[column][row] = d;
+            return;
+        }
+        if ((value instanceof Long || value instanceof Integer || value instanceof Short)
+                && Math.abs(((Number) value).longValue()) <= MAX_EXACT_LONG) {
+            numbers[column][row] = ((Number) value).longValue();
+            return;
+        }
+
+        BigDecimal decimal = ValueConverter.toBigDecimal(value);
+        double d = decimal.doubleValue();
+        numbers[column][row] = d;
+        if (Double.isInfinite(d) || toDecimal(d).compareTo(decimal) != 0) {
+            exactNumbers.put(key(row, column), decimal);
+        }
+    }
+
+    private int encode(String text) {
+        Integer code = dictionaryIndex.get(text);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(text);
+            dictionaryIndex.put(text, code);
+        }
+        return code;
+    }
+
+    private static long key(int row, int column) {
+        return ((long) row << 32) | column;
+    }
+
+    private static BigDecimal toDecimal(double d) {
+        if (d == Math.rint(d) && Math.abs(d) <= MAX_EXACT_LONG) {
+            return BigDecimal.valueOf((long) d);
+        }
+        return BigDecimal.valueOf(d).stripTrailingZeros();
+    }
+
+    /**
+     * Очистить пачку для повторного использования (массивы сохраняются)
+     */
+    public void clear() {
+        for (long[] bitmap : nulls) {
+            Arrays.fill(bitmap, 0L);
+        }
+        exactNumbers.clear();
+        dictionaryIndex.clear();
+        dictionary.clear();
+        rejectedRows.clear();
+        size = 0;
+        firstId = 0;
+    }
+
+    // ========== ЧТЕНИЕ ==========
+
+    public int size() { return size; }
+    public int getCapacity() { return capacity; }
+    public boolean isEmpty() { return size == 0; }
+    public boolean isFull() { return size >= limit; }
+    public int getLimit() { return limit; }
+
+    /**
+     * Размер следующей пачки: массивы выделены на capacity, пачка считается полной на limit строк
+     */
+    public void setLimit(int limit) {
+        this.limit = Math.max(1, Math.min(capacity, limit));
+    }
+
+    /**
+     * Назначить строкам пачки id подряд начиная с firstId (параллельная загрузка сохраняет порядок строк)
+     */
+    public void setFirstId(long firstId) {
+        this.firstId = firstId;
+    }
+    public long getFirstId() { return firstId; }
+    public boolean hasIds() { return firstId > 0; }
+    public long getId(int row) { return firstId + row; }
+    public List<String> getColumns() { return columns; }
+    public ColumnType getType(int column) { return types[column]; }
+    public List<ColumnType> getTypes() { return List.of(types); }
+    public int getRowIndex(int row) { return rowIndexes[row]; }
+    public List<RejectedRow> getRejectedRows() { return rejectedRows; }
+
+    public boolean isNull(int row, int column) {
+        return (nulls[column][row >>> 6] & (1L << row)) != 0;
+    }
+
+    public BigDecimal getDecimal(int row, int column) {
+        BigDecimal exact = exactNumbers.isEmpty() ? null : exactNumbers.get(key(row, column));
+        return exact != null ? exact : toDecimal(numbers[column][row]);
+    }
+
+    public boolean getBoolean(int row, int column) {
+        return booleans[column][row];
+    }
+
+    public long getEpochDay(int row, int column) {
+        return dates[column][row];
+    }
+
+    public int getTextCode(int row, int column) {
+        return textCodes[column][row];
+    }
+
+    /**
+     * Словарь строк пачки: код -> строка
+     */
+    public List<String> getDictionary() {
+        return Collections.unmodifiableList(dictionary);
+    }
+
+    /**
+     * Значение для JDBC (BigDecimal / java.sql.Date / Boolean / String или null)
+     */
+    public Object getValue(int row, int column) {
+        if (isNull(row, column)) {
+            return null;
+        }
+        return switch (types[column]) {
+            case NUMBER -> getDecimal(row, column);
+            case BOOLEAN -> booleans[column][row];
+            case DATE -> java.sql.Date.valueOf(LocalDate.ofEpochDay(dates[column][row]));
+            default -> dictionary.get(textCodes[column][row]);
+        };
+    }
+
+    /**
+     * Строка пачки в виде map колонка -> значение (для медленных путей вставки)
+     */
+    public Map<String, Object> getRowMap(int row) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int c = 0; c < types.length; c++) {
+            map.put(columns.get(c), getValue(row, c));
+        }
+        return map;
+    }
+
+    /**
+     * Оценка объема значений пачки в байтах (для отчета о ходе загрузки): числа - 8, даты - 4,
+     * логические - 1, текст - по длине. NULL не считается
+     */
+    public long estimateBytes() {
+        long bytes = 0;
+        for (int c = 0; c < types.length; c++) {
+            for (int r = 0; r < size; r++) {
+                if (isNull(r, c)) {
+                    continue;
+                }
+                bytes += switch (types[c]) {
+                    case NUMBER -> 8;
+                    case DATE -> 4;
+                    case BOOLEAN -> 1;
+                    default -> dictionary.get(textCodes[c][r]).length();
+                };
+            }
+        }
+        return bytes;
+    }
+
+    private Map<String, Object> toMap(List<Object> values) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int c = 0; c < columns.size(); c++) {
+            map.put(columns.get(c), c < values.size() ? values.get(c) : null);
+        }
+        return map;
+    }
+
+    /**
+     * Строка, не прошедшая приведение типов
+     */
+    public static class RejectedRow {
+        private final int rowIndex;
+        private final String column;
+        private final String message;
+        private final Map<String, Object> values;
+
+        public RejectedRow(int rowIndex, String column, String message, Map<String, Object> values) {
+            this.rowIndex = rowIndex;
+            this.column = column;
+            this.message = message;
+            this.values = values;
+        }
+
+        public int getRowIndex() { return rowIndex; }
+        public String getColumn() { return column; }
+        public String getMessage() { return message; }
+        public Map<String, Object> getValues() { return values; }
+    }
+}
@@ -0,0 +1,212 @@
+package org.tablebuilder.demo.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Минимальный разборщик CSV/TSV поверх FileChannel: кавычки, удвоенные кавычки внутри,
+ * переводы строк внутри кавычек, CRLF. В TSV кавычки - обычный символ (quoting = false).
+ * Нужен только для заголовка и начала файла - тело файла разбирает сам PostgreSQL в COPY
+ */
+public class CsvTokenizer implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char QUOTE = '"';
+
+    private final FileChannel channel;
+    private final CharsetDecoder decoder;
+    private final char delimiter;
+    private final boolean quoting;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private boolean endOfInput;
+    private boolean firstChar = true;
+    private long charsRead;
+    private long charsDecoded;
+    private long bytesDecoded;
+
+    private CsvTokenizer(FileChannel channel, Charset charset, char delimiter, boolean quoting) {
+        this.channel = channel;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.delimiter = delimiter;
+        this.quoting = quoting;
+        chars.flip(); // пустой буфер на чтение
+    }
+
+    public static CsvTokenizer open(Path file, Charset charset, char delimiter) throws IOException {
+        return open(file, charset, delimiter, true);
+    }
+
+    public static CsvTokenizer open(Path file, Charset charset, char delimiter, boolean quoting) throws IOException {
+        return new CsvTokenizer(FileChannel.open(file, StandardOpenOption.READ), charset, delimiter, quoting);
+    }
+
+    /**
+     * Следующая запись файла или null в конце файла
+     */
+    public List<String> nextRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+
+        int c;
+        while ((c = read()) != -1) {
+            any = true;
+            char ch = (char) c;
+            if (quoted) {
+                if (ch == QUOTE) {
+                    int next = peek();
+                    if (next == QUOTE) {
+                        read();
+                        field.append(QUOTE);
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(ch);
+                }
+            } else if (quoting && ch == QUOTE) {
+                quoted = true;
+            } else if (ch == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (ch == '\n' || ch == '\r') {
+                if (ch == '\r' && peek() == '\n') {
+                    read();
+                }
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append(ch);
+            }
+        }
+
+        if (!any) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private int read() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        char ch = chars.get();
+        charsRead++;
+        if (firstChar) {
+            firstChar = false;
+            if (ch == '\uFEFF') { // BOM
+                return read();
+            }
+        }
+        return ch;
+    }
+
+    private int peek() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return chars.get(chars.position());
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            // Декодер уже сброшен: файл без перевода строки в конце читается до -1 повторно
+            return false;
+        }
+        chars.clear();
+        while (chars.position() == 0) {
+            if (!endOfInput && channel.read(bytes) == -1) {
+                endOfInput = true;
+            }
+            bytes.flip();
+            int charsBefore = chars.position();
+            decoder.decode(bytes, chars, endOfInput);
+            bytesDecoded += bytes.position();
+            charsDecoded += chars.position() - charsBefore;
+            bytes.compact();
+            if (endOfInput) {
+                decoder.flush(chars);
+                break;
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    /**
+     * Сколько байт файла разобрано (для многобайтовых кодировок - по среднему числу байт на символ)
+     */
+    public long getBytesRead() {
+        return charsDecoded == 0 ? 0 : charsRead * bytesDecoded / charsDecoded;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Кодировка файла: UTF-8, если начало файла - корректный UTF-8, иначе windows-1251
+     */
+    public static Charset detectCharset(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // читаем начало файла
+            }
+        }
+        buffer.flip();
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // Последний символ мог обрезаться границей буфера - это не ошибка
+        CoderResult result = decoder.decode(buffer, CharBuffer.allocate(BUFFER_SIZE), false);
+        return result.isError() ? Charset.forName("windows-1251") : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Разделитель по первой строке: самый частый из ',', ';' и табуляции вне кавычек
+     */
+    public static char detectDelimiter(Path file, Charset charset) throws IOException {
+        int commas = 0;
+        int semicolons = 0;
+        int tabs = 0;
+        try (CsvTokenizer tokenizer = open(file, charset, '\0')) {
+            boolean quoted = false;
+            int c;
+            while ((c = tokenizer.read()) != -1) {
+                char ch = (char) c;
+                if (ch == QUOTE) {
+                    quoted = !quoted;
+                } else if (!quoted && (ch == '\n' || ch == '\r')) {
+                    break;
+                } else if (!quoted) {
+                    switch (ch) {
+                        case ',' -> commas++;
+                        case ';' -> semicolons++;
+                        case '\t' -> tabs++;
+                        default -> {
+                        }
+                    }
+                }
+            }
+        }
+        if (tabs > commas && tabs > semicolons) {
+            return '\t';
+        }
+        return semicolons > commas ? ';' : ',';
+    }
+}
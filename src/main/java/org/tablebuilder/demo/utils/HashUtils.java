@@ -0,0 +1,50 @@
+package org.tablebuilder.demo.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 содержимого файлов. Данные читаются потоком, целиком в память не загружаются
+ */
+public final class HashUtils {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private HashUtils() {
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * SHA-256 файла в виде hex-строки
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            update(digest, in);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Дописать поток в digest (поток не закрывается)
+     */
+    public static void update(MessageDigest digest, InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+    }
+}
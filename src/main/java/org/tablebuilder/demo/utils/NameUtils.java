@@ -1,9 +1,8 @@
 package org.tablebuilder.demo.utils;
 
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 import java.util.regex.Pattern;
 
 /**
@@ -16,6 +15,9 @@ public class NameUtils {
 
     private static final Pattern VALID_NAME_PATTERN = Pattern.compile("^[a-zA-Z][a-zA-Z0-9_]*$");
 
+    // PostgreSQL молча обрезает идентификаторы длиннее 63 байт
+    public static final int MAX_IDENTIFIER_LENGTH = 63;
+
 
     static { // Ну а что вы хотели ?
         // Основные буквы
@@ -145,9 +147,10 @@ public class NameUtils {
             sanitized = "tbl_" + sanitized;
         }
 
-        // Ограничиваем длину (PostgreSQL limit ~63 bytes)
-        if (sanitized.length() > 50) {
-            sanitized = sanitized.substring(0, 50);
+        // Ограничиваем длину (PostgreSQL limit ~63 bytes): имена из toValidSqlName и withSuffix
+        // до 63 символов должны проходить без изменений, иначе таблица создается под другим именем
+        if (sanitized.length() > MAX_IDENTIFIER_LENGTH) {
+            sanitized = sanitized.substring(0, MAX_IDENTIFIER_LENGTH);
         }
 
         return sanitized.toLowerCase();
@@ -241,4 +244,109 @@ public class NameUtils {
 
         return sanitized;
     }
-}
\ No newline at end of file
+
+    /**
+     * Имя таблицы файла: имя загруженного файла без расширения
+     */
+    public static String fileTableName(String originalFilename) {
+        String baseFileName = originalFilename.replaceAll("\\.[^.]*$", "");
+        if (baseFileName.trim().isEmpty()) {
+            baseFileName = "unknown_file_" + System.currentTimeMillis();
+        }
+
+        String name = toValidSqlName(baseFileName);
+        return name.isEmpty() ? "table_" + System.currentTimeMillis() : name;
+    }
+
+    /**
+     * Имя таблицы листа: имя таблицы файла + имя листа
+     */
+    public static String sheetTableName(String fileTableName, String sheetName, int sheetIndex) {
+        String safeSheetName = toValidSqlName(sheetName);
+        if (safeSheetName.isEmpty()) {
+            safeSheetName = "sheet_" + sheetIndex;
+        }
+
+        String name = toValidSqlName(fileTableName + "__" + safeSheetName);
+        return name.isEmpty() ? "table_" + System.currentTimeMillis() + "_" + sheetIndex : name;
+    }
+
+    /**
+     * Оригинальные имена колонок по ячейкам заголовка (пустая ячейка - Column_N)
+     */
+    public static List<String> headerNames(List<?> headerCells) {
+        List<String> names = new ArrayList<>(headerCells.size());
+        for (int i = 0; i < headerCells.size(); i++) {
+            Object cell = headerCells.get(i);
+            names.add(cell == null || cell.toString().trim().isEmpty()
+                    ? "Column_" + (i + 1)
+                    : cell.toString().trim());
+        }
+        return names;
+    }
+
+    /**
+     * Уникальные SQL-имена колонок. id - суррогатный ключ таблицы, колонка файла с таким именем получит суффикс
+     */
+    public static List<String> generateColumnNames(List<String> originalNames) {
+        Set<String> usedNames = new HashSet<>(Set.of("id"));
+        List<String> names = new ArrayList<>(originalNames.size());
+        for (int i = 0; i < originalNames.size(); i++) {
+            String sqlName = generateUniqueColumnName(originalNames.get(i), i, usedNames);
+            names.add(sqlName);
+            usedNames.add(sqlName);
+        }
+        return names;
+    }
+
+    /**
+     * SQL-имя колонки по имени, заданному пользователем: SQL-имя
+     * или исходное имя из заголовка, без учета регистра. null, если такой колонки нет
+     */
+    public static String resolveColumn(List<String> columnNames, List<String> originalNames, String requested) {
+        if (requested == null || requested.isBlank()) {
+            return null;
+        }
+        String name = requested.trim();
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (columnNames.get(i).equalsIgnoreCase(name)) {
+                return columnNames.get(i);
+            }
+        }
+        for (int i = 0; i < originalNames.size(); i++) {
+            if (originalNames.get(i).equalsIgnoreCase(name)) {
+                return columnNames.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Имя с суффиксом (например, "_stg"), укороченное так, чтобы суффикс не обрезался
+     *
+     * @throws IllegalArgumentException если суффикс не оставляет места для имени
+     */
+    public static String withSuffix(String name, String suffix) {
+        if (suffix.length() >= MAX_IDENTIFIER_LENGTH) {
+            throw new IllegalArgumentException("Suffix is too long for an identifier: " + suffix);
+        }
+        int maxBase = MAX_IDENTIFIER_LENGTH - suffix.length();
+        String base = name.length() > maxBase ? name.substring(0, maxBase) : name;
+        return base + suffix;
+    }
+
+    /**
+     * Имя индекса по колонке таблицы: table_column + suffix. Если оно длиннее 63 символов, то начало
+     * этого имени и хэш полных имен таблицы и колонки - обрезанные имена соседних листов
+     * (file__sheet1, file__sheet2) и длинных колонок не совпадают
+     */
+    public static String indexName(String tableName, String column, String suffix) {
+        String name = tableName + "_" + column + suffix;
+        if (name.length() <= MAX_IDENTIFIER_LENGTH) {
+            return name;
+        }
+        byte[] digest = HashUtils.sha256().digest((tableName + "." + column).getBytes(StandardCharsets.UTF_8));
+        String hash = "_" + HexFormat.of().formatHex(digest, 0, 5);
+        return name.substring(0, MAX_IDENTIFIER_LENGTH - hash.length() - suffix.length()) + hash + suffix;
+    }
+}
@@ -0,0 +1,158 @@
+package org.tablebuilder.demo.utils;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Определение типов колонок по всем значениям за один проход.
+ * Для каждой колонки хранится только набор флагов "все значения - boolean / дата / число",
+ * поэтому память не зависит от числа строк.
+ * Приоритет типов: Boolean -> Date -> Number -> Text
+ */
+public class TypeInferrer {
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("^[+-]?(\\d+([.,]\\d*)?|[.,]\\d+)([eE][+-]?\\d+)?$");
+
+    // Те же форматы, что понимает приведение типов в SQL при загрузке
+    private static final Pattern ISO_DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+    private static final Pattern DOT_DATE = Pattern.compile("\\d{2}\\.\\d{2}\\.\\d{4}");
+    private static final Pattern SLASH_DATE = Pattern.compile("\\d{2}/\\d{2}/\\d{4}");
+    private static final DateTimeFormatter ISO_FORMAT = strict("uuuu-MM-dd");
+    private static final DateTimeFormatter DOT_FORMAT = strict("dd.MM.uuuu");
+    private static final DateTimeFormatter SLASH_FORMAT = strict("dd/MM/uuuu");
+
+    private final boolean[] allBooleans;
+    private final boolean[] allNumbers;
+    private final boolean[] allDates;
+    private final int[] nonEmptyCounts;
+
+    public TypeInferrer(int columnCount) {
+        this.allBooleans = new boolean[columnCount];
+        this.allNumbers = new boolean[columnCount];
+        this.allDates = new boolean[columnCount];
+        this.nonEmptyCounts = new int[columnCount];
+        Arrays.fill(allBooleans, true);
+        Arrays.fill(allNumbers, true);
+        Arrays.fill(allDates, true);
+    }
+
+    /**
+     * Учесть строку (значения по порядку колонок)
+     */
+    public void accept(List<Object> values) {
+        int count = Math.min(values.size(), nonEmptyCounts.length);
+        for (int c = 0; c < count; c++) {
+            accept(c, values.get(c));
+        }
+    }
+
+    public void accept(int column, Object value) {
+        if (value == null || value.toString().trim().isEmpty()) {
+            return;
+        }
+        nonEmptyCounts[column]++;
+
+        // Сброшенный флаг больше не проверяем
+        if (allBooleans[column] && !isStrictBoolean(value)) {
+            allBooleans[column] = false;
+        }
+        if (allNumbers[column] && !isNumeric(value)) {
+            allNumbers[column] = false;
+        }
+        if (allDates[column] && !isDate(value)) {
+            allDates[column] = false;
+        }
+    }
+
+    public ColumnType resolve(int column) {
+        if (nonEmptyCounts[column] == 0) {
+            return ColumnType.TEXT; // Все значения пустые
+        }
+        if (allBooleans[column] && nonEmptyCounts[column] >= 2) { // Нужно хотя бы 2 boolean значения
+            return ColumnType.BOOLEAN;
+        }
+        if (allDates[column]) {
+            return ColumnType.DATE;
+        }
+        if (allNumbers[column]) {
+            return ColumnType.NUMBER;
+        }
+        return ColumnType.TEXT;
+    }
+
+    public List<ColumnType> resolveAll() {
+        List<ColumnType> types = new ArrayList<>(nonEmptyCounts.length);
+        for (int c = 0; c < nonEmptyCounts.length; c++) {
+            types.add(resolve(c));
+        }
+        return types;
+    }
+
+    /**
+     * Строгая проверка на Boolean (только явные значения)
+     */
+    public static boolean isStrictBoolean(Object value) {
+        if (value == null) return false;
+
+        String str = value.toString().trim().toLowerCase();
+        return "true".equals(str) || "false".equals(str) ||
+                "1".equals(str) || "0".equals(str);
+    }
+
+    /**
+     * Проверка на число (десятичный разделитель - точка или запятая)
+     */
+    public static boolean isNumeric(Object value) {
+        if (value == null) return false;
+
+        if (value instanceof Number number) {
+            double d = number.doubleValue();
+            return !Double.isNaN(d) && !Double.isInfinite(d);
+        }
+
+        String str = value.toString().trim();
+        return !str.isEmpty() && NUMBER_PATTERN.matcher(str).matches();
+    }
+
+    /**
+     * Проверка на дату: java.util.Date или строка yyyy-mm-dd, dd.mm.yyyy, dd/mm/yyyy с существующей датой
+     */
+    public static boolean isDate(Object value) {
+        if (value == null) return false;
+
+        if (value instanceof java.util.Date || value instanceof LocalDate) {
+            return true;
+        }
+
+        String str = value.toString().trim();
+        if (ISO_DATE.matcher(str).matches()) {
+            return isValidDate(str, ISO_FORMAT);
+        }
+        if (DOT_DATE.matcher(str).matches()) {
+            return isValidDate(str, DOT_FORMAT);
+        }
+        if (SLASH_DATE.matcher(str).matches()) {
+            return isValidDate(str, SLASH_FORMAT);
+        }
+        return false;
+    }
+
+    private static boolean isValidDate(String str, DateTimeFormatter format) {
+        try {
+            LocalDate.parse(str, format);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static DateTimeFormatter strict(String pattern) {
+        return DateTimeFormatter.ofPattern(pattern).withResolverStyle(ResolverStyle.STRICT);
+    }
+}
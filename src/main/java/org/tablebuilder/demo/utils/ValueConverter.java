@@ -0,0 +1,118 @@
+package org.tablebuilder.demo.utils;
+
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Приведение значений ячеек к типу колонки.
+ * Неприводимое значение - IllegalArgumentException (строка попадает в ошибки, а не в таблицу)
+ */
+public final class ValueConverter {
+
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("yyyy-MM-dd"), DateTimeFormatter.ofPattern("dd.MM.yyyy"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy"), DateTimeFormatter.ofPattern("MM/dd/yyyy"),
+            DateTimeFormatter.ofPattern("yyyy.MM.dd"), DateTimeFormatter.ofPattern("dd-MM-yyyy"),
+            DateTimeFormatter.ofPattern("MM-dd-yyyy")
+    );
+
+    private ValueConverter() {
+    }
+
+    /**
+     * Пустое значение (null или пустая строка) - в таблицу пишется NULL
+     */
+    public static boolean isEmpty(Object value) {
+        return value == null || (value instanceof String str && str.trim().isEmpty());
+    }
+
+    public static BigDecimal toBigDecimal(Object value) {
+        if (value instanceof BigDecimal decimal) {
+            return decimal;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        if (value instanceof Number number) {
+            double d = number.doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new IllegalArgumentException("Value '" + value + "' is not a valid NUMERIC");
+            }
+            // Double.toString дает лишние нули в дробной части (5.0E-4)
+            return BigDecimal.valueOf(d).stripTrailingZeros();
+        }
+        if (value instanceof String str) {
+            try {
+                return new BigDecimal(str.trim().replace(",", "."));
+            } catch (NumberFormatException e) {
+                // ниже общая ошибка
+            }
+        }
+        throw new IllegalArgumentException("Value '" + value + "' cannot be converted to NUMERIC");
+    }
+
+    public static LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate localDate) {
+            return localDate;
+        }
+        if (value instanceof java.sql.Date sqlDate) {
+            return sqlDate.toLocalDate();
+        }
+        if (value instanceof Date date) {
+            return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        }
+        if (value instanceof String str) {
+            String dateStr = str.trim();
+            for (DateTimeFormatter format : DATE_FORMATS) {
+                try {
+                    return LocalDate.parse(dateStr, format);
+                } catch (DateTimeParseException e) {
+                    // пробуем следующий формат
+                }
+            }
+        }
+        throw new IllegalArgumentException("Value '" + value + "' cannot be converted to DATE");
+    }
+
+    public static boolean toBoolean(Object value) {
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        if (value instanceof Number number) {
+            return number.doubleValue() != 0;
+        }
+        String str = value.toString().trim().toLowerCase();
+        switch (str) {
+            case "true", "t", "1", "yes", "y", "да", "on":
+                return true;
+            case "false", "f", "0", "no", "n", "нет", "off":
+                return false;
+            default:
+                throw new IllegalArgumentException("Value '" + value + "' cannot be converted to BOOLEAN");
+        }
+    }
+
+    public static String toText(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            return toBigDecimal(value).toPlainString();
+        }
+        if (value instanceof java.sql.Date sqlDate) {
+            return sqlDate.toLocalDate().toString();
+        }
+        if (value instanceof Date date) {
+            LocalDateTime dateTime = LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+            return dateTime.toLocalTime().equals(LocalTime.MIDNIGHT)
+                    ? dateTime.toLocalDate().toString()
+                    : new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(date);
+        }
+        return value.toString();
+    }
+}
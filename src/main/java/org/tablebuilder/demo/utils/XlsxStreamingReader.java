@@ -0,0 +1,568 @@
+package org.tablebuilder.demo.utils;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.ZipPackagePart;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Потоковое (SAX) чтение XLSX без построения XSSFWorkbook в памяти.
+ * В памяти держится только таблица общих строк, стили и текущая строка листа.
+ */
+public class XlsxStreamingReader implements AutoCloseable {
+
+    private final OPCPackage pkg;
+    private final SharedStrings sharedStrings;
+    private final StylesTable styles;
+    private final List<SheetRef> sheets = new ArrayList<>();
+
+    private XlsxStreamingReader(OPCPackage pkg, boolean lazySharedStrings) throws IOException {
+        this.pkg = pkg;
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            if (lazySharedStrings) {
+                List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+                this.sharedStrings = parts.isEmpty() ? null : new LazySharedStrings(parts.get(0));
+            } else {
+                this.sharedStrings = new ReadOnlySharedStringsTable(pkg, false);
+            }
+            this.styles = reader.getStylesTable();
+
+            XSSFReader.SheetIterator iterator = (XSSFReader.SheetIterator) reader.getSheetsData();
+            int index = 0;
+            while (iterator.hasNext()) {
+                // Сам поток листа здесь не читаем, запоминаем только part
+                try (InputStream ignored = iterator.next()) {
+                    sheets.add(new SheetRef(index++, iterator.getSheetName(), iterator.getSheetPart()));
+                }
+            }
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Invalid XLSX file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Открыть книгу из потока
+     */
+    public static XlsxStreamingReader open(InputStream in) throws IOException {
+        try {
+            return new XlsxStreamingReader(OPCPackage.open(in), false);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Invalid XLSX file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Открыть книгу из файла. Части читаются из zip по требованию, файл целиком в память не грузится
+     */
+    public static XlsxStreamingReader open(File file) throws IOException {
+        try {
+            return new XlsxStreamingReader(OPCPackage.open(file, PackageAccess.READ), false);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Invalid XLSX file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Открыть книгу для просмотра начала листов. Общие строки читаются лениво - только
+     * до наибольшего индекса, который встретился в прочитанных строках
+     */
+    public static XlsxStreamingReader openForPreview(File file) throws IOException {
+        try {
+            return new XlsxStreamingReader(OPCPackage.open(file, PackageAccess.READ), true);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Invalid XLSX file: " + e.getMessage(), e);
+        }
+    }
+
+    public List<SheetRef> getSheets() {
+        return Collections.unmodifiableList(sheets);
+    }
+
+    /**
+     * Прочитать лист построчно. Обработчик получает значения ячеек по индексу колонки
+     * (Long/Double/Date/Boolean/String или null)
+     */
+    public void readSheet(SheetRef sheet, RowHandler handler) throws IOException {
+        try (InputStream in = sheet.getPart().getInputStream()) {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new SheetHandler(sharedStrings, styles, handler));
+            parser.parse(new InputSource(in));
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Error parsing sheet '" + sheet.getName() + "': " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Прочитать не больше maxRows строк листа (включая заголовок) и остановить разбор
+     *
+     * @return сколько байт XML листа прочитано до остановки или -1, если лист прочитан целиком
+     */
+    public long readSheetPrefix(SheetRef sheet, int maxRows, RowHandler handler) throws IOException {
+        int[] rows = {0};
+        RowHandler limited = (rowIndex, values) -> {
+            handler.onRow(rowIndex, values);
+            if (++rows[0] >= maxRows) {
+                throw new StopParsingRuntimeException();
+            }
+        };
+        try (CountingInputStream in = new CountingInputStream(sheet.getPart().getInputStream())) {
+            try {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new SheetHandler(sharedStrings, styles, limited));
+                parser.parse(new InputSource(in));
+                return -1;
+            } catch (StopParsingRuntimeException e) {
+                return in.getCount();
+            }
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Error parsing sheet '" + sheet.getName() + "': " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Размер XML листа без сжатия (по записи zip) или -1
+     */
+    public long getUncompressedSize(SheetRef sheet) {
+        return sheet.getPart().getSize();
+    }
+
+    /**
+     * Размер листа в zip или -1
+     */
+    public long getCompressedSize(SheetRef sheet) {
+        if (sheet.getPart() instanceof ZipPackagePart zipPart && zipPart.getZipArchive() != null) {
+            return zipPart.getZipArchive().getCompressedSize();
+        }
+        return -1;
+    }
+
+    /**
+     * Оценка числа строк листа по элементу dimension (включая заголовок).
+     * Читается только начало XML листа; -1 если dimension не задан
+     */
+    public int estimateRowCount(SheetRef sheet) throws IOException {
+        int[] lastRow = {-1};
+        try (InputStream in = sheet.getPart().getInputStream()) {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes)
+                        throws SAXException {
+                    if ("dimension".equals(localName)) {
+                        String ref = attributes.getValue("ref");
+                        if (ref != null) {
+                            lastRow[0] = CellRangeAddress.valueOf(ref).getLastRow();
+                        }
+                        throw new StopParsingException();
+                    }
+                    if ("sheetData".equals(localName)) {
+                        throw new StopParsingException();
+                    }
+                }
+            });
+            parser.parse(new InputSource(in));
+        } catch (StopParsingException e) {
+            // dimension найден (или его нет) - дальше лист не читаем
+        } catch (SAXException | ParserConfigurationException | IllegalArgumentException e) {
+            return -1;
+        }
+        return lastRow[0] >= 0 ? lastRow[0] + 1 : -1;
+    }
+
+    /**
+     * Отпечаток содержимого листа по центральному каталогу zip: CRC-32 и размер XML листа,
+     * общих строк и стилей книги. Ничего не распаковывается. CRC считается по несжатым данным,
+     * поэтому пересжатие книги отпечаток не меняет; изменение общих строк меняет отпечаток
+     * всех листов (лишняя перезагрузка, но не пропуск изменений)
+     *
+     * @return SHA-256 описания частей в hex или null, если часть прочитана не из zip с CRC
+     */
+    public String sheetChecksum(SheetRef sheet) {
+        StringBuilder parts = new StringBuilder();
+        if (!appendChecksum(parts, sheet.getPart())) {
+            return null;
+        }
+        for (String contentType : List.of(XSSFRelation.SHARED_STRINGS.getContentType(),
+                XSSFRelation.STYLES.getContentType())) {
+            for (PackagePart part : pkg.getPartsByContentType(contentType)) {
+                if (!appendChecksum(parts, part)) {
+                    return null;
+                }
+            }
+        }
+        MessageDigest digest = HashUtils.sha256();
+        digest.update(parts.toString().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static boolean appendChecksum(StringBuilder parts, PackagePart part) {
+        if (!(part instanceof ZipPackagePart zipPart) || zipPart.getZipArchive() == null) {
+            return false;
+        }
+        ZipArchiveEntry entry = zipPart.getZipArchive();
+        if (entry.getCrc() < 0 || entry.getSize() < 0) {
+            return false;
+        }
+        parts.append(part.getPartName().getName()).append(':')
+                .append(Long.toHexString(entry.getCrc())).append(':').append(entry.getSize()).append('\n');
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (sharedStrings instanceof LazySharedStrings lazy) {
+            lazy.close();
+        }
+        // Пакет открыт только на чтение - сохранять нечего
+        pkg.revert();
+    }
+
+    /**
+     * Обработчик строк листа
+     */
+    public interface RowHandler {
+        void onRow(int rowIndex, List<Object> values);
+    }
+
+    /**
+     * Ссылка на лист внутри книги
+     */
+    public static class SheetRef {
+        private final int index;
+        private final String name;
+        private final PackagePart part;
+
+        public SheetRef(int index, String name, PackagePart part) {
+            this.index = index;
+            this.name = name;
+            this.part = part;
+        }
+
+        public int getIndex() { return index; }
+        public String getName() { return name; }
+        public PackagePart getPart() { return part; }
+    }
+
+    private static class StopParsingException extends SAXException {
+    }
+
+    // Остановка разбора из RowHandler (onRow не объявляет SAXException)
+    private static class StopParsingRuntimeException extends RuntimeException {
+        StopParsingRuntimeException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Общие строки, которые разбираются потоком (StAX) только по мере обращения к ним.
+     * Для первых строк листа обычно нужно лишь начало таблицы строк
+     */
+    private static class LazySharedStrings implements SharedStrings {
+        private final PackagePart part;
+        private final List<String> items = new ArrayList<>();
+        private InputStream in;
+        private XMLStreamReader xml;
+        private boolean exhausted;
+
+        LazySharedStrings(PackagePart part) {
+            this.part = part;
+        }
+
+        @Override
+        public synchronized RichTextString getItemAt(int idx) {
+            try {
+                while (items.size() <= idx && !exhausted) {
+                    readNextItem();
+                }
+            } catch (IOException | XMLStreamException e) {
+                throw new IllegalStateException("Error reading shared strings: " + e.getMessage(), e);
+            }
+            if (idx >= items.size()) {
+                throw new IndexOutOfBoundsException("Shared string index " + idx + " out of range");
+            }
+            return new XSSFRichTextString(items.get(idx));
+        }
+
+        /**
+         * Следующий элемент si: текст всех t, кроме фонетических подсказок (rPh)
+         */
+        private void readNextItem() throws IOException, XMLStreamException {
+            if (xml == null) {
+                in = part.getInputStream();
+                xml = XMLHelper.newXMLInputFactory().createXMLStreamReader(in);
+            }
+            StringBuilder text = null;
+            int phoneticDepth = 0;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (xml.getLocalName()) {
+                        case "si" -> text = new StringBuilder();
+                        case "rPh" -> phoneticDepth++;
+                        case "t" -> {
+                            if (text != null && phoneticDepth == 0) {
+                                text.append(xml.getElementText());
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if ("rPh".equals(xml.getLocalName())) {
+                        phoneticDepth--;
+                    } else if ("si".equals(xml.getLocalName()) && text != null) {
+                        items.add(text.toString());
+                        return;
+                    }
+                }
+            }
+            exhausted = true;
+            close();
+        }
+
+        @Override
+        public int getCount() {
+            return items.size();
+        }
+
+        @Override
+        public int getUniqueCount() {
+            return items.size();
+        }
+
+        synchronized void close() {
+            try {
+                if (xml != null) {
+                    xml.close();
+                }
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException | XMLStreamException e) {
+                // только чтение - ошибку закрытия игнорируем
+            }
+        }
+    }
+
+    /**
+     * SAX-обработчик XML листа. В отличие от XSSFSheetXMLHandler отдает типизированные
+     * значения, а не отформатированные строки
+     */
+    private static class SheetHandler extends DefaultHandler {
+        private final SharedStrings sharedStrings;
+        private final StylesTable styles;
+        private final RowHandler handler;
+        private final Map<Integer, Boolean> dateStyles = new HashMap<>();
+
+        private final StringBuilder text = new StringBuilder();
+        private List<Object> rowValues;
+        private int rowIndex = -1;
+        private int columnIndex = -1;
+        private String cellType;
+        private String cellStyle;
+        private boolean collectText;
+        // Внутри фонетической подсказки (rPh) текст t в значение не входит
+        private int phoneticDepth;
+
+        SheetHandler(SharedStrings sharedStrings, StylesTable styles, RowHandler handler) {
+            this.sharedStrings = sharedStrings;
+            this.styles = styles;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row" -> {
+                    String r = attributes.getValue("r");
+                    rowIndex = r != null ? Integer.parseInt(r) - 1 : rowIndex + 1;
+                    rowValues = new ArrayList<>();
+                    columnIndex = -1;
+                }
+                case "c" -> {
+                    String ref = attributes.getValue("r");
+                    columnIndex = ref != null ? columnIndex(ref) : columnIndex + 1;
+                    cellType = attributes.getValue("t");
+                    cellStyle = attributes.getValue("s");
+                    text.setLength(0);
+                    phoneticDepth = 0;
+                }
+                case "rPh" -> phoneticDepth++;
+                case "v", "t" -> collectText = phoneticDepth == 0;
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collectText) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v", "t" -> collectText = false;
+                case "rPh" -> phoneticDepth--;
+                case "c" -> {
+                    while (rowValues.size() <= columnIndex) {
+                        rowValues.add(null);
+                    }
+                    rowValues.set(columnIndex, convertCell());
+                }
+                case "row" -> {
+                    handler.onRow(rowIndex, rowValues);
+                    rowValues = null;
+                }
+                default -> {
+                }
+            }
+        }
+
+        /**
+         * Номер колонки (с 0) по буквам ссылки ячейки: "AB12" -> 27. Без CellReference на каждую ячейку
+         */
+        static int columnIndex(String ref) {
+            int column = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    column = column * 26 + (c - 'A' + 1);
+                } else if (c >= 'a' && c <= 'z') {
+                    column = column * 26 + (c - 'a' + 1);
+                } else if (c != '$') {
+                    break;
+                }
+            }
+            return column - 1;
+        }
+
+        /**
+         * Значение ячейки по ее типу (аналог ExcelImportService.getCellValue для DOM)
+         */
+        private Object convertCell() {
+            String raw = text.toString();
+            if (raw.isEmpty()) {
+                return null;
+            }
+
+            try {
+                if (cellType == null || "n".equals(cellType)) {
+                    double numericValue = Double.parseDouble(raw);
+                    if (isDateStyle() && DateUtil.isValidExcelDate(numericValue)) {
+                        return DateUtil.getJavaDate(numericValue);
+                    }
+                    // Для целых чисел возвращаем Long, для дробных - Double
+                    if (numericValue == Math.floor(numericValue) && !Double.isInfinite(numericValue)) {
+                        return (long) numericValue;
+                    }
+                    return numericValue;
+                }
+
+                switch (cellType) {
+                    case "s": {
+                        String value = sharedStrings.getItemAt(Integer.parseInt(raw)).getString().trim();
+                        return value.isEmpty() ? null : value;
+                    }
+                    case "inlineStr": {
+                        String value = raw.trim();
+                        return value.isEmpty() ? null : value;
+                    }
+                    case "str":
+                        return raw;
+                    case "b":
+                        return "1".equals(raw) || "true".equalsIgnoreCase(raw);
+                    default: // e - ошибка формулы
+                        return null;
+                }
+            } catch (Exception e) {
+                System.err.println("Error reading cell value at row " + (rowIndex + 1)
+                        + ", column " + (columnIndex + 1) + ": " + e.getMessage());
+                return null;
+            }
+        }
+
+        private boolean isDateStyle() {
+            if (cellStyle == null || styles == null) {
+                return false;
+            }
+            int styleIndex = Integer.parseInt(cellStyle);
+            return dateStyles.computeIfAbsent(styleIndex, idx -> {
+                XSSFCellStyle style = styles.getStyleAt(idx);
+                if (style == null) {
+                    return false;
+                }
+                int formatIndex = style.getDataFormat();
+                String formatString = style.getDataFormatString();
+                if (formatString == null) {
+                    formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+                }
+                return formatString != null && DateUtil.isADateFormat(formatIndex, formatString);
+            });
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.tablebuilder.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.tablebuilder.demo.exception.LoadCancelledException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlankLineFilterInputStreamTests {
+
+	@Test
+	void blankLinesOutsideQuotesAreDropped() throws IOException {
+		assertEquals("a,b\n1,2\r\n3,4\n", filter("\n\na,b\n\n1,2\r\n\r\n3,4\n\n", 64));
+		assertEquals("a,b\r\n1,2", filter("a,b\r\n\r\n1,2", 64));
+	}
+
+	@Test
+	void blankLinesInsideQuotesAreKept() throws IOException {
+		String content = "id,text\n1,\"first\n\nthird\"\n\n2,\"\"\"q\"\"\n\"\n";
+
+		assertEquals("id,text\n1,\"first\n\nthird\"\n2,\"\"\"q\"\"\n\"\n", filter(content, 64));
+	}
+
+	@Test
+	void stateCarriesAcrossReadCalls() throws IOException {
+		String content = "a;\"x\n\ny\"\n\n\nb;c\n\n";
+
+		// Блоки по одному-три байта: кавычка и перевод строки попадают на границы блоков
+		for (int block = 1; block <= 3; block++) {
+			assertEquals("a;\"x\n\ny\"\nb;c\n", filter(content, block), "block " + block);
+		}
+	}
+
+	@Test
+	void multiByteTextIsUntouched() throws IOException {
+		Charset cp1251 = Charset.forName("windows-1251");
+		String content = "имя;город\n\nИван;\"Москва\n\"\n";
+		byte[] filtered = filterBytes(content.getBytes(cp1251), 4, null);
+
+		assertEquals("имя;город\nИван;\"Москва\n\"\n", new String(filtered, cp1251));
+		assertEquals("имя;город\nИван;\"Москва\n\"\n",
+				new String(filterBytes(content.getBytes(StandardCharsets.UTF_8), 5, null), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void cancellationStopsReading() {
+		CancellationToken token = new CancellationToken();
+		token.cancel("stop");
+
+		assertThrows(LoadCancelledException.class, () -> filterBytes("a\n".getBytes(StandardCharsets.UTF_8), 64, token));
+	}
+
+	@Test
+	void quotesAreOrdinaryWithoutQuoting() throws IOException {
+		// TSV: непарная кавычка не открывает поле, пустые строки после нее все равно удаляются
+		String content = "id\tname\n1\t5\" pipe\n\n2\tx\n\n";
+
+		assertEquals("id\tname\n1\t5\" pipe\n2\tx\n", filter(content, 64, false));
+		// С кавычками весь хвост после непарной кавычки - внутри поля
+		assertEquals(content, filter(content, 64, true));
+	}
+
+	private static String filter(String content, int blockSize) throws IOException {
+		return filter(content, blockSize, true);
+	}
+
+	private static String filter(String content, int blockSize, boolean quoting) throws IOException {
+		return new String(filterBytes(content.getBytes(StandardCharsets.UTF_8), blockSize, quoting, null),
+				StandardCharsets.UTF_8);
+	}
+
+	private static byte[] filterBytes(byte[] content, int blockSize, CancellationToken token) throws IOException {
+		return filterBytes(content, blockSize, true, token);
+	}
+
+	private static byte[] filterBytes(byte[] content, int blockSize, boolean quoting, CancellationToken token)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = new CsvImportService.BlankLineFilterInputStream(new ByteArrayInputStream(content),
+				quoting, token)) {
+			byte[] buffer = new byte[blockSize];
+			int read;
+			while ((read = in.read(buffer, 0, blockSize)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,93 @@
+package org.tablebuilder.demo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.tablebuilder.demo.model.ExcelImportResult;
+import org.tablebuilder.demo.model.ImportOptions;
+import org.tablebuilder.demo.store.TableColumnRepository;
+import org.tablebuilder.demo.store.TableList;
+import org.tablebuilder.demo.store.TableListRepository;
+import org.tablebuilder.demo.store.UploadedTable;
+import org.tablebuilder.demo.store.UploadedTableRepository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Импорт CSV/TSV через COPY против локального PostgreSQL
+ */
+@SpringBootTest
+class CsvImportServiceTests {
+
+	private static final String TSV_FILE = "tsv_quote_test.tsv";
+
+	@TempDir
+	Path dir;
+
+	@Autowired
+	private CsvImportService csvImportService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private RowCountService rowCountService;
+
+	@Autowired
+	private UploadedTableRepository uploadedTableRepository;
+
+	@Autowired
+	private TableListRepository tableListRepository;
+
+	@Autowired
+	private TableColumnRepository tableColumnRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@AfterEach
+	void deleteImport() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			UploadedTable table = uploadedTableRepository.findByDisplayName(TSV_FILE);
+			if (table == null) {
+				return;
+			}
+			for (TableList list : tableListRepository.findByTableId(table.getId())) {
+				rowCountService.remove(list.getListName());
+				jdbcTemplate.execute("DROP TABLE IF EXISTS " + list.getListName());
+			}
+			tableColumnRepository.deleteByTableId(table.getId());
+			tableListRepository.deleteByTableId(table.getId());
+			uploadedTableRepository.delete(table);
+		});
+	}
+
+	@Test
+	void tsvWithStrayQuotesIsLoadedAsText() throws IOException {
+		// Кавычки в TSV - часть значения: дюймы, непарная кавычка, значение целиком в кавычках
+		Path file = Files.writeString(dir.resolve("upload.tsv"),
+				"num\tname\n1\t5\" pipe\n2\t\"quoted\"\n3\t\"open\n4\tplain\n", StandardCharsets.UTF_8);
+
+		ExcelImportResult result = csvImportService.importCsv(file, TSV_FILE, "test", ImportOptions.defaults(),
+				ImportListener.NONE);
+
+		assertTrue(result.isSuccess(), result.getMessage());
+		assertEquals(4, result.getRowsImported());
+		List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+				"SELECT * FROM " + result.getTableName() + " ORDER BY id");
+		assertEquals(List.of("5\" pipe", "\"quoted\"", "\"open", "plain"),
+				rows.stream().map(row -> row.get("name")).toList());
+	}
+}
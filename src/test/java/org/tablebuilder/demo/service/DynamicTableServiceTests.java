@@ -0,0 +1,83 @@
+package org.tablebuilder.demo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.tablebuilder.demo.utils.ColumnType;
+import org.tablebuilder.demo.utils.NameUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Переключение staging-таблицы против локального PostgreSQL
+ */
+@SpringBootTest
+class DynamicTableServiceTests {
+
+	// 58 символов: имя sequence staging-таблицы PostgreSQL обрезает до имени sequence основной
+	private static final String LONG_TABLE = "long_" + "x".repeat(50) + "_l1";
+	// Соседний лист: обрезанные имена его ключа и sequence совпадают с именами первого
+	private static final String SIBLING_TABLE = "long_" + "x".repeat(50) + "_l2";
+
+	@Autowired
+	private DynamicTableService dynamicTableService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@AfterEach
+	void dropTables() {
+		for (String table : List.of(LONG_TABLE, SIBLING_TABLE)) {
+			jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+			jdbcTemplate.execute("DROP TABLE IF EXISTS " + NameUtils.withSuffix(table, "_stg"));
+		}
+	}
+
+	@Test
+	void repeatedSwapsOfLongTableName() {
+		assertEquals(58, LONG_TABLE.length());
+		for (int swap = 0; swap < 3; swap++) {
+			swapIn(LONG_TABLE);
+
+			assertEquals(NameUtils.withSuffix(LONG_TABLE, "_id_seq"), jdbcTemplate.queryForObject(
+					"SELECT c.relname FROM pg_class c WHERE c.oid = CAST(pg_get_serial_sequence(?, 'id') AS regclass)",
+					String.class, LONG_TABLE));
+			assertEquals(NameUtils.withSuffix(LONG_TABLE, "_pkey"), jdbcTemplate.queryForObject(
+					"SELECT conname FROM pg_constraint WHERE conrelid = to_regclass(?) AND contype = 'p'",
+					String.class, LONG_TABLE));
+			// Новые строки получают id из переименованной sequence
+			jdbcTemplate.update("INSERT INTO " + LONG_TABLE + " (v) VALUES ('x')");
+		}
+	}
+
+	@Test
+	void siblingSheetsWithSameTruncatedNamesSwapIndependently() {
+		for (int swap = 0; swap < 3; swap++) {
+			swapIn(LONG_TABLE);
+			swapIn(SIBLING_TABLE);
+
+			for (String table : List.of(LONG_TABLE, SIBLING_TABLE)) {
+				jdbcTemplate.update("INSERT INTO " + table + " (v) VALUES ('x')");
+				assertEquals(1, jdbcTemplate.queryForObject("SELECT count(*) FROM " + table, Integer.class));
+			}
+		}
+		// Ожидаемое имя у одного из листов, у другого - свободное имя, выбранное PostgreSQL
+		assertNotNull(jdbcTemplate.queryForObject("SELECT to_regclass(?)", String.class,
+				NameUtils.withSuffix(LONG_TABLE, "_id_seq")));
+	}
+
+	/**
+	 * Как при повторном импорте: staging-таблица рядом со старой, затем старая удаляется, а staging переименовывается
+	 */
+	private void swapIn(String tableName) {
+		String staged = NameUtils.withSuffix(tableName, "_stg");
+		dynamicTableService.createTypedTable(staged, List.of("v"), List.of(ColumnType.TEXT), false);
+		jdbcTemplate.execute("DROP TABLE IF EXISTS " + tableName);
+		jdbcTemplate.execute("ALTER TABLE " + staged + " RENAME TO " + tableName);
+		dynamicTableService.renameOwnedObjects(tableName);
+	}
+}
@@ -0,0 +1,101 @@
+package org.tablebuilder.demo.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.tablebuilder.demo.exception.ImportRejectedException;
+import org.tablebuilder.demo.exception.LoadCancelledException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Очередь допуска: отмененный билет сразу уходит из очереди и не занимает память
+ */
+class ImportAdmissionServiceTests {
+
+	@TempDir
+	Path dir;
+
+	private ImportAdmissionService service;
+	private Path file;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		service = new ImportAdmissionService();
+		// Бюджет на один импорт: CSV стоит min(sheet-working-set, 2 * размер)
+		ReflectionTestUtils.setField(service, "memoryBudget", DataSize.ofKilobytes(64));
+		ReflectionTestUtils.setField(service, "sheetWorkingSet", DataSize.ofKilobytes(64));
+		ReflectionTestUtils.setField(service, "maxQueue", 1);
+		ReflectionTestUtils.setField(service, "waitTimeout", Duration.ofSeconds(30));
+		ReflectionTestUtils.setField(service, "retryAfter", Duration.ofSeconds(30));
+		ReflectionTestUtils.setField(service, "sheetParallelism", 1);
+		service.init();
+
+		file = dir.resolve("data.csv");
+		Files.write(file, new byte[64 * 1024]);
+	}
+
+	@Test
+	void cancelWhileQueuedLeavesQueueWithoutMemory() throws Exception {
+		ImportAdmissionService.Ticket running = service.reserve(file, "a.csv");
+		ImportAdmissionService.Ticket waiting = service.reserve(file, "b.csv");
+		assertEquals(1, service.getStats().getQueued());
+
+		CompletableFuture<Void> await = CompletableFuture.runAsync(() -> waiting.await(null));
+		Thread.sleep(100);
+		assertFalse(await.isDone());
+
+		waiting.cancel();
+		Throwable error = assertThrows(Exception.class, () -> await.get(5, TimeUnit.SECONDS)).getCause();
+		assertInstanceOf(LoadCancelledException.class, error);
+
+		// Место в очереди свободно сразу, память по-прежнему у первого импорта
+		assertEquals(0, service.getStats().getQueued());
+		assertEquals(1, service.getStats().getRunning());
+		ImportAdmissionService.Ticket next = service.reserve(file, "c.csv");
+		assertEquals(1, service.getStats().getQueued());
+		next.close();
+
+		// После закрытия отмененного билета память не возвращается повторно
+		waiting.close();
+		running.close();
+		assertEquals(0, service.getStats().getUsedBytes());
+		assertEquals(0, service.getStats().getRunning());
+	}
+
+	@Test
+	void cancelBeforeAwaitNeverAcquires() {
+		ImportAdmissionService.Ticket running = service.reserve(file, "a.csv");
+		ImportAdmissionService.Ticket waiting = service.reserve(file, "b.csv");
+		waiting.cancel();
+		running.close();
+
+		// Память свободна, но отмененный билет ее не берет
+		assertThrows(LoadCancelledException.class, () -> waiting.await(null));
+		assertEquals(0, service.getStats().getQueued());
+		assertEquals(0, service.getStats().getUsedBytes());
+		assertFalse(Thread.currentThread().isInterrupted());
+		waiting.close();
+		assertEquals(0, service.getStats().getUsedBytes());
+	}
+
+	@Test
+	void fullQueueIsRejected() {
+		ImportAdmissionService.Ticket running = service.reserve(file, "a.csv");
+		ImportAdmissionService.Ticket waiting = service.reserve(file, "b.csv");
+
+		assertThrows(ImportRejectedException.class, () -> service.reserve(file, "c.csv"));
+
+		waiting.close();
+		running.close();
+	}
+}
@@ -0,0 +1,206 @@
+package org.tablebuilder.demo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.tablebuilder.demo.model.PageableResponse;
+import org.tablebuilder.demo.model.SearchRequest;
+import org.tablebuilder.demo.model.SortRequest;
+import org.tablebuilder.demo.store.TableListRepository;
+import org.tablebuilder.demo.store.UploadedTable;
+import org.tablebuilder.demo.store.UploadedTableRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Keyset-страницы против локального PostgreSQL: обход всех страниц курсорами должен дать
+ * те же строки в том же порядке, что и один запрос с ORDER BY
+ */
+@SpringBootTest
+class KeysetPaginationTests {
+
+	private static final String TABLE = "keyset_test";
+	private static final String FILE = "keyset_test.xlsx";
+	private static final String SHEET = "Sheet";
+	private static final int ROWS = 36;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private KeysetPagination keysetPagination;
+
+	@Autowired
+	private TableDataService tableDataService;
+
+	@Autowired
+	private MetadataService metadataService;
+
+	@Autowired
+	private RowCountService rowCountService;
+
+	@Autowired
+	private UploadedTableRepository uploadedTableRepository;
+
+	@Autowired
+	private TableListRepository tableListRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@BeforeEach
+	void createTable() {
+		dropTable();
+		// a и d без NULL, b - с NULL в каждой пятой строке; много повторов, чтобы порядок решал id
+		jdbcTemplate.execute("CREATE TABLE " + TABLE + " (id BIGSERIAL PRIMARY KEY, a INTEGER NOT NULL, " +
+				"b TEXT, d DATE NOT NULL)");
+		jdbcTemplate.update("INSERT INTO " + TABLE + " (a, b, d) SELECT i % 4, " +
+				"CASE WHEN i % 5 = 0 THEN NULL ELSE 'v' || (i % 3) END, DATE '2024-01-01' + i % 6 " +
+				"FROM generate_series(1, ?) i", ROWS);
+		UploadedTable table = metadataService.saveUploadedTable(FILE, TABLE, "test");
+		metadataService.saveTableList(table, TABLE, SHEET);
+	}
+
+	@AfterEach
+	void dropTable() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			UploadedTable table = uploadedTableRepository.findByDisplayName(FILE);
+			if (table != null) {
+				tableListRepository.deleteByTableId(table.getId());
+				uploadedTableRepository.delete(table);
+			}
+		});
+		rowCountService.remove(TABLE);
+		jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+	}
+
+	@Test
+	void mixedDirectionsWalkAllRowsInOrder() {
+		List<SortRequest> sorts = List.of(sort("a", "DESC"), sort("d", "ASC"));
+
+		assertEquals(expectedIds("a DESC, d ASC, id"), walk(sorts, 5));
+	}
+
+	@Test
+	void nullsSortLastAscendingAndFirstDescending() {
+		// Страницы по 4 строки: курсор попадает и на NULL, и на значения вокруг них
+		assertEquals(expectedIds("b ASC NULLS LAST, id"), walk(List.of(sort("b", "ASC")), 4));
+		assertEquals(expectedIds("b DESC NULLS FIRST, id"), walk(List.of(sort("b", "DESC")), 4));
+		assertEquals(expectedIds("b DESC NULLS FIRST, a ASC, id"),
+				walk(List.of(sort("b", "DESC"), sort("a", "ASC")), 3));
+	}
+
+	@Test
+	void rowComparisonOnlyForSameDirectionWithoutNulls() {
+		// Все ключи NOT NULL и по возрастанию - сравнение кортежей
+		String uniform = seekCondition(List.of(sort("a", "ASC"), sort("d", "ASC")));
+		assertTrue(uniform.startsWith("(\"a\", \"d\", \"id\") > ("), uniform);
+		assertFalse(uniform.contains(" OR "), uniform);
+
+		// id сортируется по возрастанию, поэтому DESC по a - уже разные направления
+		String mixed = seekCondition(List.of(sort("a", "DESC")));
+		assertTrue(mixed.contains(" OR "), mixed);
+		assertTrue(mixed.contains("\"a\" < "), mixed);
+
+		String nullable = seekCondition(List.of(sort("b", "ASC")));
+		assertTrue(nullable.contains(" OR "), nullable);
+		assertTrue(nullable.contains("\"b\" IS NULL"), nullable);
+
+		// Оба пути дают тот же порядок, что и ORDER BY
+		assertEquals(expectedIds("a, d, id"), walk(List.of(sort("a", "ASC"), sort("d", "ASC")), 7));
+		assertEquals(expectedIds("a DESC, id"), walk(List.of(sort("a", "DESC")), 7));
+	}
+
+	@Test
+	void cursorOfAnotherSortOrderIsRejected() {
+		PageableResponse<Map<String, Object>> first = search(List.of(sort("a", "ASC")), null, 5);
+		String cursor = first.getNextCursor();
+		assertNotNull(cursor);
+
+		assertThrows(IllegalArgumentException.class, () -> search(List.of(sort("a", "DESC")), cursor, 5));
+		assertThrows(IllegalArgumentException.class, () -> search(List.of(sort("d", "ASC")), cursor, 5));
+		assertThrows(IllegalArgumentException.class, () -> search(List.of(sort("a", "ASC")), "not a cursor", 5));
+		// Тот же порядок курсор принимает
+		assertEquals(5, search(List.of(sort("a", "ASC")), cursor, 5).getContent().size());
+	}
+
+	@Test
+	void lastPageIsDetectedByLookaheadRow() {
+		// 36 строк по 12: третья страница полная, но следующей нет
+		List<PageableResponse<Map<String, Object>>> pages = pages(List.of(), 12);
+		assertEquals(3, pages.size());
+		PageableResponse<Map<String, Object>> last = pages.get(2);
+		assertEquals(12, last.getContent().size());
+		assertNull(last.getNextCursor());
+		assertTrue(last.isLast());
+
+		// По 10: последняя страница неполная
+		List<PageableResponse<Map<String, Object>>> partial = pages(List.of(), 10);
+		assertEquals(4, partial.size());
+		assertEquals(6, partial.get(3).getContent().size());
+		assertFalse(partial.get(2).isLast());
+		assertTrue(partial.get(3).isLast());
+	}
+
+	private List<Long> walk(List<SortRequest> sorts, int size) {
+		List<Long> ids = new ArrayList<>();
+		for (PageableResponse<Map<String, Object>> page : pages(sorts, size)) {
+			for (Map<String, Object> row : page.getContent()) {
+				ids.add(((Number) row.get("id")).longValue());
+			}
+		}
+		return ids;
+	}
+
+	private List<PageableResponse<Map<String, Object>>> pages(List<SortRequest> sorts, int size) {
+		List<PageableResponse<Map<String, Object>>> pages = new ArrayList<>();
+		String cursor = null;
+		do {
+			PageableResponse<Map<String, Object>> page = search(sorts, cursor, size);
+			pages.add(page);
+			cursor = page.getNextCursor();
+			assertTrue(pages.size() <= ROWS, "pagination does not stop");
+		} while (cursor != null);
+		return pages;
+	}
+
+	private PageableResponse<Map<String, Object>> search(List<SortRequest> sorts, String cursor, int size) {
+		SearchRequest request = new SearchRequest();
+		request.setSorts(sorts);
+		request.setCursor(cursor);
+		return tableDataService.searchRows(FILE, SHEET, request, 0, size);
+	}
+
+	/**
+	 * Условие после курсора, указывающего на первую строку в этом порядке
+	 */
+	private String seekCondition(List<SortRequest> sorts) {
+		KeysetPagination.Order order = keysetPagination.order(TABLE, sorts);
+		Map<String, Object> firstRow = jdbcTemplate.queryForList(
+				"SELECT * FROM " + TABLE + " ORDER BY " + order.getOrderBy() + " LIMIT 1").get(0);
+		StringBuilder sql = new StringBuilder();
+		keysetPagination.appendSeekCondition(sql, order, keysetPagination.cursorAfter(order, firstRow::get),
+				KeysetPagination.positional(new ArrayList<>()));
+		return sql.toString();
+	}
+
+	private List<Long> expectedIds(String orderBy) {
+		return jdbcTemplate.queryForList("SELECT id FROM " + TABLE + " ORDER BY " + orderBy, Long.class);
+	}
+
+	private static SortRequest sort(String column, String direction) {
+		SortRequest sort = new SortRequest();
+		sort.setColumn(column);
+		sort.setDirection(direction);
+		return sort;
+	}
+}
@@ -0,0 +1,160 @@
+package org.tablebuilder.demo.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.tablebuilder.demo.utils.ColumnType;
+import org.tablebuilder.demo.utils.ColumnarChunk;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Бинарный COPY против локального PostgreSQL: значения, записанные кодировщиками,
+ * должны читаться обратно без изменений
+ */
+@SpringBootTest
+class PgCopyWriterTests {
+
+	private static final List<String> DECIMALS = List.of(
+			"0", "0.00", "-0.000", "1", "-1", "9999", "10000", "-10000.0001",
+			"12345.6789", "-12345.6789", "0.0001", "0.00001", "3.14159265358979",
+			"-987654321.123456789", "1E+20", "-7.5E+13", "1.5E-30", "123456789012345678901234567890.5");
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private PgCopyWriter pgCopyWriter;
+
+	@Test
+	void decimalsRoundTripWithScale() throws SQLException {
+		List<Map<String, Object>> rows = new ArrayList<>();
+		for (String value : DECIMALS) {
+			rows.add(Map.of("n", new BigDecimal(value)));
+		}
+
+		List<BigDecimal> stored = copyRows("n NUMERIC", List.of("n"), List.of(ColumnType.NUMBER), rows, new ArrayList<>())
+				.stream().map(row -> (BigDecimal) row.get(0)).toList();
+
+		assertEquals(DECIMALS.size(), stored.size());
+		for (int i = 0; i < DECIMALS.size(); i++) {
+			BigDecimal expected = new BigDecimal(DECIMALS.get(i));
+			if (expected.scale() < 0) {
+				expected = expected.setScale(0);
+			}
+			// Масштаб тоже сохраняется: 0.00 остается 0.00
+			assertEquals(expected, stored.get(i), "value " + DECIMALS.get(i));
+		}
+	}
+
+	@Test
+	void datesBooleansAndTextRoundTrip() throws SQLException {
+		List<Map<String, Object>> rows = List.of(
+				row(LocalDate.of(2000, 1, 1), true, "plain"),
+				row(LocalDate.of(1999, 12, 31), false, "Юникод ✓"),
+				row(LocalDate.of(2024, 2, 29), "да", ""),
+				row(null, null, null));
+
+		List<List<Object>> stored = copyRows("d DATE, b BOOLEAN, t TEXT", List.of("d", "b", "t"),
+				List.of(ColumnType.DATE, ColumnType.BOOLEAN, ColumnType.TEXT), rows, new ArrayList<>());
+
+		assertEquals(List.of(LocalDate.of(2000, 1, 1), true, "plain"), stored.get(0));
+		assertEquals(List.of(LocalDate.of(1999, 12, 31), false, "Юникод ✓"), stored.get(1));
+		// Пустая строка - NULL, как и в остальных путях вставки
+		assertEquals(Arrays.asList(LocalDate.of(2024, 2, 29), true, null), stored.get(2));
+		assertEquals(Arrays.asList(null, null, null), stored.get(3));
+	}
+
+	@Test
+	void unconvertibleValueRejectsOnlyItsRow() throws SQLException {
+		List<Map<String, Object>> rows = List.of(Map.of("n", "1.5"), Map.of("n", "abc"), Map.of("n", "-2"));
+		List<BatchInsertService.InsertError> errors = new ArrayList<>();
+
+		List<List<Object>> stored = copyRows("n NUMERIC", List.of("n"), List.of(ColumnType.NUMBER), rows, errors);
+
+		assertEquals(2, stored.size());
+		assertEquals(0, new BigDecimal("-2").compareTo((BigDecimal) stored.get(1).get(0)));
+		assertEquals(1, errors.size());
+		assertEquals(11, errors.get(0).getRowIndex());
+		assertEquals("n", errors.get(0).getColumn());
+	}
+
+	@Test
+	void columnarChunkRoundTripsExactNumbers() throws SQLException {
+		List<String> inputs = List.of("0", "-0.5", "0.1", "123456789.987654321", "9007199254740993",
+				"-123456789012345678901234567890.000001", "1E+25", "2.5E-12");
+		ColumnarChunk chunk = new ColumnarChunk(List.of("n", "t"), List.of(ColumnType.NUMBER, ColumnType.TEXT), 16);
+		for (int i = 0; i < inputs.size(); i++) {
+			assertTrue(chunk.addRow(i, List.of(new BigDecimal(inputs.get(i)), "row " + i)));
+		}
+		chunk.addRow(inputs.size(), Arrays.asList(null, "nulls"));
+
+		List<List<Object>> stored;
+		try (Connection con = dataSource.getConnection()) {
+			createTable(con, "n NUMERIC, t TEXT");
+			long copied = pgCopyWriter.copy(con, "copy_test", List.of("n", "t"), chunk);
+			assertEquals(inputs.size() + 1, copied);
+			stored = readTable(con, 2);
+		}
+
+		for (int i = 0; i < inputs.size(); i++) {
+			assertEquals(0, new BigDecimal(inputs.get(i)).compareTo((BigDecimal) stored.get(i).get(0)),
+					"value " + inputs.get(i));
+			assertEquals("row " + i, stored.get(i).get(1));
+		}
+		assertNull(stored.get(inputs.size()).get(0));
+	}
+
+	private static Map<String, Object> row(Object date, Object bool, Object text) {
+		Map<String, Object> row = new HashMap<>();
+		row.put("d", date);
+		row.put("b", bool);
+		row.put("t", text);
+		return row;
+	}
+
+	private List<List<Object>> copyRows(String columnsDdl, List<String> columns, List<ColumnType> types,
+										List<Map<String, Object>> rows, List<BatchInsertService.InsertError> errors)
+			throws SQLException {
+		try (Connection con = dataSource.getConnection()) {
+			createTable(con, columnsDdl);
+			pgCopyWriter.copy(con, "copy_test", columns, columns, types, rows, 10, errors);
+			return readTable(con, columns.size());
+		}
+	}
+
+	/**
+	 * Временная таблица живет до закрытия соединения
+	 */
+	private static void createTable(Connection con, String columnsDdl) throws SQLException {
+		try (Statement statement = con.createStatement()) {
+			statement.execute("DROP TABLE IF EXISTS pg_temp.copy_test");
+			statement.execute("CREATE TEMP TABLE copy_test (id BIGSERIAL PRIMARY KEY, " + columnsDdl + ")");
+		}
+	}
+
+	private static List<List<Object>> readTable(Connection con, int columnCount) throws SQLException {
+		List<List<Object>> rows = new ArrayList<>();
+		try (Statement statement = con.createStatement();
+			 ResultSet rs = statement.executeQuery("SELECT * FROM copy_test ORDER BY id")) {
+			while (rs.next()) {
+				List<Object> row = new ArrayList<>();
+				for (int c = 2; c <= columnCount + 1; c++) {
+					Object value = rs.getObject(c);
+					row.add(value instanceof java.sql.Date date ? date.toLocalDate() : value);
+				}
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+}
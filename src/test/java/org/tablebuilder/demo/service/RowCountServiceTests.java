@@ -0,0 +1,57 @@
+package org.tablebuilder.demo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Счетчики строк против локального PostgreSQL
+ */
+@SpringBootTest
+class RowCountServiceTests {
+
+	private static final String TABLE = "row_count_test";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private RowCountService rowCountService;
+
+	@BeforeEach
+	@AfterEach
+	void dropTable() {
+		rowCountService.remove(TABLE);
+		jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE);
+	}
+
+	@Test
+	void countErrorIsNotCachedAsZero() {
+		// Ни таблицы, ни счетчика: ошибка наружу, а не 0
+		assertThrows(DataAccessException.class, () -> rowCountService.getRowCount(TABLE));
+
+		jdbcTemplate.execute("CREATE TABLE " + TABLE + " (id BIGSERIAL PRIMARY KEY, v TEXT)");
+		jdbcTemplate.update("INSERT INTO " + TABLE + " (v) SELECT 'v' || i FROM generate_series(1, 7) i");
+		assertEquals(7, rowCountService.getRowCount(TABLE));
+	}
+
+	@Test
+	void storedCounterIsCachedUntilChanged() {
+		jdbcTemplate.execute("CREATE TABLE " + TABLE + " (id BIGSERIAL PRIMARY KEY, v TEXT)");
+		rowCountService.setRowCount(TABLE, 5);
+		assertEquals(5, rowCountService.getRowCount(TABLE));
+
+		// Прямая запись в обход сервиса не видна, пока кэш не сброшен
+		jdbcTemplate.update("UPDATE table_row_counts SET row_count = 6 WHERE table_name = ?", TABLE);
+		assertEquals(5, rowCountService.getRowCount(TABLE));
+
+		rowCountService.adjust(TABLE, 2);
+		assertEquals(8, rowCountService.getRowCount(TABLE));
+	}
+}
@@ -0,0 +1,131 @@
+package org.tablebuilder.demo.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveBatchSizerTests {
+
+	private static final long MS = 1_000_000L;
+
+	@Test
+	void boundsAreNormalized() {
+		AdaptiveBatchSizer inverted = new AdaptiveBatchSizer(500, 100, 1000, 100);
+		assertEquals(100, inverted.getMinSize());
+		assertEquals(100, inverted.getMaxSize());
+		assertEquals(100, inverted.current());
+
+		AdaptiveBatchSizer belowMin = new AdaptiveBatchSizer(0, 1000, -5, 100);
+		assertEquals(1, belowMin.getMinSize());
+		assertEquals(1, belowMin.current());
+	}
+
+	@Test
+	void sizeGrowsByStepWhileThroughputHolds() {
+		// Шаг - четверть начального размера
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 10_000, 1000, 100);
+
+		sizer.record(1000, 10 * MS);
+		assertEquals(1250, sizer.current());
+		// Скорость упала на 7% - в пределах шума, рост продолжается
+		sizer.record(1250, 13_440_000L);
+		assertEquals(1500, sizer.current());
+	}
+
+	@Test
+	void throughputDropAfterGrowthBacksOff() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 10_000, 1000, 100);
+		sizer.record(1000, 10 * MS);
+		sizer.record(1250, 12_500_000L);
+		assertEquals(1500, sizer.current());
+
+		// 1500 строк со скоростью 75 000/с против 100 000/с у 1250
+		sizer.record(1500, 20 * MS);
+
+		assertEquals(1125, sizer.current());
+		assertEquals(1000, sizer.getBestSize());
+		assertEquals(100_000, sizer.getBestThroughput(), 1e-6);
+	}
+
+	@Test
+	void slowBatchHalvesSizeDownToMinimum() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(300, 10_000, 1000, 100);
+
+		sizer.record(1000, 150 * MS);
+		assertEquals(500, sizer.current());
+		sizer.record(500, 150 * MS);
+		assertEquals(300, sizer.current());
+		sizer.record(300, 150 * MS);
+		assertEquals(300, sizer.current());
+		assertEquals(150, sizer.getLastLatencyMs(), 1e-9);
+	}
+
+	@Test
+	void growthStopsAtMaximum() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1100, 1000, 100);
+
+		sizer.record(1000, 10 * MS);
+		sizer.record(1100, 11 * MS);
+
+		assertEquals(1100, sizer.current());
+	}
+
+	@Test
+	void tailAndEmptyBatchesAreIgnored() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 10_000, 1000, 100);
+
+		// Хвост листа меньше половины размера, пустая пачка и нулевое время
+		sizer.record(499, 500 * MS);
+		sizer.record(0, 10 * MS);
+		sizer.record(1000, 0);
+
+		assertEquals(1000, sizer.current());
+		assertEquals(0, sizer.getSamples());
+		assertEquals(0, sizer.getSmoothedThroughput());
+	}
+
+	@Test
+	void throughputIsSmoothed() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 100_000, 1000, 1000);
+
+		sizer.record(1000, 10 * MS);
+		assertEquals(100_000, sizer.getSmoothedThroughput(), 1e-6);
+		sizer.record(1250, 25 * MS);
+
+		// 0.7 * 100 000 + 0.3 * 50 000
+		assertEquals(85_000, sizer.getSmoothedThroughput(), 1e-6);
+		assertEquals(2, sizer.getSamples());
+	}
+
+	@Test
+	void concurrentRecordsStayWithinBounds() throws InterruptedException {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(50, 5000, 500, 20);
+		AtomicInteger outOfBounds = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			int seed = t;
+			threads.add(Thread.ofPlatform().start(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					int size = sizer.current();
+					if (size < 50 || size > 5000) {
+						outOfBounds.incrementAndGet();
+					}
+					// Чередуем быстрые и медленные пачки
+					sizer.record(size, ((i + seed) % 7 == 0 ? 40 : 5) * MS);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(0, outOfBounds.get());
+		// Пачка, после которой другой поток успел увеличить размер больше чем вдвое, считается хвостом
+		assertTrue(sizer.getSamples() > 0 && sizer.getSamples() <= 80_000);
+		assertTrue(sizer.getBestSize() >= 50 && sizer.getBestSize() <= 5000);
+	}
+}
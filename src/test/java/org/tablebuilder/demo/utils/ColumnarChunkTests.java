@@ -0,0 +1,125 @@
+package org.tablebuilder.demo.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarChunkTests {
+
+	private static final List<String> COLUMNS = List.of("n", "d", "b", "t");
+	private static final List<ColumnType> TYPES = List.of(ColumnType.NUMBER, ColumnType.DATE, ColumnType.BOOLEAN, ColumnType.TEXT);
+
+	@Test
+	void valuesAreConvertedToColumnTypes() {
+		ColumnarChunk chunk = new ColumnarChunk(COLUMNS, TYPES, 4);
+
+		assertTrue(chunk.addRow(7, List.of("12.50", "2024-02-29", "да", 42L)));
+
+		assertEquals(1, chunk.size());
+		assertEquals(7, chunk.getRowIndex(0));
+		assertEquals(0, new BigDecimal("12.5").compareTo(chunk.getDecimal(0, 0)));
+		assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), chunk.getEpochDay(0, 1));
+		assertTrue(chunk.getBoolean(0, 2));
+		assertEquals("42", chunk.getDictionary().get(chunk.getTextCode(0, 3)));
+	}
+
+	@Test
+	void nullBitmapCoversRowsPastOneWord() {
+		ColumnarChunk chunk = new ColumnarChunk(List.of("n", "t"), List.of(ColumnType.NUMBER, ColumnType.TEXT), 130);
+		for (int r = 0; r < 130; r++) {
+			// NULL в каждой третьей строке первой колонки и пустая строка в каждой пятой второй
+			chunk.addRow(r, Arrays.asList(r % 3 == 0 ? null : r, r % 5 == 0 ? " " : "v" + r));
+		}
+
+		for (int r = 0; r < 130; r++) {
+			assertEquals(r % 3 == 0, chunk.isNull(r, 0), "row " + r);
+			assertEquals(r % 5 == 0, chunk.isNull(r, 1), "row " + r);
+		}
+		assertNull(chunk.getValue(129, 0));
+		assertEquals("v128", chunk.getValue(128, 1));
+	}
+
+	@Test
+	void textValuesShareDictionaryCodes() {
+		ColumnarChunk chunk = new ColumnarChunk(List.of("t"), List.of(ColumnType.TEXT), 4);
+		chunk.addRow(0, List.of("a"));
+		chunk.addRow(1, List.of("b"));
+		chunk.addRow(2, List.of("a"));
+
+		assertEquals(List.of("a", "b"), chunk.getDictionary());
+		assertEquals(chunk.getTextCode(0, 0), chunk.getTextCode(2, 0));
+	}
+
+	@Test
+	void numbersBeyondDoublePrecisionStayExact() {
+		ColumnarChunk chunk = new ColumnarChunk(List.of("n"), List.of(ColumnType.NUMBER), 4);
+		chunk.addRow(0, List.of("9007199254740993"));
+		chunk.addRow(1, List.of("0.1"));
+		chunk.addRow(2, List.of(new BigDecimal("1E+400")));
+
+		assertEquals(new BigDecimal("9007199254740993"), chunk.getDecimal(0, 0));
+		assertEquals(new BigDecimal("0.1"), chunk.getDecimal(1, 0));
+		assertEquals(new BigDecimal("1E+400"), chunk.getDecimal(2, 0));
+	}
+
+	@Test
+	void rejectedRowRollsBackExactNumbers() {
+		ColumnarChunk chunk = new ColumnarChunk(List.of("n", "d"), List.of(ColumnType.NUMBER, ColumnType.DATE), 4);
+
+		// Точное число первой колонки уже записано, когда дата не разбирается
+		assertFalse(chunk.addRow(3, List.of("9007199254740993", "not a date")));
+		// Следующая строка занимает то же место в массивах - старое точное значение не должно всплыть
+		assertTrue(chunk.addRow(4, List.of(5, "2024-01-01")));
+
+		assertEquals(1, chunk.size());
+		assertEquals(0, new BigDecimal(5).compareTo(chunk.getDecimal(0, 0)));
+		assertEquals(1, chunk.getRejectedRows().size());
+		ColumnarChunk.RejectedRow rejected = chunk.getRejectedRows().get(0);
+		assertEquals(3, rejected.getRowIndex());
+		assertEquals("d", rejected.getColumn());
+		assertEquals("not a date", rejected.getValues().get("d"));
+	}
+
+	@Test
+	void clearAllowsReuseWithNewLimit() {
+		ColumnarChunk chunk = new ColumnarChunk(List.of("n", "t"), List.of(ColumnType.NUMBER, ColumnType.TEXT), 8);
+		chunk.setLimit(2);
+		chunk.setFirstId(100);
+		chunk.addRow(0, Arrays.asList(null, "x"));
+		chunk.addRow(1, List.of("1E+400", "y"));
+		chunk.addRow(2, List.of("bad", "z"));
+		assertTrue(chunk.isFull());
+		assertEquals(101, chunk.getId(1));
+
+		chunk.clear();
+		chunk.setLimit(8);
+
+		assertTrue(chunk.isEmpty());
+		assertFalse(chunk.hasIds());
+		assertTrue(chunk.getDictionary().isEmpty());
+		assertTrue(chunk.getRejectedRows().isEmpty());
+		chunk.addRow(0, List.of(1, "q"));
+		chunk.addRow(1, List.of(2, "r"));
+		assertFalse(chunk.isNull(0, 0));
+		assertEquals(0, BigDecimal.valueOf(2).compareTo(chunk.getDecimal(1, 0)));
+		assertEquals("q", chunk.getValue(0, 1));
+		assertFalse(chunk.isFull());
+	}
+
+	@Test
+	void limitIsCappedByCapacity() {
+		ColumnarChunk chunk = new ColumnarChunk(List.of("n"), List.of(ColumnType.NUMBER), 2);
+		chunk.setLimit(10);
+		chunk.addRow(0, List.of(1));
+		chunk.addRow(1, List.of(2));
+
+		assertEquals(2, chunk.getLimit());
+		assertTrue(chunk.isFull());
+		assertThrows(IllegalStateException.class, () -> chunk.addRow(2, List.of(3)));
+	}
+}
@@ -0,0 +1,117 @@
+package org.tablebuilder.demo.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvTokenizerTests {
+
+	private static final Charset CP1251 = Charset.forName("windows-1251");
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void quotesDoubledQuotesAndLineBreaksInsideQuotes() throws IOException {
+		Path file = write("a;\"b;c\";\"say \"\"hi\"\"\"\r\n\"multi\nline\";;x\n", StandardCharsets.UTF_8);
+
+		List<List<String>> records = readAll(file, StandardCharsets.UTF_8, ';');
+
+		assertEquals(List.of(
+				List.of("a", "b;c", "say \"hi\""),
+				List.of("multi\nline", "", "x")), records);
+	}
+
+	@Test
+	void lastRecordWithoutLineBreakAndBlankLines() throws IOException {
+		Path file = write("h1,h2\n\n1,2\r\n\r\n3,4", StandardCharsets.UTF_8);
+
+		List<List<String>> records = readAll(file, StandardCharsets.UTF_8, ',');
+
+		// Пустая строка - запись из одного пустого поля
+		assertEquals(List.of(List.of("h1", "h2"), List.of(""), List.of("1", "2"), List.of(""), List.of("3", "4")), records);
+	}
+
+	@Test
+	void byteOrderMarkIsSkipped() throws IOException {
+		Path file = write("﻿id,name\n1,x\n", StandardCharsets.UTF_8);
+
+		assertEquals(List.of("id", "name"), readAll(file, StandardCharsets.UTF_8, ',').get(0));
+	}
+
+	@Test
+	void charsetIsDetectedFromContent() throws IOException {
+		Path utf8 = write("имя;город\n", StandardCharsets.UTF_8);
+		Path cp1251 = write("имя;город\n", CP1251);
+
+		assertEquals(StandardCharsets.UTF_8, CsvTokenizer.detectCharset(utf8));
+		assertEquals(CP1251, CsvTokenizer.detectCharset(cp1251));
+		assertEquals(List.of("имя", "город"), readAll(cp1251, CP1251, ';').get(0));
+	}
+
+	@Test
+	void delimiterIsDetectedOutsideQuotes() throws IOException {
+		assertEquals(';', CsvTokenizer.detectDelimiter(write("a;b;c\n1,5;2,5;3\n", StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+		assertEquals('\t', CsvTokenizer.detectDelimiter(write("a\tb\tc\n", StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+		// Запятые внутри кавычек не считаются
+		assertEquals(';', CsvTokenizer.detectDelimiter(write("\"a,b,c\";d\n", StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+		assertEquals(',', CsvTokenizer.detectDelimiter(write("a,b\n", StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void quotesAreOrdinaryWithoutQuoting() throws IOException {
+		Path file = write("id\tname\n1\t5\" pipe\n2\t\"x\"\n", StandardCharsets.UTF_8);
+
+		List<List<String>> records = readAll(file, StandardCharsets.UTF_8, '\t', false);
+
+		assertEquals(List.of(
+				List.of("id", "name"),
+				List.of("1", "5\" pipe"),
+				List.of("2", "\"x\"")), records);
+	}
+
+	@Test
+	void recordsSpanReadBufferBoundary() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 20_000; i++) {
+			content.append(i).append(",\"значение ").append(i).append("\"\n");
+		}
+		Path file = write(content.toString(), StandardCharsets.UTF_8);
+
+		List<List<String>> records = readAll(file, StandardCharsets.UTF_8, ',');
+
+		assertEquals(20_000, records.size());
+		for (int i = 0; i < records.size(); i++) {
+			assertEquals(List.of(String.valueOf(i), "значение " + i), records.get(i));
+		}
+	}
+
+	private Path write(String content, Charset charset) throws IOException {
+		return Files.write(Files.createTempFile(dir, "csv", ".csv"), content.getBytes(charset));
+	}
+
+	private static List<List<String>> readAll(Path file, Charset charset, char delimiter) throws IOException {
+		return readAll(file, charset, delimiter, true);
+	}
+
+	private static List<List<String>> readAll(Path file, Charset charset, char delimiter, boolean quoting)
+			throws IOException {
+		List<List<String>> records = new ArrayList<>();
+		try (CsvTokenizer tokenizer = CsvTokenizer.open(file, charset, delimiter, quoting)) {
+			List<String> record;
+			while ((record = tokenizer.nextRecord()) != null) {
+				records.add(record);
+			}
+		}
+		return records;
+	}
+}
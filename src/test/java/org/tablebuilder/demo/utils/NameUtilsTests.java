@@ -0,0 +1,43 @@
+package org.tablebuilder.demo.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameUtilsTests {
+
+	@Test
+	void shortIndexNameIsReadable() {
+		assertEquals("sales__q1_region_idx", NameUtils.indexName("sales__q1", "region", "_idx"));
+	}
+
+	@Test
+	void longColumnGivesValidIndexName() {
+		String column = "c".repeat(63);
+
+		String name = NameUtils.indexName("report__sheet1", column, "_idx");
+
+		assertEquals(NameUtils.MAX_IDENTIFIER_LENGTH, name.length());
+		assertTrue(name.startsWith("report__sheet1_ccc"), name);
+		assertTrue(name.endsWith("_idx"), name);
+	}
+
+	@Test
+	void siblingTablesGetDifferentIndexNames() {
+		// Колонка на 45 символов: от имени таблицы в простом обрезании осталось бы несколько букв
+		String column = "k".repeat(45);
+
+		String first = NameUtils.indexName("file__sheet1", column, "_key");
+		String second = NameUtils.indexName("file__sheet2", column, "_key");
+
+		assertNotEquals(first, second);
+		assertTrue(first.length() <= NameUtils.MAX_IDENTIFIER_LENGTH);
+		assertEquals(first, NameUtils.indexName("file__sheet1", column, "_key"));
+	}
+
+	@Test
+	void suffixMustLeaveRoomForName() {
+		assertEquals("a".repeat(59) + "_stg", NameUtils.withSuffix("a".repeat(70), "_stg"));
+		assertThrows(IllegalArgumentException.class, () -> NameUtils.withSuffix("t", "_" + "c".repeat(62)));
+	}
+}
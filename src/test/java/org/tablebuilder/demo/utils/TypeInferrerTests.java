@@ -0,0 +1,75 @@
+package org.tablebuilder.demo.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TypeInferrerTests {
+
+	@Test
+	void typesFollowBooleanDateNumberTextPriority() {
+		TypeInferrer inferrer = new TypeInferrer(5);
+		inferrer.accept(List.of("1", "2024-01-31", "10", "a", "true"));
+		inferrer.accept(List.of("0", "31.12.2023", "1,5", "b", "false"));
+		inferrer.accept(Arrays.asList(null, "01/02/2024", "-3e2", "12", " "));
+
+		assertEquals(List.of(ColumnType.BOOLEAN, ColumnType.DATE, ColumnType.NUMBER, ColumnType.TEXT, ColumnType.BOOLEAN),
+				inferrer.resolveAll());
+	}
+
+	@Test
+	void singleBooleanValueIsNotEnough() {
+		TypeInferrer inferrer = new TypeInferrer(1);
+		inferrer.accept(List.of("1"));
+
+		assertEquals(ColumnType.NUMBER, inferrer.resolve(0));
+	}
+
+	@Test
+	void oneMismatchAnywhereMakesColumnText() {
+		TypeInferrer inferrer = new TypeInferrer(2);
+		for (int i = 0; i < 1000; i++) {
+			inferrer.accept(List.of(i, "2024-01-01"));
+		}
+		inferrer.accept(List.of("n/a", "2024-13-01"));
+
+		assertEquals(List.of(ColumnType.TEXT, ColumnType.TEXT), inferrer.resolveAll());
+	}
+
+	@Test
+	void emptyColumnIsText() {
+		TypeInferrer inferrer = new TypeInferrer(2);
+		inferrer.accept(Arrays.asList(null, ""));
+		// Короткая строка: недостающие значения - пустые
+		inferrer.accept(List.of());
+
+		assertEquals(List.of(ColumnType.TEXT, ColumnType.TEXT), inferrer.resolveAll());
+	}
+
+	@Test
+	void datesMustExist() {
+		assertTrue(TypeInferrer.isDate("29.02.2024"));
+		assertTrue(TypeInferrer.isDate(LocalDate.of(2024, 1, 1)));
+		assertTrue(TypeInferrer.isDate(new java.util.Date()));
+		assertFalse(TypeInferrer.isDate("31.02.2024"));
+		assertFalse(TypeInferrer.isDate("29.02.2023"));
+		assertFalse(TypeInferrer.isDate("2024-1-1"));
+		assertFalse(TypeInferrer.isDate("12.31.2024"));
+	}
+
+	@Test
+	void numbersAcceptCommaAndExponent() {
+		assertTrue(TypeInferrer.isNumeric("1,25"));
+		assertTrue(TypeInferrer.isNumeric(".5"));
+		assertTrue(TypeInferrer.isNumeric("+7E-3"));
+		assertTrue(TypeInferrer.isNumeric(42L));
+		assertFalse(TypeInferrer.isNumeric(Double.NaN));
+		assertFalse(TypeInferrer.isNumeric("1 000"));
+		assertFalse(TypeInferrer.isNumeric("1.2.3"));
+		assertFalse(TypeInferrer.isNumeric(""));
+	}
+}
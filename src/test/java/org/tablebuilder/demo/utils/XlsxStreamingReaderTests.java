@@ -0,0 +1,81 @@
+package org.tablebuilder.demo.utils;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XlsxStreamingReaderTests {
+
+	private static final String SHEET_PART = "xl/worksheets/sheet1.xml";
+
+	@Test
+	void inlineStringSkipsPhoneticRuns() throws IOException {
+		String sheetXml = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+				+ "<row r=\"1\">"
+				+ "<c r=\"A1\" t=\"inlineStr\"><is><r><t>東京</t></r><rPh sb=\"0\" eb=\"2\"><t>トウキョウ</t></rPh></is></c>"
+				+ "<c r=\"C1\" t=\"inlineStr\"><is><t>plain</t></is></c>"
+				+ "</row></sheetData></worksheet>";
+
+		List<List<Object>> rows = readRows(sheetXml);
+
+		assertEquals(1, rows.size());
+		assertEquals(List.of("東京"), rows.get(0).subList(0, 1));
+		assertEquals("plain", rows.get(0).get(2));
+	}
+
+	@Test
+	void cellReferencesGiveColumnIndexes() throws IOException {
+		String sheetXml = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>"
+				+ "<row r=\"1\"><c r=\"B1\"><v>1</v></c><c r=\"AB1\"><v>2</v></c></row>"
+				+ "</sheetData></worksheet>";
+
+		List<Object> row = readRows(sheetXml).get(0);
+
+		assertEquals(28, row.size());
+		assertEquals(1L, row.get(1));
+		assertEquals(2L, row.get(27));
+	}
+
+	/**
+	 * Книга из POI, в которой XML первого листа заменен на заданный
+	 */
+	private static List<List<Object>> readRows(String sheetXml) throws IOException {
+		ByteArrayOutputStream workbook = new ByteArrayOutputStream();
+		try (XSSFWorkbook wb = new XSSFWorkbook()) {
+			wb.createSheet("Sheet1");
+			wb.write(workbook);
+		}
+
+		ByteArrayOutputStream patched = new ByteArrayOutputStream();
+		try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(workbook.toByteArray()));
+			 ZipOutputStream zout = new ZipOutputStream(patched)) {
+			ZipEntry entry;
+			while ((entry = zin.getNextEntry()) != null) {
+				zout.putNextEntry(new ZipEntry(entry.getName()));
+				if (SHEET_PART.equals(entry.getName())) {
+					zout.write(sheetXml.getBytes(StandardCharsets.UTF_8));
+				} else {
+					zin.transferTo(zout);
+				}
+				zout.closeEntry();
+			}
+		}
+
+		List<List<Object>> rows = new ArrayList<>();
+		try (XlsxStreamingReader reader = XlsxStreamingReader.open(new ByteArrayInputStream(patched.toByteArray()))) {
+			reader.readSheet(reader.getSheets().get(0), (rowIndex, values) -> rows.add(new ArrayList<>(values)));
+		}
+		return rows;
+	}
+}